@@ -0,0 +1,99 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.config.BulkheadConfig;
+import com.learning.springecom.config.WorkerPoolConfig;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.repo.ProductRepo;
+import com.learning.springecom.vectorstore.HnswVectorStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+
+/**
+ * The slice of the application the database benchmarks need: JPA against an embedded
+ * PostgreSQL, the real services, and stub AI models in place of OpenAI. Auto-configuration is
+ * listed explicitly so none of the Spring AI starters on the classpath get involved, and
+ * {@code application.properties} is not read.
+ */
+@SpringBootConfiguration
+@ImportAutoConfiguration({
+        DataSourceAutoConfiguration.class,
+        DataSourceTransactionManagerAutoConfiguration.class,
+        JdbcTemplateAutoConfiguration.class,
+        HibernateJpaAutoConfiguration.class,
+        TransactionAutoConfiguration.class,
+        SqlInitializationAutoConfiguration.class,
+        JacksonAutoConfiguration.class
+})
+@EntityScan(basePackageClasses = Product.class)
+@EnableJpaRepositories(basePackageClasses = ProductRepo.class)
+@Import({ProductService.class, AiImageGenService.class, ImageStorageService.class, VectorSyncService.class,
+        VectorDocumentFactory.class, ChatResponseCache.class, StageMetrics.class,
+        DescriptionCache.class, BulkheadConfig.class, WorkerPoolConfig.class, ImageVariantService.class,
+        ProductCache.class, ProductCacheListener.class, CatalogReadModel.class})
+class BenchmarkApplication {
+
+    @Bean
+    EmbeddingModel embeddingModel() {
+        return new HashingEmbeddingModel(1536);
+    }
+
+    @Bean
+    VectorStore vectorStore(EmbeddingModel embeddingModel, ObjectMapper objectMapper) {
+        return new HnswVectorStore(embeddingModel, objectMapper, null, 16, 200, 100, 2000);
+    }
+
+    @Bean
+    ChatClient chatClient() {
+        return ChatClient.builder(new StubChatModel()).build();
+    }
+
+    @Bean
+    ImageModel imageModel() {
+        return new StubImageModel();
+    }
+
+    @Bean
+    MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
+    /** Starts the context on the given embedded database, with the application's schema. */
+    static ConfigurableApplicationContext start(EmbeddedPostgres postgres) {
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.config.name=benchmark",
+                        "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "spring.datasource.username=postgres",
+                        "spring.jpa.hibernate.ddl-auto=create",
+                        "spring.jpa.defer-datasource-initialization=true",
+                        "spring.sql.init.mode=always",
+                        // not init/vector-schema.sql: the embedded server has no pgvector
+                        "spring.sql.init.schema-locations=classpath:init/schema.sql",
+                        "logging.level.root=WARN")
+                .run();
+    }
+}
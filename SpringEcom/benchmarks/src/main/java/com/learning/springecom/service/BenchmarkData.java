@@ -0,0 +1,66 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.OrderItemRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/** Deterministic catalogue and order fixtures shared by the benchmarks. */
+final class BenchmarkData {
+
+    static final String[] BRANDS = {"Apple", "Samsung", "Sony", "Dell", "Lenovo", "Asus", "Bose", "Canon", "Nikon", "LG"};
+    static final String[] CATEGORIES = {"Laptop", "Mobile", "Headphone", "Camera", "Electronics", "Toys", "Fashion"};
+    static final String[] NOUNS = {"Phone", "Notebook", "Earbuds", "Speaker", "Monitor", "Tablet", "Watch", "Lens", "Drone", "Console"};
+    static final String[] ADJECTIVES = {"Pro", "Max", "Ultra", "Mini", "Air", "Plus", "Lite", "Neo", "Prime", "Edge"};
+
+    private BenchmarkData() {
+    }
+
+    static Product product(int id, Random random) {
+        Product product = new Product(id);
+        String brand = BRANDS[random.nextInt(BRANDS.length)];
+        product.setName(brand + " " + NOUNS[random.nextInt(NOUNS.length)] + " " + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " + (id % 97));
+        product.setDescription("The " + product.getName() + " combines a " + ADJECTIVES[random.nextInt(ADJECTIVES.length)].toLowerCase()
+                + " design with all-day battery life, fast charging and a two-year warranty.");
+        product.setBrand(brand);
+        product.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        product.setPrice(BigDecimal.valueOf(random.nextInt(200_000), 2));
+        product.setReleaseDate(new Date(1_600_000_000_000L + random.nextInt(100_000) * 60_000L));
+        product.setProductAvailable(true);
+        product.setStockQuantity(random.nextInt(100));
+        product.setImageName("image-" + id + ".png");
+        product.setImageType("image/png");
+        return product;
+    }
+
+    static List<Product> products(int count, long seed) {
+        Random random = new Random(seed);
+        List<Product> products = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            products.add(product(id, random));
+        }
+        return products;
+    }
+
+    static List<OrderItemRequest> orderLines(List<Product> products, int lines, Random random) {
+        List<OrderItemRequest> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            items.add(new OrderItemRequest(products.get(random.nextInt(products.size())).getId(), 1 + random.nextInt(5)));
+        }
+        return items;
+    }
+
+    static Order order(String orderId, List<OrderItemRequest> lines, Map<Integer, Product> products) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setCustomerName("Jane Doe");
+        order.setEmail("jane.doe@example.com");
+        order.setStatus("PLACED");
+        order.setOrderDate(LocalDate.of(2025, 1, 15));
+        order.setOrderItems(OrderService.buildItems(order, lines, products));
+        return order;
+    }
+}
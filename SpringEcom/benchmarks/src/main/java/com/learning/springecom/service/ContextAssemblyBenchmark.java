@@ -0,0 +1,42 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chatbot context assembly after retrieval: rank fusion of the keyword and vector hits
+ * ({@link ChatContextRetriever}) and rendering them into the prompt context ({@link ChatBotService}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextAssemblyBenchmark {
+
+    private List<List<Document>> rankings;
+
+    @Setup
+    public void setUp() {
+        VectorDocumentFactory factory = new VectorDocumentFactory();
+        List<Product> catalogue = BenchmarkData.products(40, 3);
+        List<Document> keyword = new ArrayList<>();
+        List<Document> vector = new ArrayList<>();
+        // overlapping lists, as for a question both searches understand
+        for (int i = 0; i < 10; i++) {
+            keyword.add(factory.productDocument(catalogue.get(i)));
+            vector.add(factory.productDocument(catalogue.get(i * 3)));
+        }
+        rankings = List.of(List.of(), keyword, vector);
+    }
+
+    @Benchmark
+    public String fuseAndRender() {
+        return ChatBotService.toContext(ChatContextRetriever.fuse(rankings, 8));
+    }
+}
@@ -0,0 +1,45 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering products and orders into vector store documents ({@link VectorDocumentFactory}),
+ * which the sync worker does for every changed product and placed order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentRenderingBenchmark {
+
+    private final VectorDocumentFactory factory = new VectorDocumentFactory();
+    private Product product;
+    private Order order;
+
+    @Setup
+    public void setUp() {
+        List<Product> catalogue = BenchmarkData.products(100, 1);
+        Map<Integer, Product> products = new HashMap<>();
+        catalogue.forEach(item -> products.put(item.getId(), item));
+        product = catalogue.get(42);
+        order = BenchmarkData.order("ORD1234ABCD", BenchmarkData.orderLines(catalogue, 5, new Random(2)), products);
+    }
+
+    @Benchmark
+    public Document productDocument() {
+        return factory.productDocument(product);
+    }
+
+    @Benchmark
+    public Document orderDocument() {
+        return factory.orderDocument(order);
+    }
+}
@@ -0,0 +1,54 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.OrderResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response serialization of the two largest payloads, the product list and the order list,
+ * with an ObjectMapper configured the way Spring Boot configures it for MVC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"100", "1000"})
+    private int count;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private List<Product> products;
+    private List<OrderResponse> orders;
+
+    @Setup
+    public void setUp() {
+        products = BenchmarkData.products(count, 4);
+        Map<Integer, Product> byId = new HashMap<>();
+        products.forEach(product -> byId.put(product.getId(), product));
+        Random random = new Random(5);
+        orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(OrderService.toResponse(BenchmarkData.order("ORD" + (10_000_000 + i),
+                    BenchmarkData.orderLines(products, 1 + random.nextInt(5), random), byId)));
+        }
+    }
+
+    @Benchmark
+    public byte[] products() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] orders() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orders);
+    }
+}
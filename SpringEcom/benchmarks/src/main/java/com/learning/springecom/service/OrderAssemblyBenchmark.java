@@ -0,0 +1,43 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.OrderItemRequest;
+import com.learning.springecom.model.dto.OrderResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory part of {@link OrderService#placeOrder}: building the order lines with their
+ * BigDecimal totals and mapping the saved order to its response DTO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderAssemblyBenchmark {
+
+    @Param({"1", "5", "20"})
+    private int lines;
+
+    private Map<Integer, Product> products;
+    private List<OrderItemRequest> items;
+
+    @Setup
+    public void setUp() {
+        List<Product> catalogue = BenchmarkData.products(100, 1);
+        products = new HashMap<>();
+        catalogue.forEach(product -> products.put(product.getId(), product));
+        items = BenchmarkData.orderLines(catalogue, lines, new Random(2));
+    }
+
+    @Benchmark
+    public OrderResponse assembleOrder() {
+        Order order = BenchmarkData.order("ORD1234ABCD", items, products);
+        return OrderService.toResponse(order);
+    }
+}
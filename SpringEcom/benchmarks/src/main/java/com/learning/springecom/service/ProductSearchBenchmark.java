@@ -0,0 +1,81 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.ProductSummary;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductService#searchProducts} end to end against an embedded PostgreSQL with the
+ * application's schema (generated tsvector column, GIN and trigram indexes), on a generated
+ * catalogue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    @Param({"10000"})
+    private int catalogueSize;
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        postgres = EmbeddedPostgres.builder().start();
+        context = BenchmarkApplication.start(postgres);
+        productService = context.getBean(ProductService.class);
+
+        List<Product> products = BenchmarkData.products(catalogueSize, 6);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO product (name, description, brand, price, category, release_date, " +
+                        "product_available, stock_quantity, image_name, image_type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                products, 1000, (ps, product) -> {
+                    ps.setString(1, product.getName());
+                    ps.setString(2, product.getDescription());
+                    ps.setString(3, product.getBrand());
+                    ps.setBigDecimal(4, product.getPrice());
+                    ps.setString(5, product.getCategory());
+                    ps.setTimestamp(6, new Timestamp(product.getReleaseDate().getTime()));
+                    ps.setBoolean(7, product.isProductAvailable());
+                    ps.setInt(8, product.getStockQuantity());
+                    ps.setString(9, product.getImageName());
+                    ps.setString(10, product.getImageType());
+                });
+        jdbcTemplate.execute("ANALYZE product");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public List<ProductSummary> singleTerm() {
+        return productService.searchProducts("phone", 0, 20);
+    }
+
+    @Benchmark
+    public List<ProductSummary> prefixTerms() {
+        return productService.searchProducts("sams ult", 0, 20);
+    }
+
+    @Benchmark
+    public List<ProductSummary> typo() {
+        return productService.searchProducts("hedphone", 0, 20);
+    }
+}
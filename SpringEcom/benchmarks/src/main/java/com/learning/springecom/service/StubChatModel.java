@@ -0,0 +1,19 @@
+package com.learning.springecom.service;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+
+/** Answers every prompt with the same text, so benchmarks never call OpenAI. */
+class StubChatModel implements ChatModel {
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(
+                "A well-built product for everyday use, with a long battery life and a bright display."))));
+    }
+}
@@ -0,0 +1,21 @@
+package com.learning.springecom.service;
+
+import org.springframework.ai.image.Image;
+import org.springframework.ai.image.ImageGeneration;
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.image.ImageResponse;
+
+import java.util.List;
+
+/** Returns a 1x1 PNG for every prompt, so benchmarks never call OpenAI. */
+class StubImageModel implements ImageModel {
+
+    private static final String PIXEL =
+            "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mP8z8BQDwAEhQGAhKmMIQAAAABJRU5ErkJggg==";
+
+    @Override
+    public ImageResponse call(ImagePrompt request) {
+        return new ImageResponse(List.of(new ImageGeneration(new Image(null, PIXEL))));
+    }
+}
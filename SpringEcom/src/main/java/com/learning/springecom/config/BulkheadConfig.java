@@ -0,0 +1,44 @@
+package com.learning.springecom.config;
+
+import com.learning.springecom.service.Bulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * One bulkhead per AI endpoint, sized by {@code app.bulkhead.<name>.*}. Each pool only ever
+ * holds threads for its own calls, so image generation cannot delay chat and neither can delay
+ * requests that do not go through a bulkhead.
+ */
+@Configuration
+public class BulkheadConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead descriptionBulkhead(Environment environment, MeterRegistry meterRegistry) {
+        return bulkhead("description", 8, 16, Duration.ofSeconds(30), Duration.ofSeconds(5), environment, meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead imageBulkhead(Environment environment, MeterRegistry meterRegistry) {
+        return bulkhead("image", 4, 8, Duration.ofSeconds(90), Duration.ofSeconds(20), environment, meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Bulkhead chatBulkhead(Environment environment, MeterRegistry meterRegistry) {
+        return bulkhead("chat", 16, 32, Duration.ofSeconds(60), Duration.ofSeconds(5), environment, meterRegistry);
+    }
+
+    private static Bulkhead bulkhead(String name, int maxConcurrent, int queueCapacity, Duration timeout,
+                                     Duration retryAfter, Environment environment, MeterRegistry meterRegistry) {
+        String prefix = "app.bulkhead." + name + ".";
+        return new Bulkhead(name,
+                environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                environment.getProperty(prefix + "queue-capacity", Integer.class, queueCapacity),
+                environment.getProperty(prefix + "timeout", Duration.class, timeout),
+                environment.getProperty(prefix + "retry-after", Duration.class, retryAfter),
+                meterRegistry);
+    }
+}
@@ -0,0 +1,44 @@
+package com.learning.springecom.config;
+
+import com.learning.springecom.service.CachingEmbeddingModel;
+import com.learning.springecom.service.HashingEmbeddingModel;
+import com.learning.springecom.service.StageMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+@Configuration
+public class EmbeddingConfig {
+
+    // Primary, so the vector store and everything else embedding documents goes through the cache
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "app.embedding.mode", havingValue = "openai", matchIfMissing = true)
+    public EmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                JdbcTemplate jdbcTemplate,
+                                                TransactionTemplate transactionTemplate,
+                                                MeterRegistry meterRegistry,
+                                                StageMetrics stageMetrics,
+                                                @Value("${spring.ai.openai.embedding.options.model}") String model,
+                                                @Value("${app.embedding.cache.retention:P30D}") Duration retention) {
+        return new CachingEmbeddingModel(openAiEmbeddingModel, jdbcTemplate, transactionTemplate, model, meterRegistry,
+                stageMetrics, retention);
+    }
+
+    // Local, network-free embeddings; computing them is cheaper than a cache lookup
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "app.embedding.mode", havingValue = "hashing")
+    public EmbeddingModel hashingEmbeddingModel(@Value("${app.embedding.hashing.dimensions:1536}") int dimensions) {
+        return new HashingEmbeddingModel(dimensions);
+    }
+}
@@ -0,0 +1,36 @@
+package com.learning.springecom.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.vectorstore.HnswVectorStore;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+
+/**
+ * Replaces pgvector with the in-process HNSW store when {@code app.vector-store.mode=hnsw}.
+ * The pgvector store and its schema are then left out ({@link VectorStoreModeEnvironmentPostProcessor}),
+ * unless {@code app.vector-store.compare=true} keeps them to compare the two side by side. A store
+ * that starts without a snapshot is filled from the database through the vector sync outbox.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.vector-store.mode", havingValue = "hnsw")
+public class LocalVectorStoreConfig {
+
+    @Bean
+    @Primary
+    public HnswVectorStore hnswVectorStore(EmbeddingModel embeddingModel,
+                                           ObjectMapper objectMapper,
+                                           @Value("${app.vector-store.hnsw.snapshot:./data/vector-store.hnsw}") String snapshot,
+                                           @Value("${app.vector-store.hnsw.m:16}") int m,
+                                           @Value("${app.vector-store.hnsw.ef-construction:200}") int efConstruction,
+                                           @Value("${app.vector-store.hnsw.ef-search:100}") int efSearch,
+                                           @Value("${app.vector-store.hnsw.exact-search-threshold:2000}") int exactSearchThreshold) {
+        return new HnswVectorStore(embeddingModel, objectMapper, Path.of(snapshot),
+                m, efConstruction, efSearch, exactSearchThreshold);
+    }
+}
@@ -0,0 +1,28 @@
+package com.learning.springecom.config;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * With {@code app.vector-store.mode=hnsw} the application runs without pgvector: the pgvector
+ * store is not created and {@code init/vector-schema.sql}, which needs the extension, is left
+ * out of the schema scripts. With {@code app.vector-store.compare=true} both stay, since the
+ * comparison queries pgvector.
+ */
+public class VectorStoreModeEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!"hnsw".equals(environment.getProperty("app.vector-store.mode"))
+                || environment.getProperty("app.vector-store.compare", Boolean.class, false)) {
+            return;
+        }
+        environment.getPropertySources().addFirst(new MapPropertySource("hnswVectorStoreMode", Map.of(
+                "spring.ai.vectorstore.type", "none",
+                "spring.sql.init.schema-locations", "classpath:init/schema.sql")));
+    }
+}
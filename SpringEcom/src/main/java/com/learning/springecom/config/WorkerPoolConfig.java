@@ -0,0 +1,48 @@
+package com.learning.springecom.config;
+
+import com.learning.springecom.service.WorkerPools;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Builds every worker pool of the application in one place, each with its own thread name prefix.
+ * <p>
+ * The pools are handed out through the {@link WorkerPools} holder rather than as executor beans:
+ * any {@code Executor} bean makes Boot back off its {@code applicationTaskExecutor}, which Spring
+ * MVC async requests run on. Calls to the AI endpoints go through the bulkheads in
+ * {@link BulkheadConfig} instead, and long-running loops (the order journal writer, the order
+ * intake workers, the cache LISTEN connection and the image variant backfill) keep a dedicated
+ * named thread each.
+ * <p>
+ * On shutdown queued tasks are dropped and running ones interrupted; a product import resumes
+ * after its last committed batch when it is submitted again.
+ */
+@Configuration
+public class WorkerPoolConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public WorkerPools workerPools(Environment environment) {
+        int chatThreads = environment.getProperty("app.chat.retrieval.threads", Integer.class, 8);
+        int imageThreads = environment.getProperty("app.image-variants.threads", Integer.class, 2);
+        int embeddingThreads = environment.getProperty("app.import.embedding-concurrency", Integer.class, 4);
+        return new WorkerPools(
+                pool("chat-retrieval-", chatThreads, chatThreads * 16),
+                // decoding is CPU and memory heavy, so this one stays small
+                pool("image-variants-", imageThreads, 1000),
+                pool("product-import-", 1, Integer.MAX_VALUE),
+                // each import bounds its own queued batches, see ProductImportService
+                pool("product-import-embedding-", embeddingThreads, Integer.MAX_VALUE));
+    }
+
+    private static ThreadPoolTaskExecutor pool(String threadNamePrefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,26 @@
+package com.learning.springecom.controller;
+
+import com.learning.springecom.exception.BulkheadRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * A full bulkhead answers 429 and a timed-out call 503, both with a Retry-After hint, so clients
+ * back off instead of piling more requests onto a saturated upstream.
+ */
+@RestControllerAdvice
+public class BulkheadExceptionHandler {
+
+    @ExceptionHandler(BulkheadRejectedException.class)
+    public ResponseEntity<String> handleRejected(BulkheadRejectedException e) {
+        HttpStatus status = e.getReason() == BulkheadRejectedException.Reason.FULL
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())));
+        return new ResponseEntity<>(e.getMessage(), headers, status);
+    }
+}
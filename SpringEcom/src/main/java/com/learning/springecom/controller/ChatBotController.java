@@ -1,20 +1,64 @@
 package com.learning.springecom.controller;
 
+import com.learning.springecom.service.Bulkhead;
 import com.learning.springecom.service.ChatBotService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+@Slf4j
 @RestController
 @RequestMapping("/api/chat")
 @CrossOrigin
 public class ChatBotController {
 @Autowired
 private ChatBotService chatBotService;
+
+    @Autowired
+    private Bulkhead chatBulkhead;
+
+    // open streams hold an upstream connection each, so cap them independently of the servlet pool
+    private final Semaphore streamPermits;
+
+    public ChatBotController(@Value("${app.chat.stream.max-concurrent:100}") int maxConcurrentStreams) {
+        this.streamPermits = new Semaphore(maxConcurrentStreams);
+    }
+
     @GetMapping("/ask")
-    public ResponseEntity<String> askBot(@RequestParam String message){
-        return new ResponseEntity<> (chatBotService.ChatBotResponse(message), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<String>> askBot(@RequestParam String message){
+        return chatBulkhead.submit(() -> chatBotService.ChatBotResponse(message))
+                .thenApply(answer -> new ResponseEntity<>(answer, HttpStatus.OK));
+
+    }
 
+    /**
+     * Streams the answer as Server-Sent Events: one {@code token} event per chunk, then a
+     * {@code done} event, or an {@code error} event if the completion fails. The request thread
+     * is released straight away; a client disconnect cancels the completion.
+     */
+    @GetMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> askBotStream(@RequestParam String message) {
+        if (!streamPermits.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").build();
+        }
+        Flux<ServerSentEvent<String>> events = chatBotService.streamChatBotResponse(message)
+                .map(token -> ServerSentEvent.builder(token).event("token").build())
+                .concatWithValues(ServerSentEvent.builder("").event("done").build())
+                .onErrorResume(e -> {
+                    log.warn("Chat stream failed", e);
+                    return Flux.just(ServerSentEvent.builder("Bot encountered an error: " + e.getMessage())
+                            .event("error").build());
+                })
+                .doFinally(signal -> streamPermits.release());
+        return new ResponseEntity<>(events, HttpStatus.OK);
     }
 }
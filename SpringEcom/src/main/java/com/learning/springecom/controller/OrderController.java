@@ -1,26 +1,84 @@
 package com.learning.springecom.controller;
 
+import com.learning.springecom.exception.OrderIntakeUnavailableException;
+import com.learning.springecom.exception.OrderRejectedException;
+import com.learning.springecom.model.dto.OrderErrorResponse;
+import com.learning.springecom.model.dto.OrderIntakeResponse;
+import com.learning.springecom.model.dto.OrderPage;
 import com.learning.springecom.model.dto.OrderRequest;
 import com.learning.springecom.model.dto.OrderResponse;
+import com.learning.springecom.service.OrderExportService;
+import com.learning.springecom.service.OrderIntakeService;
 import com.learning.springecom.service.OrderService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin
 public class OrderController {
+
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private ObjectProvider<OrderIntakeService> orderIntakeService;
+
+    @Value("${app.order-export.timeout:30m}")
+    private Duration exportTimeout;
+
+    /**
+     * Places the order and answers 201, or with {@code app.order-intake.mode=async} queues it and
+     * answers 202 with the order number; its outcome is then at {@code /api/orders/intake/{orderId}}.
+     * The {@code Idempotency-Key} header is honoured in async mode.
+     */
     @PostMapping("orders/place")
-    public ResponseEntity<OrderResponse> placeOrder(@RequestBody OrderRequest orderRequest) {
-        OrderResponse orderResponse = orderService.placeOrder(orderRequest);
-        return new ResponseEntity<>(orderResponse, HttpStatus.CREATED);
+    public ResponseEntity<?> placeOrder(@RequestBody OrderRequest orderRequest,
+                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        OrderIntakeService intake = orderIntakeService.getIfAvailable();
+        if (intake == null) {
+            OrderResponse orderResponse = orderService.placeOrder(orderRequest);
+            return new ResponseEntity<>(orderResponse, HttpStatus.CREATED);
+        }
+        OrderIntakeResponse intakeResponse;
+        try {
+            intakeResponse = intake.submit(orderRequest, idempotencyKey);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(new OrderErrorResponse(e.getMessage(), List.of()), HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/orders/intake/" + intakeResponse.orderId()))
+                .body(intakeResponse);
+    }
+
+    @GetMapping("/orders/intake/{orderId}")
+    public ResponseEntity<OrderIntakeResponse> getOrderIntake(@PathVariable String orderId) {
+        OrderIntakeService intake = orderIntakeService.getIfAvailable();
+        OrderIntakeResponse intakeResponse = intake == null ? null : intake.get(orderId);
+        if (intakeResponse == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(intakeResponse, HttpStatus.OK);
     }
 
     @GetMapping("/orders")
@@ -29,4 +87,77 @@ public class OrderController {
         return new ResponseEntity<>(orderResponseList, HttpStatus.OK);
     }
 
+    @GetMapping("/orders/page")
+    public ResponseEntity<OrderPage> getOrderPage(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        OrderPage orderPage = orderService.getOrderPage(Math.max(page, 0), pageSize, status, email, from, to);
+        return new ResponseEntity<>(orderPage, HttpStatus.OK);
+    }
+
+    /**
+     * Streams every order in the date range as NDJSON (one order per line) or CSV (one line
+     * per order item). The response is gzip-encoded when the client accepts it.
+     * <p>
+     * The export is written on the async executor under its own {@code app.order-export.timeout};
+     * other async requests keep the container's default timeout.
+     */
+    @GetMapping("/orders/export")
+    public WebAsyncTask<Void> exportOrders(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) {
+        OrderExportService.Format exportFormat;
+        try {
+            exportFormat = OrderExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format " + format);
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        String fileName = exportFormat == OrderExportService.Format.CSV ? "orders.csv" : "orders.ndjson";
+        MediaType contentType = exportFormat == OrderExportService.Format.CSV
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+        response.setContentType(contentType.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString());
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            OutputStream out = response.getOutputStream();
+            if (gzip) {
+                try (GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024)) {
+                    orderExportService.export(compressed, exportFormat, from, to);
+                }
+            } else {
+                orderExportService.export(out, exportFormat, from, to);
+                out.flush();
+            }
+            return null;
+        });
+    }
+
+    @ExceptionHandler(OrderRejectedException.class)
+    public ResponseEntity<OrderErrorResponse> handleOrderRejected(OrderRejectedException e) {
+        return new ResponseEntity<>(new OrderErrorResponse(e.getMessage(), e.getErrors()), HttpStatus.CONFLICT);
+    }
+
+    // The order was not taken, so the client can safely send it again with the same Idempotency-Key
+    @ExceptionHandler(OrderIntakeUnavailableException.class)
+    public ResponseEntity<OrderErrorResponse> handleIntakeUnavailable(OrderIntakeUnavailableException e) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())));
+        return new ResponseEntity<>(new OrderErrorResponse(e.getMessage(), List.of()), headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
 }
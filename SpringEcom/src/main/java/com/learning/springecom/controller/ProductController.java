@@ -1,43 +1,221 @@
 package com.learning.springecom.controller;
 
+import com.learning.springecom.model.ImageVariant;
 import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.CatalogFilter;
+import com.learning.springecom.model.dto.CatalogVersion;
+import com.learning.springecom.model.dto.ImageJobResponse;
+import com.learning.springecom.model.dto.ProductImportResult;
+import com.learning.springecom.model.dto.ProductSummary;
+import com.learning.springecom.model.dto.ProductVersion;
+import com.learning.springecom.service.Bulkhead;
+import com.learning.springecom.service.CatalogReadModel;
+import com.learning.springecom.service.CatalogSnapshot;
+import com.learning.springecom.service.ImageGenerationJobService;
+import com.learning.springecom.service.ImageStorageService;
+import com.learning.springecom.service.ImageVariantService;
+import com.learning.springecom.service.ProductImportService;
 import com.learning.springecom.service.ProductService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.*;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLConnection;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+@Slf4j
 @RestController
 @CrossOrigin("http://localhost:5173/")
 @RequestMapping("/api")
 public class ProductController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private ImageGenerationJobService imageJobService;
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private Bulkhead imageBulkhead;
+
+    @Autowired
+    private CatalogReadModel catalogReadModel;
+
+    // Catalog reads are conditional: the validators come from one aggregate or one-row query, and
+    // a matching If-None-Match / If-Modified-Since is answered with 304 before any entity is loaded.
+    // While the catalog snapshot is available, browsing is answered from it with the JSON encoded
+    // there, and the validators are the snapshot's own; the database is only read without it.
+
     @GetMapping("/products")
-    public ResponseEntity<List<Product>> getProducts() {
-        return new ResponseEntity<>(productService.getAllProducts(), HttpStatus.OK);
+    public ResponseEntity<?> getProducts(@RequestParam(required = false) String category,
+                                         @RequestParam(required = false) BigDecimal minPrice,
+                                         @RequestParam(required = false) BigDecimal maxPrice,
+                                         @RequestParam(required = false) Boolean available,
+                                         WebRequest request) {
+        CatalogFilter filter = new CatalogFilter(category, minPrice, maxPrice, available);
+        CatalogSnapshot snapshot = catalogReadModel.current();
+        CatalogVersion catalog = snapshot != null ? snapshot.version() : productService.getCatalogVersion();
+        if (request.checkNotModified(catalog.etag(), epochMillis(catalog.lastModified()))) {
+            return null;
+        }
+        if (snapshot != null) {
+            return json(snapshot.productsJson(filter));
+        }
+        List<Product> products = productService.getAllProducts();
+        if (!filter.isEmpty()) {
+            products = products.stream()
+                    .filter(product -> filter.matches(product.getCategory(), product.getPrice(), product.isProductAvailable()))
+                    .toList();
+        }
+        return new ResponseEntity<>(products, HttpStatus.OK);
+    }
+
+    @GetMapping("/products/page")
+    public ResponseEntity<?> getProductPage(@RequestParam(defaultValue = "id") String sort,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "20") int size,
+                                            WebRequest request) {
+        // a page only changes when the catalog does; caches key the ETag by URL, so it can be shared
+        CatalogSnapshot snapshot = catalogReadModel.current();
+        CatalogVersion catalog = snapshot != null ? snapshot.version() : productService.getCatalogVersion();
+        if (request.checkNotModified(catalog.etag(), epochMillis(catalog.lastModified()))) {
+            return null;
+        }
+        try {
+            int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+            if (snapshot != null) {
+                return json(snapshot.pageJson(sort, cursor, pageSize));
+            }
+            return new ResponseEntity<>(productService.getProductPage(sort, cursor, pageSize), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/product/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable int id) {
-        Product product = productService.getProductById(id);
+    public ResponseEntity<?> getProductById(@PathVariable int id, WebRequest request) {
+        CatalogSnapshot snapshot = catalogReadModel.current();
+        int index = snapshot == null ? -1 : snapshot.indexOf(id);
+        if (index >= 0) {
+            // products not in the snapshot (yet) are looked up below
+            ProductVersion cached = new ProductVersion(id, snapshot.version(index), snapshot.updatedAt(index), null, null);
+            if (request.checkNotModified(cached.etag(), epochMillis(cached.updatedAt()))) {
+                return null;
+            }
+            return json(snapshot.productJson(index));
+        }
+        ProductVersion current = productService.getProductVersion(id).orElse(null);
+        if (current == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (request.checkNotModified(current.etag(), epochMillis(current.updatedAt()))) {
+            return null;
+        }
+        Product product = productService.getProductById(id, current.version());
         if (product.getId() > 0) {
-            return new ResponseEntity<>(product, HttpStatus.OK);
+            // validators of the loaded row, which may be newer than the ones checked above
+            ProductVersion loaded = new ProductVersion(product.getId(), product.getVersion(), product.getUpdatedAt(),
+                    product.getImageHash(), product.getImageType());
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(loaded.etag());
+            if (product.getUpdatedAt() != null) {
+                response.lastModified(product.getUpdatedAt());
+            }
+            return response.body(product);
         } else {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
 
+    /**
+     * Serves the product image, or with {@code size=thumbnail|card|detail} a resized JPEG; a
+     * variant that does not exist yet is queued and the original served meanwhile. The URL shows
+     * whatever image the product has now, so caches must revalidate it; the image hash is the
+     * ETag, which makes that a 304. For long-lived caching use {@code /api/images/{imageHash}}.
+     */
     @GetMapping("/product/{productId}/image")
-    public ResponseEntity<byte[]> getImageByProductId(@PathVariable int productId) {
-        Product product = productService.getProductById(productId);
-        return new ResponseEntity<>(product.getImageData(), HttpStatus.OK);
+    public ResponseEntity<Resource> getImageByProductId(@PathVariable int productId,
+                                                        @RequestParam(required = false) String size) {
+        ImageVariant.Size variantSize = null;
+        if (size != null) {
+            try {
+                variantSize = ImageVariant.Size.valueOf(size.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+            }
+        }
+        ProductVersion product = productService.getProductVersion(productId).orElse(null);
+        Resource image = product == null ? null : imageStorageService.load(product.imageHash());
+        if (image == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (variantSize != null) {
+            ImageVariant variant = imageVariantService.find(product.imageHash(), variantSize).orElse(null);
+            Resource variantImage = variant == null ? null : imageStorageService.load(variant.getImageHash());
+            if (variantImage != null) {
+                return ResponseEntity.ok()
+                        .contentType(imageMediaType(variant.getContentType()))
+                        .eTag(variant.getImageHash())
+                        .cacheControl(CacheControl.noCache())
+                        .body(variantImage);
+            }
+            imageVariantService.generateAsync(product.imageHash());
+            return ResponseEntity.ok()
+                    .contentType(imageMediaType(product.imageType()))
+                    .eTag(product.imageHash())
+                    .cacheControl(CacheControl.noCache())
+                    .body(image);
+        }
+        // The hash names the content, so it doubles as a strong ETag; Spring answers
+        // If-None-Match with 304 and serves Range requests from the resource on its own.
+        return ResponseEntity.ok()
+                .contentType(imageMediaType(product.imageType()))
+                .eTag(product.imageHash())
+                .cacheControl(CacheControl.noCache())
+                .body(image);
+    }
+
+    /**
+     * Serves an image by the hash of its bytes (a product's {@code imageHash}). The content
+     * under a hash never changes, so it is cached for a year without revalidation.
+     */
+    @GetMapping("/images/{imageHash}")
+    public ResponseEntity<Resource> getImageByHash(@PathVariable String imageHash) {
+        Resource image = imageStorageService.load(imageHash);
+        if (image == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .contentType(sniffMediaType(image))
+                .eTag(imageHash)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .body(image);
     }
 
     @PostMapping("/product")
@@ -51,38 +229,126 @@ public class ProductController {
         }
     }
 
+    // AI calls run on their own bulkheads, so the request thread is released while they wait
+    // refresh=true skips the cached description and generates a new one
     @PostMapping("/product/generate-description")
-    public ResponseEntity<String> getDescription(@RequestParam String name, @RequestParam String category) {
+    public CompletableFuture<ResponseEntity<String>> getDescription(@RequestParam String name, @RequestParam String category,
+                                                                    @RequestParam(defaultValue = "false") boolean refresh) {
+        return productService.generateDescriptionAsync(name, category, refresh)
+                .thenApply(description -> new ResponseEntity<>(description, HttpStatus.OK));
+    }
 
-        try {
-            return new ResponseEntity<>(productService.generateDescription(name, category), HttpStatus.OK);
+    @PostMapping("/product/generate-image")
+    public CompletableFuture<ResponseEntity<byte[]>> getImage(@RequestParam String name, @RequestParam String category, @RequestParam String description) {
+        return imageBulkhead.submit(() -> productService.generateImage(name, category, description))
+                .thenApply(aiImage -> new ResponseEntity<>(aiImage, HttpStatus.OK));
+    }
 
-        } catch (Exception e) {
-            return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+    /**
+     * Starts generating an image in the background and answers 202 with the job. Poll the
+     * {@code Location} or subscribe to its {@code /events}; the same prompt submitted while a job
+     * for it is running returns that job.
+     */
+    @PostMapping("/product/image-jobs")
+    public ResponseEntity<ImageJobResponse> startImageJob(@RequestParam String name, @RequestParam String category,
+                                                          @RequestParam String description) {
+        ImageJobResponse job = imageJobService.submit(productService.imagePrompt(name, category, description));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/product/image-jobs/" + job.jobId()))
+                .body(job);
+    }
+
+    @GetMapping("/product/image-jobs/{jobId}")
+    public ResponseEntity<ImageJobResponse> getImageJob(@PathVariable String jobId) {
+        ImageJobResponse job = imageJobService.get(jobId);
+        if (job == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
+        return new ResponseEntity<>(job, HttpStatus.OK);
     }
 
-    @PostMapping("/product/generate-image")
-    public ResponseEntity<?> getImage(@RequestParam String name, @RequestParam String category, @RequestParam String description) {
+    // One "status" event once the job has finished, then the stream closes
+    @GetMapping(value = "/product/image-jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<ImageJobResponse>>> imageJobEvents(@PathVariable String jobId) {
+        if (imageJobService.get(jobId) == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        Flux<ServerSentEvent<ImageJobResponse>> events = Mono.fromFuture(imageJobService.completion(jobId))
+                .map(job -> ServerSentEvent.builder(job).event("status").build())
+                .flux();
+        return new ResponseEntity<>(events, HttpStatus.OK);
+    }
+
+    @GetMapping("/product/image-jobs/{jobId}/image")
+    public ResponseEntity<Resource> getImageJobResult(@PathVariable String jobId) {
+        ImageJobResponse job = imageJobService.get(jobId);
+        Resource image = job == null ? null : imageStorageService.load(job.imageHash());
+        if (image == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_PNG)
+                .eTag(job.imageHash())
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+                .body(image);
+    }
+
+    /**
+     * Bulk import: the body is CSV with a header row ({@code text/csv}) or JSON, either an array
+     * or one object per line. Pass the {@code importId} of an interrupted import to resume it.
+     * The import runs in the background: the answer is 202 with the import, whose progress is at
+     * {@code /api/products/import/{importId}}, or 200 if that import had already completed.
+     */
+    @PostMapping(value = "/products/import", consumes = {"text/csv", MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ProductImportResult> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                              @RequestParam(required = false) String importId,
+                                                              InputStream body) {
+        ProductImportService.Format format = contentType.getSubtype().equalsIgnoreCase("csv")
+                ? ProductImportService.Format.CSV
+                : ProductImportService.Format.JSON;
+        ProductImportResult result;
         try {
-            byte[] aiImage = productService.generateImage(name, category, description);
-            return new ResponseEntity<>(aiImage, HttpStatus.OK);
-        } catch (Exception e) {
+            result = productImportService.submit(body, format, "upload", importId);
+        } catch (IOException e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
+        if (result.status().equals("COMPLETED")) {
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/products/import/" + result.importId()))
+                .body(result);
     }
 
+    @GetMapping("/products/import/{importId}")
+    public ResponseEntity<ProductImportResult> getImport(@PathVariable String importId) {
+        return productImportService.getImport(importId)
+                .map(result -> new ResponseEntity<>(result, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
 
     @PutMapping("/product/{id}")
     public ResponseEntity<String> updateProduct(
             @PathVariable int id,
             @RequestPart Product product,
-            @RequestPart(required = false) MultipartFile imageFile) {
+            @RequestPart(required = false) MultipartFile imageFile,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
+        Long expectedVersion;
+        try {
+            expectedVersion = versionFromEtag(id, ifMatch);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.PRECONDITION_FAILED);
+        }
         try {
             product.setId(id); // Ensure the ID is set
-            Product updatedProduct = productService.addOrUpdateProduct(product, imageFile);
-            return new ResponseEntity<>("Updated successfully", HttpStatus.OK);
+            // If-Match carries the ETag from GET /product/{id}; a stale one means someone else saved first
+            Product updatedProduct = productService.addOrUpdateProduct(product, imageFile, expectedVersion);
+            return ResponseEntity.ok()
+                    .eTag(new ProductVersion(id, updatedProduct.getVersion(), null, null, null).etag())
+                    .body("Updated successfully");
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.PRECONDITION_FAILED);
         } catch (IOException e) {
             return new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -99,9 +365,57 @@ public class ProductController {
     }
 
     @GetMapping("products/search")
-    public ResponseEntity<List<Product>> searchProducts(@RequestParam String keyword) {
-        List<Product> products = productService.searchProducts(keyword);
-        System.out.println("Searching for: " + keyword);
+    public ResponseEntity<List<ProductSummary>> searchProducts(@RequestParam String keyword,
+                                                               @RequestParam(defaultValue = "0") int page,
+                                                               @RequestParam(defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        List<ProductSummary> products = productService.searchProducts(keyword, Math.max(page, 0), pageSize);
+        log.debug("Searched products for '{}': {} results", keyword, products.size());
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
+
+    // JSON encoded by the catalog snapshot, written as is
+    private static ResponseEntity<byte[]> json(byte[] body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static long epochMillis(Instant instant) {
+        return instant == null ? -1 : instant.toEpochMilli();
+    }
+
+    // Reads the version out of a "product-<id>-v<version>" ETag. A weak tag is accepted too, since
+    // proxies that compress responses weaken ETags and the version is compared exactly anyway.
+    // No header or "*" means no precondition; any other tag can never match this product
+    private static Long versionFromEtag(int id, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String prefix = "product-" + id + "-v";
+        String tag = ifMatch.trim().replaceFirst("^W/", "").replace("\"", "");
+        if (tag.startsWith(prefix)) {
+            try {
+                return Long.parseLong(tag.substring(prefix.length()));
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        throw new IllegalArgumentException("If-Match " + ifMatch + " is not an ETag of product " + id);
+    }
+
+    // The store keeps bytes only, so the type comes from the image's magic number
+    private static MediaType sniffMediaType(Resource image) {
+        try (InputStream in = new BufferedInputStream(image.getInputStream())) {
+            return imageMediaType(URLConnection.guessContentTypeFromStream(in));
+        } catch (IOException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private static MediaType imageMediaType(String imageType) {
+        try {
+            return imageType != null ? MediaType.parseMediaType(imageType) : MediaType.APPLICATION_OCTET_STREAM;
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package com.learning.springecom.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a bulkhead turns a call away, either because its workers and queue are full or
+ * because the call ran past the bulkhead's timeout. Carries a hint for the Retry-After header.
+ */
+@Getter
+public class BulkheadRejectedException extends RuntimeException {
+
+    public enum Reason { FULL, TIMEOUT }
+
+    private final String bulkhead;
+    private final Reason reason;
+    private final Duration retryAfter;
+
+    public BulkheadRejectedException(String bulkhead, Reason reason, Duration retryAfter) {
+        super(reason == Reason.FULL
+                ? "Too many " + bulkhead + " requests in progress, try again later"
+                : "The " + bulkhead + " request timed out, try again later");
+        this.bulkhead = bulkhead;
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,20 @@
+package com.learning.springecom.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the asynchronous order intake cannot make an order durable, for instance because
+ * its journal cannot be written. Carries a hint for the Retry-After header.
+ */
+@Getter
+public class OrderIntakeUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public OrderIntakeUnavailableException(String message, Throwable cause, Duration retryAfter) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+}
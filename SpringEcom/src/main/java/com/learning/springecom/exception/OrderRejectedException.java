@@ -0,0 +1,21 @@
+package com.learning.springecom.exception;
+
+import com.learning.springecom.model.dto.OrderLineError;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Thrown when one or more order lines cannot be fulfilled. Carries every failing line so the
+ * client can fix the whole cart at once; the order transaction is rolled back.
+ */
+@Getter
+public class OrderRejectedException extends RuntimeException {
+
+    private final List<OrderLineError> errors;
+
+    public OrderRejectedException(List<OrderLineError> errors) {
+        super("Order could not be placed: " + errors.size() + " line(s) rejected");
+        this.errors = List.copyOf(errors);
+    }
+}
@@ -0,0 +1,48 @@
+package com.learning.springecom.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A resized copy of a stored image. Variants belong to the source image's hash rather than to a
+ * product, so an image shared by several products is resized once. The variant bytes live in
+ * the ImageStorageService under {@code imageHash}.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_image_variant_source_size", columnNames = {"source_hash", "size"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImageVariant {
+
+    // longest edge in pixels; images are scaled to fit and never enlarged
+    public enum Size {
+        THUMBNAIL(160), CARD(480), DETAIL(1024);
+
+        private final int maxEdge;
+
+        Size(int maxEdge) {
+            this.maxEdge = maxEdge;
+        }
+
+        public int getMaxEdge() {
+            return maxEdge;
+        }
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String sourceHash;
+    @Enumerated(EnumType.STRING)
+    private Size size;
+    private String imageHash;
+    private String contentType;
+    private int width;
+    private int height;
+    private long byteSize;
+}
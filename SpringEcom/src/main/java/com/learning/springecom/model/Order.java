@@ -9,12 +9,19 @@ import java.time.LocalDate;
 import java.util.List;
 
 @Entity(name = "orders")
+@Table(indexes = {
+        @Index(name = "idx_orders_order_date_id", columnList = "order_date, id"),
+        @Index(name = "idx_orders_email", columnList = "email"),
+        @Index(name = "idx_orders_status", columnList = "status")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
+    // Pooled sequence: one nextval per 50 orders, and unlike IDENTITY it lets Hibernate batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
     @Column(unique = true)
     private String orderId;
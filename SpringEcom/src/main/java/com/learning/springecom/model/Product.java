@@ -7,9 +7,15 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.Date;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_product_price_id", columnList = "price, id"),
+        @Index(name = "idx_product_release_date_id", columnList = "release_date, id"),
+        @Index(name = "idx_product_updated_at", columnList = "updated_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,11 +33,24 @@ public class Product {
     private int stockQuantity;
     private String imageName;
     private String imageType;
-    @Lob
-    private byte[] imageData;
+    // SHA-256 of the image bytes; the bytes themselves live in the ImageStorageService
+    private String imageHash;
+    private Long imageSize;
+    // Bumped on every change, including the JPQL/JDBC stock updates; the product's ETag is built from it.
+    // Primitive with a column default so rows that predate the column start at 0.
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+    private Instant updatedAt;
 
     public Product(int id){
         this.id = id;
     }
 
-}
\ No newline at end of file
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = Instant.now();
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.learning.springecom.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Progress of a bulk product import. {@code rowsCommitted} is the checkpoint: it is advanced in
+ * the same transaction that inserts each batch, so an interrupted import resumes after the last
+ * row that was actually written.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductImport {
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    @Id
+    private String id;
+    private String source;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    // source rows (imported or rejected) covered by committed batches
+    private long rowsCommitted;
+    private long rowsImported;
+    private long rowsFailed;
+    private Instant startedAt;
+    private Instant updatedAt;
+    @Column(length = 1000)
+    private String lastError;
+}
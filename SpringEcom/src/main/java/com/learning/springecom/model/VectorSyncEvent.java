@@ -0,0 +1,45 @@
+package com.learning.springecom.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Outbox row recording that a product or order document in the vector store is stale.
+ * Written in the same transaction as the change itself and drained by VectorSyncService.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_vector_sync_event_next_attempt", columnList = "next_attempt_at, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VectorSyncEvent {
+
+    public enum DocumentType { PRODUCT, ORDER }
+
+    public enum Operation { UPSERT, DELETE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    private DocumentType documentType;
+    // product id or order number
+    private String documentId;
+    @Enumerated(EnumType.STRING)
+    private Operation operation;
+    private Instant createdAt;
+    private Instant nextAttemptAt;
+    private int attempts;
+    @Column(length = 1000)
+    private String lastError;
+    // set when the event failed max-attempts times; it is no longer retried
+    private Instant parkedAt;
+    // HNSW store version that contains the change; kept until a snapshot of that version is written
+    private Long appliedVersion;
+}
@@ -0,0 +1,33 @@
+package com.learning.springecom.model.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Optional filters for the product listing; a null field does not filter. Category matches
+ * ignore case, and the price bounds are inclusive.
+ */
+public record CatalogFilter(
+        String category,
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        Boolean available
+) {
+    public boolean isEmpty() {
+        return category == null && minPrice == null && maxPrice == null && available == null;
+    }
+
+    public boolean matchesPrice(BigDecimal price) {
+        if (minPrice == null && maxPrice == null) {
+            return true;
+        }
+        return price != null
+                && (minPrice == null || price.compareTo(minPrice) >= 0)
+                && (maxPrice == null || price.compareTo(maxPrice) <= 0);
+    }
+
+    public boolean matches(String productCategory, BigDecimal price, boolean productAvailable) {
+        return (category == null || category.equalsIgnoreCase(productCategory))
+                && (available == null || available == productAvailable)
+                && matchesPrice(price);
+    }
+}
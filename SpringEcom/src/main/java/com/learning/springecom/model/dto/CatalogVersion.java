@@ -0,0 +1,19 @@
+package com.learning.springecom.model.dto;
+
+import java.time.Instant;
+
+/**
+ * Change token for the whole catalog. Every product write bumps its version, so an update
+ * changes {@code versionSum} and an insert or delete changes {@code productCount}. Unlike the
+ * newest {@code updatedAt} alone, this also catches a write that commits after a newer one.
+ */
+public record CatalogVersion(
+        long productCount,
+        long versionSum,
+        Instant lastModified
+) {
+    public String etag() {
+        String modified = lastModified == null ? "0" : lastModified.getEpochSecond() + "." + lastModified.getNano();
+        return "\"catalog-" + productCount + "-" + versionSum + "-" + modified + "\"";
+    }
+}
@@ -0,0 +1,18 @@
+package com.learning.springecom.model.dto;
+
+import java.time.Instant;
+
+/**
+ * State of an image-generation job. {@code imageUrl} and {@code imageHash} are set once the job
+ * has {@code SUCCEEDED}; {@code error} once it has {@code FAILED}.
+ */
+public record ImageJobResponse(
+        String jobId,
+        String status,
+        Instant createdAt,
+        Instant completedAt,
+        String imageHash,
+        String imageUrl,
+        String error
+) {
+}
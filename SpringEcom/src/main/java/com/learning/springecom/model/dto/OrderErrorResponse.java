@@ -0,0 +1,9 @@
+package com.learning.springecom.model.dto;
+
+import java.util.List;
+
+public record OrderErrorResponse(
+        String message,
+        List<OrderLineError> errors
+) {
+}
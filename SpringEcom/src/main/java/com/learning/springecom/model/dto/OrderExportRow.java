@@ -0,0 +1,17 @@
+package com.learning.springecom.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// One order line for the export; item fields are null for an order without lines
+public record OrderExportRow(
+        String orderId,
+        String customerName,
+        String email,
+        String status,
+        LocalDate orderDate,
+        String productName,
+        Integer quantity,
+        BigDecimal totalPrice
+) {
+}
@@ -0,0 +1,20 @@
+package com.learning.springecom.model.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * State of an order taken by the asynchronous intake. {@code order} is set once the order is
+ * {@code PLACED}, {@code errors} once it is {@code REJECTED} and {@code error} once it has
+ * {@code FAILED}.
+ */
+public record OrderIntakeResponse(
+        String orderId,
+        String status,
+        Instant acceptedAt,
+        Instant completedAt,
+        OrderResponse order,
+        List<OrderLineError> errors,
+        String error
+) {
+}
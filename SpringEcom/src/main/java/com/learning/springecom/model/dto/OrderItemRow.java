@@ -0,0 +1,12 @@
+package com.learning.springecom.model.dto;
+
+import java.math.BigDecimal;
+
+// One order line joined with its product name, see OrderRepo.findItemRows
+public record OrderItemRow(
+        Long orderKey,
+        String productName,
+        int quantity,
+        BigDecimal totalPrice
+) {
+}
@@ -0,0 +1,10 @@
+package com.learning.springecom.model.dto;
+
+public record OrderLineError(
+        int productId,
+        String productName,
+        int requestedQuantity,
+        int availableQuantity,
+        String reason
+) {
+}
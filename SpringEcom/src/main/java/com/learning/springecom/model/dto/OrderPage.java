@@ -0,0 +1,12 @@
+package com.learning.springecom.model.dto;
+
+import java.util.List;
+
+public record OrderPage(
+        List<OrderResponse> items,
+        int page,
+        int size,
+        long totalElements,
+        int totalPages
+) {
+}
@@ -0,0 +1,11 @@
+package com.learning.springecom.model.dto;
+
+/**
+ * A source row that was not imported. {@code row} counts data rows from 1, not counting a CSV
+ * header.
+ */
+public record ProductImportError(
+        long row,
+        String message
+) {
+}
@@ -0,0 +1,21 @@
+package com.learning.springecom.model.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of one run of a bulk import. Counts cover the whole import, including earlier runs that
+ * were resumed; {@code rowsSkipped} were committed by those runs. {@code error} is set when the
+ * run stopped early, and {@code errors} lists the rows rejected by this run, up to
+ * {@code app.import.max-reported-errors}.
+ */
+public record ProductImportResult(
+        String importId,
+        String status,
+        long rowsCommitted,
+        long rowsImported,
+        long rowsFailed,
+        long rowsSkipped,
+        String error,
+        List<ProductImportError> errors
+) {
+}
@@ -0,0 +1,9 @@
+package com.learning.springecom.model.dto;
+
+import java.util.List;
+
+public record ProductPage(
+        List<ProductSummary> items,
+        String nextCursor
+) {
+}
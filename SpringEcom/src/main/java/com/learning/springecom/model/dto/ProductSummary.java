@@ -0,0 +1,17 @@
+package com.learning.springecom.model.dto;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+public record ProductSummary(
+        int id,
+        String name,
+        String description,
+        String brand,
+        BigDecimal price,
+        String category,
+        Date releaseDate,
+        boolean productAvailable,
+        int stockQuantity
+) {
+}
@@ -0,0 +1,19 @@
+package com.learning.springecom.model.dto;
+
+import java.time.Instant;
+
+/**
+ * Version and image reference of one product, enough to answer a conditional GET for the
+ * product or its image without loading the entity.
+ */
+public record ProductVersion(
+        int id,
+        long version,
+        Instant updatedAt,
+        String imageHash,
+        String imageType
+) {
+    public String etag() {
+        return "\"product-" + id + "-v" + version + "\"";
+    }
+}
@@ -0,0 +1,21 @@
+package com.learning.springecom.repo;
+
+import com.learning.springecom.model.ImageVariant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ImageVariantRepo extends JpaRepository<ImageVariant, Long> {
+
+    Optional<ImageVariant> findBySourceHashAndSize(String sourceHash, ImageVariant.Size size);
+
+    List<ImageVariant> findBySourceHash(String sourceHash);
+
+    @Query("SELECT DISTINCT p.imageHash FROM Product p WHERE p.imageHash IS NOT NULL " +
+            "AND NOT EXISTS (SELECT v.id FROM ImageVariant v WHERE v.sourceHash = p.imageHash)")
+    List<String> findSourceHashesWithoutVariants();
+}
@@ -1,12 +1,56 @@
 package com.learning.springecom.repo;
 
 import com.learning.springecom.model.Order;
+import com.learning.springecom.model.dto.OrderExportRow;
+import com.learning.springecom.model.dto.OrderItemRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface OrderRepo extends JpaRepository<Order, Integer> {
+public interface OrderRepo extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order> {
+
+    String SELECT_ITEM_ROW = "SELECT new com.learning.springecom.model.dto.OrderItemRow(" +
+            "i.order.id, p.name, i.quantity, i.totalPrice) FROM OrderItem i JOIN i.product p ";
+
     Optional<Order> findByOrderId(String orderId);
+
+    @EntityGraph(attributePaths = {"orderItems", "orderItems.product"})
+    List<Order> findByOrderIdIn(Collection<String> orderIds);
+
+    @Query("SELECT o.orderId FROM orders o WHERE o.orderId IN :orderIds")
+    List<String> findExistingOrderIds(Collection<String> orderIds);
+
+    // Lines of a page of orders with just the product name, instead of lazy-loading
+    // items per order and whole products per item
+    @Query(SELECT_ITEM_ROW + "WHERE i.order.id IN :orderIds ORDER BY i.order.id, i.id")
+    List<OrderItemRow> findItemRows(Collection<Long> orderIds);
+
+    @Query(SELECT_ITEM_ROW + "ORDER BY i.order.id, i.id")
+    List<OrderItemRow> findAllItemRows();
+
+    /**
+     * Order lines for the export, read through a server-side cursor in chunks of 500 rows.
+     * Must be consumed inside a transaction and closed by the caller.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.learning.springecom.model.dto.OrderExportRow(" +
+            "o.orderId, o.customerName, o.email, o.status, o.orderDate, p.name, i.quantity, i.totalPrice) " +
+            "FROM orders o LEFT JOIN o.orderItems i LEFT JOIN i.product p " +
+            "WHERE o.orderDate >= :from AND o.orderDate <= :to ORDER BY o.id, i.id")
+    Stream<OrderExportRow> streamExportRows(LocalDate from, LocalDate to);
 }
@@ -0,0 +1,9 @@
+package com.learning.springecom.repo;
+
+import com.learning.springecom.model.ProductImport;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProductImportRepo extends JpaRepository<ProductImport, String> {
+}
@@ -1,20 +1,87 @@
 package com.learning.springecom.repo;
 
 import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.CatalogVersion;
+import com.learning.springecom.model.dto.ProductSummary;
+import com.learning.springecom.model.dto.ProductVersion;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProductRepo extends JpaRepository<Product, Integer> {
-    @Query("SELECT p FROM Product p  WHERE " +
-            "LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-            "LOWER(p.description) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-            "LOWER(p.brand) LIKE LOWER(CONCAT('%', :keyword, '%')) OR " +
-            "LOWER(p.category) LIKE LOWER(CONCAT('%', :keyword, '%'))"
-    )
-    List<Product> searchProducts(String keyword);
+
+    String SELECT_SUMMARY = "SELECT new com.learning.springecom.model.dto.ProductSummary(" +
+            "p.id, p.name, p.description, p.brand, p.price, p.category, " +
+            "p.releaseDate, p.productAvailable, p.stockQuantity) FROM Product p ";
+
+    /**
+     * Ranked full-text search over the generated {@code search_vector} column (GIN indexed),
+     * OR-ed with a trigram word-similarity match on the name to tolerate typos.
+     * Both predicates are served from indexes; see init/schema.sql.
+     */
+    @Query(value = "SELECT p.id FROM product p, to_tsquery('english', :tsQuery) q " +
+            "WHERE p.search_vector @@ q OR :keyword <% p.name " +
+            "ORDER BY ts_rank_cd(p.search_vector, q, 32) + word_similarity(:keyword, p.name) DESC, p.id " +
+            "LIMIT :limit OFFSET :offset",
+            nativeQuery = true)
+    List<Integer> searchProductIds(String tsQuery, String keyword, int limit, int offset);
+
+    @Query("SELECT DISTINCT p.category FROM Product p WHERE p.category IS NOT NULL")
+    List<String> findCategories();
+
+    @Query(SELECT_SUMMARY + "WHERE p.id IN :ids")
+    List<ProductSummary> findSummariesByIdIn(Collection<Integer> ids);
+
+    /**
+     * Takes {@code quantity} units of stock in one statement, only if that much is left.
+     * Returns 0 when the stock is insufficient (or the product is gone), so concurrent
+     * checkouts of the same product can never oversell.
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity - :quantity, " +
+            "p.version = p.version + 1, p.updatedAt = :now " +
+            "WHERE p.id = :id AND p.stockQuantity >= :quantity")
+    int decrementStock(int id, int quantity, Instant now);
+
+    // Validators for conditional GETs, read without loading the entities
+
+    @Query("SELECT new com.learning.springecom.model.dto.CatalogVersion(COUNT(p), COALESCE(SUM(p.version), 0L), MAX(p.updatedAt)) FROM Product p")
+    CatalogVersion findCatalogVersion();
+
+    @Query("SELECT new com.learning.springecom.model.dto.ProductVersion(p.id, p.version, p.updatedAt, p.imageHash, p.imageType) " +
+            "FROM Product p WHERE p.id = :id")
+    Optional<ProductVersion> findVersionById(int id);
+
+    @Query("SELECT p.stockQuantity FROM Product p WHERE p.id = :id")
+    Optional<Integer> findStockQuantity(int id);
+
+    // Keyset pages for the catalog listing; each sort has a matching (key, id) index on Product
+
+    @Query(SELECT_SUMMARY + "WHERE p.id > :afterId ORDER BY p.id")
+    List<ProductSummary> findSummariesAfterId(int afterId, Limit limit);
+
+    @Query(SELECT_SUMMARY + "WHERE p.price IS NOT NULL ORDER BY p.price, p.id")
+    List<ProductSummary> findSummariesByPrice(Limit limit);
+
+    @Query(SELECT_SUMMARY + "WHERE p.price > :price OR (p.price = :price AND p.id > :afterId) " +
+            "ORDER BY p.price, p.id")
+    List<ProductSummary> findSummariesAfterPrice(BigDecimal price, int afterId, Limit limit);
+
+    @Query(SELECT_SUMMARY + "WHERE p.releaseDate IS NOT NULL ORDER BY p.releaseDate, p.id")
+    List<ProductSummary> findSummariesByReleaseDate(Limit limit);
+
+    @Query(SELECT_SUMMARY + "WHERE p.releaseDate > :releaseDate OR (p.releaseDate = :releaseDate AND p.id > :afterId) " +
+            "ORDER BY p.releaseDate, p.id")
+    List<ProductSummary> findSummariesAfterReleaseDate(Date releaseDate, int afterId, Limit limit);
 }
@@ -0,0 +1,29 @@
+package com.learning.springecom.repo;
+
+import com.learning.springecom.model.VectorSyncEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface VectorSyncEventRepo extends JpaRepository<VectorSyncEvent, Long> {
+
+    // SKIP LOCKED lets several app nodes drain the outbox without picking the same rows
+    @Query(value = "SELECT * FROM vector_sync_event WHERE next_attempt_at <= :now " +
+            "AND parked_at IS NULL AND applied_version IS NULL " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<VectorSyncEvent> claimDue(Instant now, int limit);
+
+    @Query("SELECT COUNT(e) FROM VectorSyncEvent e WHERE e.parkedAt IS NULL AND e.appliedVersion IS NULL")
+    long countPending();
+
+    @Query("SELECT COUNT(e) FROM VectorSyncEvent e WHERE e.parkedAt IS NOT NULL")
+    long countParked();
+
+    @Query("SELECT MIN(e.createdAt) FROM VectorSyncEvent e WHERE e.parkedAt IS NULL AND e.appliedVersion IS NULL")
+    Instant findOldestCreatedAt();
+}
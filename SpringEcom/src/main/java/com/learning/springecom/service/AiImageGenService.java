@@ -1,39 +1,96 @@
 package com.learning.springecom.service;
 
+import org.springframework.ai.image.Image;
 import org.springframework.ai.image.ImageModel;
 import org.springframework.ai.image.ImagePrompt;
 import org.springframework.ai.image.ImageResponse;
 import org.springframework.ai.openai.OpenAiImageOptions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.util.UriBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.time.Duration;
+import java.util.Base64;
 
+/**
+ * Generates product images with DALL-E. The image is requested as base64 in the completion
+ * response, so there is no second round trip to download it. If the model answers with a URL
+ * instead, the download is streamed with a connect timeout and a timeout on every read of the
+ * body, so a stalled transfer fails instead of holding the caller.
+ */
 @Service
 public class AiImageGenService {
 
     @Autowired
     private ImageModel imageModel;
 
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    @Value("${app.image-gen.read-timeout:PT30S}")
+    private Duration readTimeout;
+
     public byte[] generateImage(String imagePrompt) {
+        try (InputStream image = openImage(imagePrompt)) {
+            return image.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generates an image and writes it straight into the image store.
+     * Returns the content hash of the stored image.
+     */
+    public String generateAndStore(String imagePrompt) {
+        try {
+            return imageStorageService.store(openImage(imagePrompt));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private InputStream openImage(String imagePrompt) throws IOException {
         OpenAiImageOptions options = OpenAiImageOptions.builder()
                 .N(1)
                 .width(1024)
                 .height(1024)
                 .quality("standard")
-                .responseFormat("url")
+                .responseFormat("b64_json")
                 .model("dall-e-3")
                 .build();
 
         ImageResponse response = imageModel.call(new ImagePrompt(imagePrompt, options));
-        String imageUrl = response.getResult().getOutput().getUrl();
-        try {
-            return new URL(imageUrl).openStream().readAllBytes();
+        Image image = response.getResult().getOutput();
+        if (image.getB64Json() != null) {
+            return new ByteArrayInputStream(Base64.getDecoder().decode(image.getB64Json()));
+        }
+        if (image.getUrl() != null) {
+            return download(image.getUrl());
+        }
+        throw new IllegalStateException("Image model returned neither image data nor a URL");
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    // HttpURLConnection rather than HttpClient: its read timeout bounds every read of the body,
+    // while HttpClient's request timeout stops at the response headers
+    private InputStream download(String imageUrl) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(imageUrl).toURL().openConnection();
+        connection.setConnectTimeout((int) CONNECT_TIMEOUT.toMillis());
+        connection.setReadTimeout((int) readTimeout.toMillis());
+        connection.setInstanceFollowRedirects(true);
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Image download failed with HTTP " + status);
         }
+        return connection.getInputStream();
     }
 }
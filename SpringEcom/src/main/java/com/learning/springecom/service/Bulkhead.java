@@ -0,0 +1,92 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.exception.BulkheadRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Isolates one kind of slow call (an AI endpoint) on its own small pool, so a burst of it cannot
+ * use up the servlet threads that serve the catalog and checkout. At most {@code maxConcurrent}
+ * calls run and at most {@code queueCapacity} wait; further calls fail at once. A call that runs
+ * past the timeout is interrupted and fails as well. Both failures are
+ * {@link BulkheadRejectedException}s, delivered through the returned future.
+ * <p>
+ * Meters, tagged with the bulkhead name: {@code bulkhead.active}, {@code bulkhead.queued},
+ * {@code bulkhead.max.concurrent} and {@code bulkhead.rejected} (tagged with the reason).
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final Duration timeout;
+    private final Duration retryAfter;
+    private final ThreadPoolExecutor executor;
+    private final Counter rejectedFull;
+    private final Counter rejectedTimeout;
+
+    public Bulkhead(String name, int maxConcurrent, int queueCapacity, Duration timeout, Duration retryAfter,
+                    MeterRegistry meterRegistry) {
+        this.name = name;
+        this.timeout = timeout;
+        this.retryAfter = retryAfter;
+        // a queue of 0 hands calls straight to an idle worker or turns them away
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS, queue,
+                new CustomizableThreadFactory("bulkhead-" + name + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .tag("name", name).register(meterRegistry);
+        Gauge.builder("bulkhead.queued", executor, pool -> pool.getQueue().size())
+                .tag("name", name).register(meterRegistry);
+        Gauge.builder("bulkhead.max.concurrent", executor, ThreadPoolExecutor::getMaximumPoolSize)
+                .tag("name", name).register(meterRegistry);
+        rejectedFull = Counter.builder("bulkhead.rejected").tag("name", name).tag("reason", "full")
+                .register(meterRegistry);
+        rejectedTimeout = Counter.builder("bulkhead.rejected").tag("name", name).tag("reason", "timeout")
+                .register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedFull.increment();
+            return CompletableFuture.failedFuture(
+                    new BulkheadRejectedException(name, BulkheadRejectedException.Reason.FULL, retryAfter));
+        }
+
+        // the timeout covers time spent queued as well as running
+        return result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).exceptionallyCompose(error -> {
+            if (error instanceof TimeoutException) {
+                running.cancel(true);
+                rejectedTimeout.increment();
+                return CompletableFuture.failedFuture(
+                        new BulkheadRejectedException(name, BulkheadRejectedException.Reason.TIMEOUT, retryAfter));
+            }
+            return CompletableFuture.failedFuture(error);
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
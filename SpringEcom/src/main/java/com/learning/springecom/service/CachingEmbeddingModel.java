@@ -0,0 +1,177 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Embedding model decorator that remembers embeddings in the {@code embedding_cache} table,
+ * keyed by a SHA-256 of the model name and the embedded text. Only texts that were never
+ * embedded before reach the delegate, so re-adding an unchanged document (for example after
+ * a stock change that only touched its metadata) costs a table lookup, not an API call.
+ * <p>
+ * Only document embeddings are cached. A single text passed to {@link #embed(String)} is a
+ * query (a similarity search, a chat question) and goes straight to the delegate, so one-off
+ * texts never reach the table. Rows not used for {@code app.embedding.cache.retention}, such as
+ * those of since-edited products, are purged.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    // last_used_at is moved on at most this often, so hits do not turn into a write each
+    private static final Duration TOUCH_INTERVAL = Duration.ofDays(1);
+
+    private final EmbeddingModel delegate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String modelName;
+    private final Counter hits;
+    private final Counter misses;
+    private final StageMetrics stageMetrics;
+    private final Duration retention;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate, String modelName,
+                                 MeterRegistry meterRegistry, StageMetrics stageMetrics, Duration retention) {
+        this.delegate = delegate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.modelName = modelName;
+        this.hits = Counter.builder("embedding.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("embedding.cache").tag("result", "miss").register(meterRegistry);
+        this.stageMetrics = stageMetrics;
+        this.retention = retention;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        List<String> keys = texts.stream().map(this::cacheKey).toList();
+        Map<String, float[]> vectors = stageMetrics.record("embedding.cache.lookup", () -> lookup(keys));
+
+        // Texts may repeat within one request; embed each distinct miss once
+        Map<String, String> missingTextByKey = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            if (!vectors.containsKey(keys.get(i))) {
+                missingTextByKey.putIfAbsent(keys.get(i), texts.get(i));
+            }
+        }
+        hits.increment(texts.size() - missingTextByKey.size());
+
+        if (!missingTextByKey.isEmpty()) {
+            misses.increment(missingTextByKey.size());
+            List<String> missingKeys = new ArrayList<>(missingTextByKey.keySet());
+            EmbeddingResponse response = stageMetrics.record("embedding.api", () -> delegate.call(
+                    new EmbeddingRequest(new ArrayList<>(missingTextByKey.values()), request.getOptions())));
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < results.size(); i++) {
+                vectors.put(missingKeys.get(i), results.get(i).getOutput());
+            }
+            store(missingKeys, vectors);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(keys.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        return stageMetrics.record("embedding.api", () -> delegate.embed(text));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(List.of(document.getText())).get(0);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private Map<String, float[]> lookup(List<String> keys) {
+        Map<String, float[]> found = new HashMap<>();
+        jdbcTemplate.query(
+                con -> {
+                    var statement = con.prepareStatement(
+                            "SELECT content_hash, embedding FROM embedding_cache WHERE content_hash = ANY(?)");
+                    statement.setArray(1, con.createArrayOf("text", keys.toArray()));
+                    return statement;
+                },
+                rs -> {
+                    found.put(rs.getString(1), fromBytes(rs.getBytes(2)));
+                });
+        if (!found.isEmpty()) {
+            touch(found.keySet());
+        }
+        return found;
+    }
+
+    // The pool does not auto-commit, so writes outside a transaction are rolled back on release
+    private void touch(Set<String> keys) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                con -> {
+                    var statement = con.prepareStatement(
+                            "UPDATE embedding_cache SET last_used_at = now() WHERE content_hash = ANY(?) AND last_used_at < ?");
+                    statement.setArray(1, con.createArrayOf("text", keys.toArray()));
+                    statement.setTimestamp(2, Timestamp.from(Instant.now().minus(TOUCH_INTERVAL)));
+                    return statement;
+                }));
+    }
+
+    @Scheduled(fixedDelayString = "${app.embedding.cache.purge-interval-ms:3600000}")
+    public void purgeUnused() {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                "DELETE FROM embedding_cache WHERE last_used_at < ?", Timestamp.from(Instant.now().minus(retention))));
+    }
+
+    private void store(List<String> keys, Map<String, float[]> vectors) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                "INSERT INTO embedding_cache (content_hash, embedding) VALUES (?, ?) "
+                        + "ON CONFLICT (content_hash) DO UPDATE SET last_used_at = now()",
+                keys.stream().map(key -> new Object[]{key, toBytes(vectors.get(key))}).toList()));
+    }
+
+    private String cacheKey(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] fromBytes(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,200 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.ProductSummary;
+import com.learning.springecom.repo.ProductRepo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves catalog browsing ({@code GET /api/products}, the product pages and product detail)
+ * from a {@link CatalogSnapshot} instead of the database.
+ * <p>
+ * The snapshot is built when the application is ready and then patched with the products that
+ * {@link ProductCache} reports as changed, on this node or (through its notifications) on
+ * others. Admin edits are applied before the request that made them returns; stock changes are
+ * collected and applied every {@code app.catalog.refresh-interval-ms}. Each change builds a new
+ * snapshot under a lock and publishes it through a volatile field, so readers never wait.
+ * Every {@code app.catalog.reconcile-interval-ms} the snapshot's product versions are compared
+ * with the table and any difference is reloaded, which also covers notifications missed while
+ * the listener was reconnecting.
+ * <p>
+ * Until the first snapshot is built, or with {@code app.catalog.enabled=false},
+ * {@link #current()} is null and callers read from the database.
+ */
+@Slf4j
+@Service
+public class CatalogReadModel {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.catalog.enabled:true}")
+    private boolean enabled;
+
+    private volatile CatalogSnapshot snapshot;
+    // changed products not yet applied to the snapshot
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("catalog.snapshot.products", this, model -> model.snapshot == null ? 0 : model.snapshot.size())
+                .register(meterRegistry);
+    }
+
+    public CatalogSnapshot current() {
+        return snapshot;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void build() {
+        if (!enabled) {
+            return;
+        }
+        // changes committed from here on are applied again after the build
+        pending.clear();
+        try {
+            snapshot = stageMetrics.record("catalog.build", () -> CatalogSnapshot.of(load(null)));
+            log.info("Catalog snapshot built with {} products", snapshot.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not build the catalog snapshot, reading from the database until the next attempt", e);
+        }
+    }
+
+    /** Applies the products' current rows before returning, or queues them if that fails. */
+    public void refresh(Collection<Integer> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        try {
+            apply(new HashSet<>(ids));
+        } catch (RuntimeException e) {
+            pending.addAll(ids);
+            log.warn("Failed to refresh {} products in the catalog snapshot, will retry", ids.size(), e);
+        }
+    }
+
+    /** Queues the products for the next scheduled refresh. */
+    public void refreshLater(Collection<Integer> ids) {
+        if (enabled) {
+            pending.addAll(ids);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.catalog.refresh-interval-ms:200}")
+    public void applyPending() {
+        if (pending.isEmpty() || snapshot == null) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>(pending);
+        pending.removeAll(ids);
+        try {
+            apply(ids);
+        } catch (RuntimeException e) {
+            pending.addAll(ids);
+            log.warn("Failed to refresh {} products in the catalog snapshot, will retry", ids.size(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.catalog.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            build();
+            return;
+        }
+        Set<Integer> stale = new HashSet<>();
+        Set<Integer> seen = new HashSet<>();
+        jdbcTemplate.query("SELECT id, version FROM product", rs -> {
+            int id = rs.getInt(1);
+            seen.add(id);
+            if (current.versionOf(id) != rs.getLong(2)) {
+                stale.add(id);
+            }
+        });
+        for (int i = 0; i < current.size(); i++) {
+            if (!seen.contains(current.id(i))) {
+                stale.add(current.id(i));
+            }
+        }
+        if (!stale.isEmpty()) {
+            log.debug("Catalog snapshot differs from the table for {} products", stale.size());
+            refreshLater(stale);
+        }
+    }
+
+    // Loading inside the lock keeps an older read from being applied after a newer one
+    private synchronized void apply(Set<Integer> ids) {
+        CatalogSnapshot current = snapshot;
+        if (current == null) {
+            pending.addAll(ids);
+            return;
+        }
+        snapshot = stageMetrics.record("catalog.refresh", () -> {
+            List<CatalogSnapshot.Row> rows = load(ids);
+            Set<Integer> removed = new HashSet<>(ids);
+            rows.forEach(row -> removed.remove(row.id()));
+            return current.with(rows, removed);
+        });
+    }
+
+    // All products, or only the given ones. A new transaction even when called after a commit,
+    // where the finished transaction's persistence context would otherwise be reused
+    private List<CatalogSnapshot.Row> load(Collection<Integer> ids) {
+        TransactionTemplate readOnly = new TransactionTemplate(Objects.requireNonNull(transactionTemplate.getTransactionManager()));
+        readOnly.setReadOnly(true);
+        readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return readOnly.execute(status -> {
+            List<Product> products = ids == null ? productRepo.findAll() : productRepo.findAllById(ids);
+            List<CatalogSnapshot.Row> rows = new ArrayList<>(products.size());
+            for (Product product : products) {
+                rows.add(row(product));
+            }
+            return rows;
+        });
+    }
+
+    private CatalogSnapshot.Row row(Product product) {
+        ProductSummary summary = new ProductSummary(product.getId(), product.getName(), product.getDescription(),
+                product.getBrand(), product.getPrice(), product.getCategory(), product.getReleaseDate(),
+                product.isProductAvailable(), product.getStockQuantity());
+        try {
+            return new CatalogSnapshot.Row(product.getId(), product.getVersion(), product.getUpdatedAt(),
+                    product.getPrice(), product.getReleaseDate(), product.getCategory(), product.isProductAvailable(),
+                    objectMapper.writeValueAsBytes(product), objectMapper.writeValueAsBytes(summary));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode product " + product.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.dto.CatalogFilter;
+import com.learning.springecom.model.dto.CatalogVersion;
+import com.learning.springecom.service.ProductCursor.ProductSort;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+
+/**
+ * One immutable version of the catalog, held column-wise: parallel arrays ordered by product id
+ * for the fields the listing filters and sorts on, plus each product's JSON, encoded once when
+ * the snapshot is built (the full product for the listing and detail, the summary for pages).
+ * <p>
+ * Reads only index into the arrays and copy the encoded bytes into the response, so they take
+ * no locks and create no per-product objects. Changes produce a new snapshot ({@link #with}) that
+ * shares everything they did not touch, which {@link CatalogReadModel} swaps in.
+ */
+public final class CatalogSnapshot {
+
+    private static final byte[] COMMA = {','};
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    /** One product as it goes into a snapshot. */
+    record Row(int id, long version, Instant updatedAt, BigDecimal price, Date releaseDate, String category,
+               boolean available, byte[] detail, byte[] summary) {
+    }
+
+    private final int[] ids;
+    private final long[] versions;
+    private final Instant[] updatedAt;
+    private final BigDecimal[] prices;
+    // epoch millis, NO_DATE when unset
+    private final long[] releaseDates;
+    // index into categoryNames, -1 when unset
+    private final int[] categories;
+    private final String[] categoryNames;
+    private final BitSet available;
+    // positions in price / release date order (ties by id), products without the value left out
+    private final int[] byPrice;
+    private final int[] byReleaseDate;
+    private final byte[][] details;
+    private final byte[][] summaries;
+    private final CatalogVersion version;
+    // the unfiltered listing, encoded on first use
+    private volatile byte[] allProducts;
+
+    private static final CatalogSnapshot EMPTY = new CatalogSnapshot(new int[0], new long[0], new Instant[0],
+            new BigDecimal[0], new long[0], new int[0], new String[0], new BitSet(), new int[0], new int[0],
+            new byte[0][], new byte[0][], new CatalogVersion(0, 0, null));
+
+    private CatalogSnapshot(int[] ids, long[] versions, Instant[] updatedAt, BigDecimal[] prices, long[] releaseDates,
+                            int[] categories, String[] categoryNames, BitSet available, int[] byPrice,
+                            int[] byReleaseDate, byte[][] details, byte[][] summaries, CatalogVersion version) {
+        this.ids = ids;
+        this.versions = versions;
+        this.updatedAt = updatedAt;
+        this.prices = prices;
+        this.releaseDates = releaseDates;
+        this.categories = categories;
+        this.categoryNames = categoryNames;
+        this.available = available;
+        this.byPrice = byPrice;
+        this.byReleaseDate = byReleaseDate;
+        this.details = details;
+        this.summaries = summaries;
+        this.version = version;
+    }
+
+    static CatalogSnapshot of(Collection<Row> rows) {
+        return EMPTY.with(rows, List.of());
+    }
+
+    /**
+     * A copy with the given rows added or replaced and the given ids removed.
+     * <p>
+     * Only the changed positions are written: when no product is added or removed the columns are
+     * copied and patched in place, otherwise they are merged with the changes in one pass in id
+     * order. The price and release date orders are kept as they are when no changed row moved in
+     * them (a stock or availability change), and otherwise have only the moved positions merged
+     * back in.
+     */
+    CatalogSnapshot with(Collection<Row> changed, Collection<Integer> removed) {
+        Row[] updates = changed.toArray(new Row[0]);
+        // stable, so of two rows for one id the later one wins below
+        Arrays.sort(updates, Comparator.comparingInt(Row::id));
+        int[] drop = removed.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+
+        // line up the old positions and the changed rows by id
+        int n = ids.length;
+        int capacity = n + updates.length;
+        int[] nextIds = new int[capacity];
+        int[] fromOld = new int[capacity];
+        Row[] fromRow = new Row[capacity];
+        int[] oldToNew = new int[n];
+        int m = 0;
+        int added = 0;
+        for (int i = 0, u = 0, d = 0; i < n || u < updates.length; ) {
+            if (u == updates.length || i < n && ids[i] < updates[u].id()) {
+                while (d < drop.length && drop[d] < ids[i]) {
+                    d++;
+                }
+                if (d < drop.length && drop[d] == ids[i]) {
+                    oldToNew[i++] = -1;
+                    continue;
+                }
+                oldToNew[i] = m;
+                nextIds[m] = ids[i];
+                fromOld[m++] = i++;
+            } else {
+                Row row = updates[u++];
+                while (u < updates.length && updates[u].id() == row.id()) {
+                    row = updates[u++];
+                }
+                int old = -1;
+                if (i < n && ids[i] == row.id()) {
+                    old = i;
+                    oldToNew[i++] = m;
+                } else {
+                    added++;
+                }
+                nextIds[m] = row.id();
+                fromOld[m] = old;
+                fromRow[m++] = row;
+            }
+        }
+        boolean samePositions = added == 0 && m == n;
+
+        long[] nextVersions;
+        Instant[] nextUpdatedAt;
+        BigDecimal[] nextPrices;
+        long[] nextReleaseDates;
+        int[] nextCategories;
+        BitSet nextAvailable;
+        byte[][] nextDetails;
+        byte[][] nextSummaries;
+        if (samePositions) {
+            nextIds = ids;
+            nextVersions = versions.clone();
+            nextUpdatedAt = updatedAt.clone();
+            nextPrices = prices.clone();
+            nextReleaseDates = releaseDates.clone();
+            nextCategories = categories.clone();
+            nextAvailable = (BitSet) available.clone();
+            nextDetails = details.clone();
+            nextSummaries = summaries.clone();
+        } else {
+            nextIds = Arrays.copyOf(nextIds, m);
+            nextVersions = new long[m];
+            nextUpdatedAt = new Instant[m];
+            nextPrices = new BigDecimal[m];
+            nextReleaseDates = new long[m];
+            nextCategories = new int[m];
+            nextAvailable = new BitSet(m);
+            nextDetails = new byte[m][];
+            nextSummaries = new byte[m][];
+            for (int j = 0; j < m; j++) {
+                int i = fromOld[j];
+                if (fromRow[j] == null) {
+                    nextVersions[j] = versions[i];
+                    nextUpdatedAt[j] = updatedAt[i];
+                    nextPrices[j] = prices[i];
+                    nextReleaseDates[j] = releaseDates[i];
+                    nextCategories[j] = categories[i];
+                    nextAvailable.set(j, available.get(i));
+                    nextDetails[j] = details[i];
+                    nextSummaries[j] = summaries[i];
+                }
+            }
+        }
+
+        // names are only ever added, so the codes of unchanged products stay valid
+        List<String> nextCategoryNames = null;
+        Map<String, Integer> categoryCodes = null;
+        BitSet priceMoved = new BitSet(m);
+        BitSet releaseDateMoved = new BitSet(m);
+        long versionSum = version.versionSum();
+        Instant lastModified = version.lastModified();
+        boolean lastModifiedDropped = false;
+        for (int i = 0; i < n; i++) {
+            if (oldToNew[i] < 0) {
+                versionSum -= versions[i];
+                lastModifiedDropped |= Objects.equals(updatedAt[i], lastModified);
+            }
+        }
+        for (int j = 0; j < m; j++) {
+            Row row = fromRow[j];
+            if (row == null) {
+                continue;
+            }
+            int old = fromOld[j];
+            long releaseDate = row.releaseDate() == null ? NO_DATE : row.releaseDate().getTime();
+            if (old < 0 || !samePrice(prices[old], row.price())) {
+                priceMoved.set(j);
+            }
+            if (old < 0 || releaseDates[old] != releaseDate) {
+                releaseDateMoved.set(j);
+            }
+            if (old >= 0) {
+                versionSum -= versions[old];
+                lastModifiedDropped |= Objects.equals(updatedAt[old], lastModified)
+                        && !Objects.equals(row.updatedAt(), lastModified);
+            }
+            versionSum += row.version();
+            if (row.updatedAt() != null && (lastModified == null || row.updatedAt().isAfter(lastModified))) {
+                lastModified = row.updatedAt();
+            }
+
+            int category = -1;
+            if (row.category() != null) {
+                if (categoryCodes == null) {
+                    nextCategoryNames = new ArrayList<>(Arrays.asList(categoryNames));
+                    categoryCodes = new HashMap<>();
+                    for (int c = 0; c < categoryNames.length; c++) {
+                        categoryCodes.put(categoryNames[c], c);
+                    }
+                }
+                List<String> names = nextCategoryNames;
+                category = categoryCodes.computeIfAbsent(row.category(), name -> {
+                    names.add(name);
+                    return names.size() - 1;
+                });
+            }
+            nextVersions[j] = row.version();
+            nextUpdatedAt[j] = row.updatedAt();
+            nextPrices[j] = row.price();
+            nextReleaseDates[j] = releaseDate;
+            nextCategories[j] = category;
+            nextAvailable.set(j, row.available());
+            nextDetails[j] = row.detail();
+            nextSummaries[j] = row.summary();
+        }
+        if (lastModifiedDropped) {
+            lastModified = null;
+            for (Instant modified : nextUpdatedAt) {
+                if (modified != null && (lastModified == null || modified.isAfter(lastModified))) {
+                    lastModified = modified;
+                }
+            }
+        }
+
+        int[] renumber = samePositions ? null : oldToNew;
+        int[] nextByPrice = samePositions && priceMoved.isEmpty() ? byPrice
+                : patchOrder(byPrice, renumber, priceMoved, j -> nextPrices[j] != null,
+                (a, b) -> nextPrices[a].compareTo(nextPrices[b]));
+        int[] nextByReleaseDate = samePositions && releaseDateMoved.isEmpty() ? byReleaseDate
+                : patchOrder(byReleaseDate, renumber, releaseDateMoved, j -> nextReleaseDates[j] != NO_DATE,
+                (a, b) -> Long.compare(nextReleaseDates[a], nextReleaseDates[b]));
+        return new CatalogSnapshot(nextIds, nextVersions, nextUpdatedAt, nextPrices, nextReleaseDates, nextCategories,
+                nextCategoryNames == null ? categoryNames : nextCategoryNames.toArray(new String[0]), nextAvailable,
+                nextByPrice, nextByReleaseDate, nextDetails, nextSummaries, new CatalogVersion(m, versionSum, lastModified));
+    }
+
+    public CatalogVersion version() {
+        return version;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /** Position of the product in this snapshot, or a negative number if it is not in it. */
+    public int indexOf(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    public int id(int index) {
+        return ids[index];
+    }
+
+    public long version(int index) {
+        return versions[index];
+    }
+
+    public Instant updatedAt(int index) {
+        return updatedAt[index];
+    }
+
+    public byte[] productJson(int index) {
+        return details[index];
+    }
+
+    long versionOf(int id) {
+        int index = indexOf(id);
+        return index < 0 ? -1 : versions[index];
+    }
+
+    /** The JSON array of all products matching the filter, in id order. */
+    public byte[] productsJson(CatalogFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            byte[] all = allProducts;
+            if (all == null) {
+                all = writeProducts(null);
+                allProducts = all;
+            }
+            return all;
+        }
+        return writeProducts(filter);
+    }
+
+    private byte[] writeProducts(CatalogFilter filter) {
+        boolean[] categoryMatches = null;
+        if (filter != null && filter.category() != null) {
+            categoryMatches = new boolean[categoryNames.length];
+            for (int c = 0; c < categoryNames.length; c++) {
+                categoryMatches[c] = filter.category().equalsIgnoreCase(categoryNames[c]);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(filter == null ? estimatedSize(details) : 1024);
+        out.write('[');
+        boolean first = true;
+        for (int i = 0; i < ids.length; i++) {
+            if (filter != null && !(
+                    (categoryMatches == null || categories[i] >= 0 && categoryMatches[categories[i]])
+                            && (filter.available() == null || filter.available() == available.get(i))
+                            && filter.matchesPrice(prices[i]))) {
+                continue;
+            }
+            if (!first) {
+                out.writeBytes(COMMA);
+            }
+            out.writeBytes(details[i]);
+            first = false;
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    /**
+     * One page of product summaries as a {@code ProductPage} JSON object, with the same order
+     * and cursors as {@link ProductService#getProductPage}.
+     */
+    public byte[] pageJson(String sort, String cursor, int size) {
+        ProductSort productSort = ProductSort.from(sort);
+        ProductCursor after = cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor, productSort);
+
+        int[] order = switch (productSort) {
+            case ID -> null;
+            case PRICE -> byPrice;
+            case RELEASE_DATE -> byReleaseDate;
+        };
+        int length = order == null ? ids.length : order.length;
+        int start = after == null ? 0 : firstAfter(productSort, order, after);
+        int end = Math.min(length, start + size);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 * Math.max(1, end - start));
+        out.writeBytes("{\"items\":[".getBytes(StandardCharsets.UTF_8));
+        for (int k = start; k < end; k++) {
+            if (k > start) {
+                out.writeBytes(COMMA);
+            }
+            out.writeBytes(summaries[order == null ? k : order[k]]);
+        }
+        out.writeBytes("],\"nextCursor\":".getBytes(StandardCharsets.UTF_8));
+        if (end < length && end > start) {
+            int last = order == null ? end - 1 : order[end - 1];
+            String sortValue = switch (productSort) {
+                case ID -> String.valueOf(ids[last]);
+                case PRICE -> prices[last].toPlainString();
+                case RELEASE_DATE -> String.valueOf(releaseDates[last]);
+            };
+            // base64url, nothing to escape
+            out.writeBytes(('"' + new ProductCursor(productSort, sortValue, ids[last]).encode() + '"').getBytes(StandardCharsets.UTF_8));
+        } else {
+            out.writeBytes("null".getBytes(StandardCharsets.UTF_8));
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    // Binary search for the first position that sorts after the cursor
+    private int firstAfter(ProductSort sort, int[] order, ProductCursor after) {
+        if (sort == ProductSort.ID) {
+            int index = Arrays.binarySearch(ids, after.id());
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+        BigDecimal price = sort == ProductSort.PRICE ? after.price() : null;
+        long releaseDate = sort == ProductSort.RELEASE_DATE ? after.releaseDate().getTime() : 0;
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int position = order[mid];
+            int compare = sort == ProductSort.PRICE
+                    ? prices[position].compareTo(price)
+                    : Long.compare(releaseDates[position], releaseDate);
+            if (compare == 0) {
+                compare = Integer.compare(ids[position], after.id());
+            }
+            if (compare <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean samePrice(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+
+    /*
+     * An order (positions by value, ties by id) for the next snapshot: the old order renumbered,
+     * without removed and moved positions, merged with the moved positions that have a value.
+     * Renumbering keeps the order, as positions follow ids in both snapshots.
+     */
+    private static int[] patchOrder(int[] order, int[] oldToNew, BitSet moved, IntPredicate hasValue,
+                                    IntBinaryOperator byValue) {
+        int[] kept = new int[order.length];
+        int k = 0;
+        for (int position : order) {
+            int j = oldToNew == null ? position : oldToNew[position];
+            if (j >= 0 && !moved.get(j)) {
+                kept[k++] = j;
+            }
+        }
+        int[] inserted = moved.stream().filter(hasValue).toArray();
+        sort(inserted, byValue);
+        int[] merged = new int[k + inserted.length];
+        for (int r = 0, a = 0, b = 0; r < merged.length; r++) {
+            if (b == inserted.length || a < k && compare(byValue, kept[a], inserted[b]) < 0) {
+                merged[r] = kept[a++];
+            } else {
+                merged[r] = inserted[b++];
+            }
+        }
+        return merged;
+    }
+
+    private static int compare(IntBinaryOperator byValue, int a, int b) {
+        int compare = byValue.applyAsInt(a, b);
+        return compare != 0 ? compare : Integer.compare(a, b);
+    }
+
+    // Stable merge sort on the primitive positions; they come in ascending, so ties stay in id order
+    private static void sort(int[] positions, IntBinaryOperator byValue) {
+        if (positions.length > 1) {
+            mergeSort(positions.clone(), positions, 0, positions.length, byValue);
+        }
+    }
+
+    // Sorts src[from, to) into dst[from, to), using src as scratch; both start with the same values
+    private static void mergeSort(int[] src, int[] dst, int from, int to, IntBinaryOperator byValue) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(dst, src, from, mid, byValue);
+        mergeSort(dst, src, mid, to, byValue);
+        for (int i = from, p = from, q = mid; i < to; i++) {
+            if (q >= to || p < mid && byValue.applyAsInt(src[p], src[q]) <= 0) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+    private static int estimatedSize(byte[][] fragments) {
+        long size = 2;
+        for (byte[] fragment : fragments) {
+            size += fragment.length + 1;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+}
@@ -1,6 +1,10 @@
 package com.learning.springecom.service;
 
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
@@ -8,13 +12,18 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+@Slf4j
 @Service
 public class ChatBotService {
 
@@ -27,103 +36,112 @@ public class ChatBotService {
     @Autowired
     private ChatClient chatClient;
 
-    public String ChatBotResponse(String userQuery) {
-        try {
-            System.out.println("[CHATBOT] Received query: " + userQuery);
+    @Autowired
+    private ChatResponseCache responseCache;
 
-            String promptStringTemplate = Files.readString(
-                    resourceLoader.getResource("classpath:prompts/chatbot-rag-prompt.st")
-                            .getFile()
-                            .toPath()
-            );
+    @Autowired
+    private ChatContextRetriever contextRetriever;
+
+    @Autowired
+    private StageMetrics stageMetrics;
 
-            // Fetch semantic context with enhanced logging
-            String context = fetchSemanticContext(userQuery);
+    // parsed once; read as a stream so it also works from inside the packaged jar
+    private PromptTemplate promptTemplate;
 
-            if (context.isEmpty()) {
-                System.out.println("[CHATBOT] No relevant context found for query: " + userQuery);
-                // Try with lower similarity threshold
-                context = fetchSemanticContextWithLowerThreshold(userQuery);
-            }
+    @PostConstruct
+    void loadPromptTemplate() throws IOException {
+        try (InputStream in = resourceLoader.getResource("classpath:prompts/chatbot-rag-prompt.st").getInputStream()) {
+            promptTemplate = new PromptTemplate(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    public String ChatBotResponse(String userQuery) {
+        try {
+            log.debug("Received chat query: {}", userQuery);
 
-            Map<String, Object> variables = new HashMap<>();
-            variables.put("userQuery", userQuery);
-            variables.put("context", context);
+            ChatResponseCache.Lookup cached = stageMetrics.record("chat.cache.lookup", () -> responseCache.lookup(userQuery));
+            if (cached.hit()) {
+                log.debug("Answered chat query from cache");
+                return cached.answer();
+            }
 
-            PromptTemplate promptTemplate = PromptTemplate.builder()
-                    .template(promptStringTemplate)
-                    .variables(variables)
-                    .build();
+            List<Document> documents = stageMetrics.record("chat.retrieval", () -> contextRetriever.retrieve(userQuery));
+            if (documents.isEmpty()) {
+                log.debug("No relevant context found for chat query: {}", userQuery);
+            }
 
-            String response = chatClient.prompt(promptTemplate.create()).call().content();
-            System.out.println("[CHATBOT] Generated response: " + response);
+            Prompt prompt = stageMetrics.record("chat.prompt.render", () -> render(userQuery, documents));
+            String response = stageMetrics.record("chat.llm", () -> chatClient.prompt(prompt).call().content());
+            log.debug("Generated chat response: {}", response);
 
+            // answers without any context are not tied to a document that could invalidate them
+            if (response != null && !documents.isEmpty()) {
+                responseCache.put(userQuery, cached, response, documents);
+            }
             return response;
 
-        } catch (IOException e) {
-            System.err.println("[CHATBOT] Failed to load prompt template: " + e.getMessage());
-            e.printStackTrace();
-            return "Bot failed to load template: " + e.getMessage();
         } catch (Exception e) {
-            System.err.println("[CHATBOT] Unexpected error: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Chat query failed", e);
             return "Bot encountered an error: " + e.getMessage();
         }
     }
 
-    private String fetchSemanticContext(String userQuery) {
-        System.out.println("[CHATBOT] Searching vector store for: " + userQuery);
-
-        List<Document> documents = vectorStore.similaritySearch(
-                SearchRequest.builder()
-                        .query(userQuery)
-                        .topK(5)
-                        .similarityThreshold(0.7f)
-                        .build()
-        );
-
-        System.out.println("[CHATBOT] Found " + documents.size() + " relevant documents");
-
-        StringBuilder context = new StringBuilder();
-        for (Document document : documents) {
-            System.out.println("[CHATBOT] Document ID: " + document.getId());
-            System.out.println("[CHATBOT] Document Metadata: " + document.getMetadata());
-            System.out.println("[CHATBOT] Document Content Preview: " +
-                    document.getFormattedContent().substring(0, Math.min(200, document.getFormattedContent().length())));
-
-            context.append(document.getFormattedContent()).append("\n\n");
-        }
+    /**
+     * Streaming variant of {@link #ChatBotResponse}: emits the completion token by token. Cache
+     * lookup and retrieval block, so they run on the bounded elastic scheduler rather than on the
+     * caller's thread. Cancelling the subscription cancels the upstream completion request.
+     */
+    public Flux<String> streamChatBotResponse(String userQuery) {
+        return Flux.defer(() -> {
+            log.debug("Received streaming chat query: {}", userQuery);
+
+            ChatResponseCache.Lookup cached = stageMetrics.record("chat.cache.lookup", () -> responseCache.lookup(userQuery));
+            if (cached.hit()) {
+                log.debug("Answered chat query from cache");
+                return Flux.just(cached.answer());
+            }
 
-        System.out.println("[CHATBOT] Total context length: " + context.length() + " characters");
-        return context.toString();
+            List<Document> documents = stageMetrics.record("chat.retrieval", () -> contextRetriever.retrieve(userQuery));
+            Prompt prompt = stageMetrics.record("chat.prompt.render", () -> render(userQuery, documents));
+
+            StringBuilder answer = new StringBuilder();
+            Timer.Sample llm = stageMetrics.start();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return chatClient.prompt(prompt).stream().content()
+                    .doOnNext(token -> {
+                        if (first.compareAndSet(true, false)) {
+                            stageMetrics.stop(llm, "chat.llm.first-token", true);
+                        }
+                        answer.append(token);
+                    })
+                    .doOnComplete(() -> {
+                        stageMetrics.stop(llm, "chat.llm", true);
+                        // only complete answers are cached; cancelled or failed streams are not
+                        if (!documents.isEmpty() && !answer.isEmpty()) {
+                            responseCache.put(userQuery, cached, answer.toString(), documents);
+                        }
+                    })
+                    .doOnError(e -> stageMetrics.stop(llm, "chat.llm", false));
+        }).subscribeOn(Schedulers.boundedElastic());
     }
 
-    private String fetchSemanticContextWithLowerThreshold(String userQuery) {
-        System.out.println("[CHATBOT] Trying with lower similarity threshold for: " + userQuery);
-
-        List<Document> documents = vectorStore.similaritySearch(
-                SearchRequest.builder()
-                        .query(userQuery)
-                        .topK(10)  // Increased topK
-                        .similarityThreshold(0.3f)  // Lower threshold
-                        .build()
-        );
-
-        System.out.println("[CHATBOT] Found " + documents.size() + " documents with lower threshold");
+    private Prompt render(String userQuery, List<Document> documents) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("userQuery", userQuery);
+        variables.put("context", toContext(documents));
+        return promptTemplate.create(variables);
+    }
 
+    static String toContext(List<Document> documents) {
         StringBuilder context = new StringBuilder();
         for (Document document : documents) {
             context.append(document.getFormattedContent()).append("\n\n");
         }
-
         return context.toString();
     }
 
     // Optional: Method to test vector store content
     public void debugVectorStoreContent(String query) {
-        System.out.println("\n=== VECTOR STORE DEBUG ===");
-        System.out.println("Query: " + query);
-
         // Try different similarity thresholds
         float[] thresholds = {0.9f, 0.7f, 0.5f, 0.3f, 0.1f};
 
@@ -136,18 +154,11 @@ public class ChatBotService {
                             .build()
             );
 
-            System.out.println("\nThreshold " + threshold + ": Found " + documents.size() + " documents");
+            log.info("Vector store debug: query '{}' at threshold {} found {} documents", query, threshold, documents.size());
             for (Document doc : documents) {
-                System.out.println("  - Type: " + doc.getMetadata().get("type"));
-                System.out.println("    ID: " + doc.getId());
-                if (doc.getMetadata().containsKey("orderId")) {
-                    System.out.println("    Order ID: " + doc.getMetadata().get("orderId"));
-                }
-                if (doc.getMetadata().containsKey("productId")) {
-                    System.out.println("    Product ID: " + doc.getMetadata().get("productId"));
-                }
+                log.info("  type={} id={} orderId={} productId={}", doc.getMetadata().get("type"), doc.getId(),
+                        doc.getMetadata().get("orderId"), doc.getMetadata().get("productId"));
             }
         }
-        System.out.println("=========================\n");
     }
-}
\ No newline at end of file
+}
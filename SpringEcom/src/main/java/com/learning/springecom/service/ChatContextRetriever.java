@@ -0,0 +1,209 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.repo.OrderRepo;
+import com.learning.springecom.repo.ProductRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the chatbot context for a question in one pass. A single vector search and a keyword
+ * search over products (full-text index) and orders (order numbers named in the question) run in
+ * parallel, and the ranked lists are merged with reciprocal rank fusion.
+ * <p>
+ * Order numbers and product categories mentioned in the question become metadata filters that
+ * the vector store applies in its own query, so the candidates it returns are already restricted.
+ */
+@Slf4j
+@Component
+public class ChatContextRetriever {
+
+    // the usual RRF constant; damps the weight of the very first ranks
+    private static final int RRF_K = 60;
+    // ORD and 13 Crockford base-32 characters (OrderNumberGenerator), or 8 hex digits for orders
+    // placed before it; case-sensitive, so words like "order" are not taken for order numbers
+    private static final Pattern ORDER_NUMBER = Pattern.compile("\\bORD(?:[0-9A-HJKMNP-TV-Z]{13}|[0-9A-Fa-f]{8})\\b");
+    private static final Duration CATEGORY_REFRESH = Duration.ofMinutes(1);
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private OrderRepo orderRepo;
+
+    @Autowired
+    private VectorDocumentFactory documentFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private WorkerPools workerPools;
+
+    @Value("${app.chat.retrieval.candidates:10}")
+    private int candidates;
+
+    @Value("${app.chat.retrieval.similarity-threshold:0.3}")
+    private double similarityThreshold;
+
+    @Value("${app.chat.retrieval.max-documents:8}")
+    private int maxDocuments;
+
+    private volatile List<String> categories = List.of();
+    private volatile Instant categoriesLoadedAt = Instant.EPOCH;
+
+    public List<Document> retrieve(String userQuery) {
+        Set<String> orderNumbers = orderNumbers(userQuery);
+        String category = orderNumbers.isEmpty() ? mentionedCategory(userQuery) : null;
+
+        CompletableFuture<List<List<Document>>> keyword = CompletableFuture.supplyAsync(
+                        () -> stageMetrics.record("chat.keyword.search", () -> keywordSearch(userQuery, orderNumbers)), workerPools.chatRetrieval())
+                .exceptionally(e -> {
+                    // the vector results alone are still a usable context
+                    log.warn("Keyword search failed, using vector results only", e);
+                    return List.of();
+                });
+        List<Document> semantic = stageMetrics.record("chat.similarity.search",
+                () -> vectorSearch(userQuery, filterFor(orderNumbers, category)));
+
+        List<List<Document>> rankings = new ArrayList<>(keyword.join());
+        rankings.add(semantic);
+        List<Document> fused = fuse(rankings, maxDocuments);
+        log.atDebug().addKeyValue("documents", fused.size()).addKeyValue("vectorHits", semantic.size())
+                .log("Retrieved chat context");
+        return fused;
+    }
+
+    private List<Document> vectorSearch(String userQuery, String filter) {
+        SearchRequest.Builder request = SearchRequest.builder()
+                .query(userQuery)
+                .topK(candidates)
+                .similarityThreshold(similarityThreshold);
+        if (filter != null) {
+            request.filterExpression(filter);
+        }
+        return vectorStore.similaritySearch(request.build());
+    }
+
+    // Renders the keyword hits from the current rows, in the same form as the stored documents
+    private List<List<Document>> keywordSearch(String userQuery, Set<String> orderNumbers) {
+        TransactionTemplate readOnly = new TransactionTemplate(Objects.requireNonNull(transactionTemplate.getTransactionManager()));
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> {
+            List<Document> orders = new ArrayList<>();
+            if (!orderNumbers.isEmpty()) {
+                for (Order order : orderRepo.findByOrderIdIn(orderNumbers)) {
+                    orders.add(documentFactory.orderDocument(order));
+                }
+            }
+
+            List<Document> products = new ArrayList<>();
+            String tsQuery = toAnyPrefixTsQuery(userQuery);
+            if (!tsQuery.isEmpty()) {
+                List<Integer> ids = productRepo.searchProductIds(tsQuery, userQuery.trim().toLowerCase(), candidates, 0);
+                Map<Integer, Product> byId = productRepo.findAllById(ids).stream()
+                        .collect(Collectors.toMap(Product::getId, product -> product));
+                for (Integer id : ids) {
+                    Product product = byId.get(id);
+                    if (product != null) {
+                        products.add(documentFactory.productDocument(product));
+                    }
+                }
+            }
+            return List.of(orders, products);
+        });
+    }
+
+    // Reciprocal rank fusion: a document scores 1 / (k + rank) in every list it appears in
+    static List<Document> fuse(List<List<Document>> rankings, int maxDocuments) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Document> documents = new LinkedHashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+                // keyword hits come first and are rendered from the current rows, so keep those
+                documents.putIfAbsent(document.getId(), document);
+            }
+        }
+        return documents.values().stream()
+                .sorted(Comparator.comparingDouble((Document document) -> scores.get(document.getId())).reversed())
+                .limit(maxDocuments)
+                .toList();
+    }
+
+    private static String filterFor(Set<String> orderNumbers, String category) {
+        if (!orderNumbers.isEmpty()) {
+            return orderNumbers.stream()
+                    .map(number -> "'" + number + "'")
+                    .collect(Collectors.joining(", ", "type == 'order' && orderId in [", "]"));
+        }
+        if (category != null) {
+            return "type == 'product' && category == '" + category.replace("'", "") + "'";
+        }
+        return null;
+    }
+
+    private String mentionedCategory(String userQuery) {
+        String query = " " + userQuery.toLowerCase().replaceAll("[^\\p{L}\\p{N}]+", " ") + " ";
+        for (String category : categories()) {
+            String name = category.toLowerCase().replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+            if (!name.isEmpty() && query.contains(" " + name + " ")) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    private List<String> categories() {
+        if (Instant.now().isAfter(categoriesLoadedAt.plus(CATEGORY_REFRESH))) {
+            categories = transactionTemplate.execute(status -> productRepo.findCategories());
+            categoriesLoadedAt = Instant.now();
+        }
+        return categories;
+    }
+
+    static Set<String> orderNumbers(String query) {
+        Set<String> numbers = new TreeSet<>();
+        Matcher matcher = ORDER_NUMBER.matcher(query);
+        while (matcher.find()) {
+            numbers.add(matcher.group().toUpperCase());
+        }
+        return numbers;
+    }
+
+    /**
+     * Questions are sentences rather than search terms, so terms are OR-ed and the ranking does
+     * the rest; the english configuration drops stop words from the query.
+     */
+    static String toAnyPrefixTsQuery(String query) {
+        StringJoiner tsQuery = new StringJoiner(" | ");
+        for (String token : query.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 1) {
+                tsQuery.add(token + ":*");
+            }
+        }
+        return tsQuery.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Semantic cache of chatbot answers. A question is answered from the cache when it is the same
+ * question (after normalisation) or when its embedding is at least
+ * {@code app.chat.cache.similarity-threshold} cosine-similar to a cached one.
+ * <p>
+ * Each entry remembers the product and order documents its context came from and is dropped
+ * when any of them is re-synced to the vector store. Entries also expire after a TTL, and the
+ * oldest entry is evicted when the cache is full. Questions that name an order number only match
+ * entries for the same order numbers, since those differ by a few characters but not in meaning.
+ */
+@Component
+public class ChatResponseCache {
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.chat.cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${app.chat.cache.ttl:PT30M}")
+    private Duration ttl;
+
+    @Value("${app.chat.cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    // insertion-ordered, so the first entry is always the oldest
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    // bumped on every invalidation so answers built from older context are not stored
+    private final AtomicLong generation = new AtomicLong();
+    private Counter hits;
+    private Counter misses;
+
+    private record Entry(float[] embedding, Set<String> orderNumbers, String answer, Set<String> sources,
+                         Instant expiresAt) {
+    }
+
+    /**
+     * Result of a lookup: the cached answer, or {@code null} together with the query embedding
+     * so the caller can store its own answer without embedding the query again.
+     */
+    public record Lookup(String answer, float[] embedding, long generation) {
+        public boolean hit() {
+            return answer != null;
+        }
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        hits = Counter.builder("chat.cache").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("chat.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("chat.cache.size", this, cache -> cache.size()).register(meterRegistry);
+    }
+
+    public Lookup lookup(String query) {
+        String key = normalize(query);
+        synchronized (this) {
+            evictExpired();
+            Entry exact = entries.get(key);
+            if (exact != null) {
+                hits.increment();
+                return new Lookup(exact.answer(), exact.embedding(), generation.get());
+            }
+        }
+
+        long startGeneration = generation.get();
+        float[] embedding = embeddingModel.embed(query);
+        Set<String> orderNumbers = ChatContextRetriever.orderNumbers(query);
+        synchronized (this) {
+            Entry best = null;
+            double bestSimilarity = similarityThreshold;
+            for (Entry entry : entries.values()) {
+                if (!entry.orderNumbers().equals(orderNumbers)) {
+                    continue;
+                }
+                double similarity = cosine(embedding, entry.embedding());
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best != null) {
+                hits.increment();
+                return new Lookup(best.answer(), embedding, startGeneration);
+            }
+        }
+        misses.increment();
+        return new Lookup(null, embedding, startGeneration);
+    }
+
+    /**
+     * Stores an answer for a missed lookup. Skipped when any document was invalidated since the
+     * lookup, because the answer may have been built from the old version.
+     */
+    public synchronized void put(String query, Lookup lookup, String answer, Collection<Document> sources) {
+        if (lookup.generation() != generation.get()) {
+            return;
+        }
+        Set<String> sourceKeys = new HashSet<>();
+        for (Document document : sources) {
+            sourceKeys.add(sourceKey(document));
+        }
+        entries.remove(normalize(query));
+        entries.put(normalize(query), new Entry(lookup.embedding(), ChatContextRetriever.orderNumbers(query), answer, sourceKeys,
+                Instant.now().plus(ttl)));
+        while (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    public synchronized void invalidateProducts(Collection<String> productIds) {
+        invalidate(productIds.stream().map(id -> "product:" + id).toList());
+    }
+
+    public synchronized void invalidateOrders(Collection<String> orderIds) {
+        invalidate(orderIds.stream().map(id -> "order:" + id).toList());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void invalidate(Collection<String> sourceKeys) {
+        if (!sourceKeys.isEmpty()) {
+            generation.incrementAndGet();
+            entries.values().removeIf(entry -> !Collections.disjoint(entry.sources(), sourceKeys));
+        }
+    }
+
+    private void evictExpired() {
+        Instant now = Instant.now();
+        entries.values().removeIf(entry -> entry.expiresAt().isBefore(now));
+    }
+
+    private static String sourceKey(Document document) {
+        Map<String, Object> metadata = document.getMetadata();
+        if (metadata.containsKey("orderId")) {
+            return "order:" + metadata.get("orderId");
+        }
+        if (metadata.containsKey("productId")) {
+            return "product:" + metadata.get("productId");
+        }
+        return "document:" + document.getId();
+    }
+
+    private static String normalize(String query) {
+        return query.trim().toLowerCase().replaceAll("\\s+", " ");
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
@@ -0,0 +1,113 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of generated product descriptions with single-flight loading. Callers that ask for a key
+ * while it is being generated share the one generation in progress. Entries expire after
+ * {@code app.description-cache.ttl}, and once the cache holds
+ * {@code app.description-cache.max-entries} the oldest entry is evicted.
+ */
+@Component
+public class DescriptionCache {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.description-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${app.description-cache.ttl:PT24H}")
+    private Duration ttl;
+
+    // insertion-ordered, so the first entry is always the oldest
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private Counter hits;
+    private Counter misses;
+    private Counter coalesced;
+
+    private record Entry(String description, Instant expiresAt) {
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        hits = Counter.builder("description.cache").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("description.cache").tag("result", "miss").register(meterRegistry);
+        coalesced = Counter.builder("description.cache").tag("result", "coalesced").register(meterRegistry);
+        Gauge.builder("description.cache.size", this, cache -> cache.size()).register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached description, joins a generation already running for the key, or starts
+     * one with {@code generator}. With {@code refresh}, a cached value is ignored and replaced.
+     * Failed generations are not cached.
+     */
+    public CompletableFuture<String> get(String key, boolean refresh, Supplier<CompletableFuture<String>> generator) {
+        if (!refresh) {
+            String cached = cached(key);
+            if (cached != null) {
+                hits.increment();
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+        misses.increment();
+        generator.get().whenComplete((description, error) -> {
+            if (error == null && description != null) {
+                put(key, description);
+            }
+            inFlight.remove(key, mine);
+            if (error == null) {
+                mine.complete(description);
+            } else {
+                mine.completeExceptionally(error);
+            }
+        });
+        return mine;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized String cached(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt().isBefore(Instant.now())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.description();
+    }
+
+    private synchronized void put(String key, String description) {
+        entries.remove(key);
+        entries.put(key, new Entry(description, Instant.now().plus(ttl)));
+        while (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+}
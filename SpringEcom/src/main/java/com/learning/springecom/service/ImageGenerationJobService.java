@@ -0,0 +1,127 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.exception.BulkheadRejectedException;
+import com.learning.springecom.model.dto.ImageJobResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs AI image generation as background jobs on the image bulkhead. Generated images go
+ * straight into the {@link ImageStorageService}, and the job keeps only their hash.
+ * <p>
+ * A request whose prompt matches a job that is still running gets that job back and does not
+ * start a second generation. Finished jobs are kept for {@code app.image-jobs.retention}, so
+ * clients have time to collect the result. Jobs live in memory and are lost on restart.
+ */
+@Slf4j
+@Service
+public class ImageGenerationJobService {
+
+    public enum Status { RUNNING, SUCCEEDED, FAILED }
+
+    @Autowired
+    private AiImageGenService aiImageGenService;
+
+    @Autowired
+    private Bulkhead imageBulkhead;
+
+    @Value("${app.image-jobs.retention:PT1H}")
+    private Duration retention;
+
+    private final Map<String, ImageJob> jobs = new ConcurrentHashMap<>();
+    // running jobs by prompt, for deduplication
+    private final Map<String, ImageJob> running = new ConcurrentHashMap<>();
+
+    private static final class ImageJob {
+        final String id = UUID.randomUUID().toString();
+        final Instant createdAt = Instant.now();
+        final CompletableFuture<ImageJob> completion = new CompletableFuture<>();
+        volatile Status status = Status.RUNNING;
+        volatile Instant completedAt;
+        volatile String imageHash;
+        volatile String error;
+    }
+
+    /**
+     * Starts a job for the prompt, or returns the running job for the same prompt.
+     * Throws {@link BulkheadRejectedException} when the image bulkhead is full.
+     */
+    public ImageJobResponse submit(String imagePrompt) {
+        ImageJob job = new ImageJob();
+        ImageJob existing = running.putIfAbsent(imagePrompt, job);
+        if (existing != null) {
+            return toResponse(existing);
+        }
+
+        jobs.put(job.id, job);
+        CompletableFuture<String> generation = imageBulkhead.submit(() -> aiImageGenService.generateAndStore(imagePrompt));
+        if (generation.isCompletedExceptionally()) {
+            jobs.remove(job.id);
+            running.remove(imagePrompt, job);
+            // rejected up front: report it to this caller rather than as a failed job
+            throw unwrap(generation);
+        }
+        generation.whenComplete((imageHash, error) -> {
+            if (error == null) {
+                job.imageHash = imageHash;
+                job.status = Status.SUCCEEDED;
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.warn("Image generation job {} failed", job.id, cause);
+                job.error = cause.getMessage();
+                job.status = Status.FAILED;
+            }
+            job.completedAt = Instant.now();
+            running.remove(imagePrompt, job);
+            job.completion.complete(job);
+        });
+        return toResponse(job);
+    }
+
+    /** Returns the job, or {@code null} if it is unknown or has expired. */
+    public ImageJobResponse get(String jobId) {
+        ImageJob job = jobs.get(jobId);
+        return job == null ? null : toResponse(job);
+    }
+
+    /**
+     * Completes with the job's final state once it has finished, or {@code null} if the job is
+     * unknown or has expired.
+     */
+    public CompletableFuture<ImageJobResponse> completion(String jobId) {
+        ImageJob job = jobs.get(jobId);
+        return job == null ? CompletableFuture.completedFuture(null) : job.completion.thenApply(this::toResponse);
+    }
+
+    @Scheduled(fixedDelayString = "${app.image-jobs.cleanup-interval-ms:60000}")
+    public void removeExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.completedAt != null && job.completedAt.isBefore(cutoff));
+    }
+
+    private ImageJobResponse toResponse(ImageJob job) {
+        String imageUrl = job.status == Status.SUCCEEDED ? "/api/product/image-jobs/" + job.id + "/image" : null;
+        return new ImageJobResponse(job.id, job.status.name(), job.createdAt, job.completedAt,
+                job.imageHash, imageUrl, job.error);
+    }
+
+    private static RuntimeException unwrap(CompletableFuture<?> failed) {
+        try {
+            failed.join();
+            return new IllegalStateException("Expected a failed future");
+        } catch (CompletionException e) {
+            return e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.learning.springecom.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed image store on local disk. Images are keyed by the SHA-256 of their bytes
+ * and laid out as {@code <root>/ab/cd/abcd...}, so identical uploads are stored once and a
+ * stored file never changes, which makes the hash a natural strong ETag.
+ */
+@Service
+public class ImageStorageService {
+
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    @Value("${app.image-store.root:./data/images}")
+    private String rootDirectory;
+
+    public String store(byte[] bytes) throws IOException {
+        return store(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Streams the input to a temp file while hashing it, then moves it into place.
+     * Returns the content hash to be kept as the reference on the owning row.
+     */
+    public String store(InputStream in) throws IOException {
+        Path root = root();
+        Path tmp = Files.createTempFile(root, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream source = in;
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                source.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(hash);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    // a concurrent upload of the same bytes won the race; its copy is identical
+                }
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Returns a file-backed resource for the hash, or {@code null} if nothing is stored under it.
+     * The resource is read through a {@code FileChannel}, so callers can stream it or serve
+     * byte ranges without buffering the whole image on the heap.
+     */
+    public Resource load(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            return null;
+        }
+        Path path = resolve(hash);
+        return Files.isRegularFile(path) ? new FileSystemResource(path) : null;
+    }
+
+    public boolean exists(String hash) {
+        return load(hash) != null;
+    }
+
+    public long sizeOf(String hash) {
+        try {
+            return Files.size(resolve(hash));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path resolve(String hash) {
+        return root().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private Path root() {
+        Path root = Paths.get(rootDirectory).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new IllegalStateException("Image store root is not writable: " + root, e);
+        }
+        return root;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
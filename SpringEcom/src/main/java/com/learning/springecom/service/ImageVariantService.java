@@ -0,0 +1,236 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.ImageVariant;
+import com.learning.springecom.repo.ImageVariantRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Produces the fixed-size variants of stored product images ({@link ImageVariant.Size}) as
+ * JPEG, so product grids download a few kilobytes per tile instead of the original upload.
+ * <p>
+ * Uploads are resized on a small pool of {@code app.image-variants.threads}, off the request thread. The source is
+ * decoded once with subsampling, so at most about twice the largest variant's pixels are held in
+ * memory. Each smaller variant is scaled from the next larger one. Sources above
+ * {@code app.image-variants.max-source-pixels} and formats ImageIO cannot read are skipped, and
+ * such images are served as uploaded. Products stored before variants existed are backfilled at
+ * startup in one background thread.
+ */
+@Slf4j
+@Service
+public class ImageVariantService {
+
+    private static final String CONTENT_TYPE = "image/jpeg";
+
+    @Autowired
+    private ImageVariantRepo variantRepo;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private WorkerPools workerPools;
+
+    @Value("${app.image-variants.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    @Value("${app.image-variants.max-source-pixels:50000000}")
+    private long maxSourcePixels;
+
+    @Value("${app.image-variants.backfill:true}")
+    private boolean backfill;
+
+    // sources being processed on this node, so repeated requests do not queue the same work
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public Optional<ImageVariant> find(String sourceHash, ImageVariant.Size size) {
+        return sourceHash == null ? Optional.empty() : variantRepo.findBySourceHashAndSize(sourceHash, size);
+    }
+
+    /** Queues variant generation for the image; does nothing if it is already queued or running. */
+    public void generateAsync(String sourceHash) {
+        if (sourceHash == null || !inProgress.add(sourceHash)) {
+            return;
+        }
+        try {
+            workerPools.imageVariants().execute(() -> {
+                try {
+                    generate(sourceHash);
+                } finally {
+                    inProgress.remove(sourceHash);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inProgress.remove(sourceHash);
+            log.warn("Image variant queue is full, {} will be resized on a later request", sourceHash);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        if (!backfill) {
+            return;
+        }
+        Thread thread = new Thread(this::backfill, "image-variant-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void backfill() {
+        List<String> hashes = variantRepo.findSourceHashesWithoutVariants();
+        if (hashes.isEmpty()) {
+            return;
+        }
+        log.info("Generating image variants for {} existing images", hashes.size());
+        int done = 0;
+        for (String hash : hashes) {
+            if (inProgress.add(hash)) {
+                try {
+                    generate(hash);
+                    done++;
+                } finally {
+                    inProgress.remove(hash);
+                }
+            }
+        }
+        log.info("Image variant backfill finished, {} images processed", done);
+    }
+
+    void generate(String sourceHash) {
+        Resource source = imageStorageService.load(sourceHash);
+        if (source == null || !variantRepo.findBySourceHash(sourceHash).isEmpty()) {
+            return;
+        }
+        try {
+            BufferedImage image = stageMetrics.record("image.decode", () -> decode(source, sourceHash));
+            if (image == null) {
+                return;
+            }
+            List<ImageVariant.Size> largestFirst = new ArrayList<>(List.of(ImageVariant.Size.values()));
+            largestFirst.sort(Comparator.comparingInt(ImageVariant.Size::getMaxEdge).reversed());
+            List<ImageVariant> variants = new ArrayList<>();
+            for (ImageVariant.Size size : largestFirst) {
+                image = scaleToFit(image, size.getMaxEdge());
+                byte[] jpeg = encodeJpeg(image);
+                variants.add(ImageVariant.builder()
+                        .sourceHash(sourceHash)
+                        .size(size)
+                        .imageHash(imageStorageService.store(jpeg))
+                        .contentType(CONTENT_TYPE)
+                        .width(image.getWidth())
+                        .height(image.getHeight())
+                        .byteSize(jpeg.length)
+                        .build());
+            }
+            transactionTemplate.executeWithoutResult(status -> variantRepo.saveAll(variants));
+        } catch (DataIntegrityViolationException e) {
+            // another node stored the variants first; they are identical
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not create variants for image {}", sourceHash, e);
+        }
+    }
+
+    // Reads the image subsampled to no less than twice the largest variant, or null if unsupported
+    private BufferedImage decode(Resource source, String sourceHash) {
+        try (InputStream in = source.getInputStream();
+             ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = imageIn == null ? Collections.emptyIterator() : ImageIO.getImageReaders(imageIn);
+            if (!readers.hasNext()) {
+                log.debug("No image reader for {}, serving it as uploaded", sourceHash);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    log.warn("Image {} is {}x{}, above the resize limit; serving it as uploaded", sourceHash, width, height);
+                    return null;
+                }
+                int largestEdge = Arrays.stream(ImageVariant.Size.values()).mapToInt(ImageVariant.Size::getMaxEdge).max().orElseThrow();
+                int subsampling = Math.max(1, Math.max(width, height) / (largestEdge * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not decode image " + sourceHash, e);
+        }
+    }
+
+    // Halves repeatedly with bilinear filtering, which is much sharper than one big bilinear step,
+    // and draws onto an opaque RGB canvas (white behind transparent pixels) for JPEG
+    static BufferedImage scaleToFit(BufferedImage image, int maxEdge) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = image;
+        do {
+            int nextWidth = Math.max(targetWidth, current.getWidth() / 2);
+            int nextHeight = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, nextWidth, nextHeight);
+                g.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream imageOut = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            if (param.canWriteProgressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,241 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.exception.OrderRejectedException;
+import com.learning.springecom.model.dto.OrderLineError;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional in-memory inventory for flash sales ({@code app.inventory.reservations.enabled=true}).
+ * <p>
+ * Available stock per product is held in an {@link AtomicInteger} and taken with a CAS loop, so
+ * checkouts of a hot product never wait on a row lock. Stock sold by committed orders is summed
+ * in per-product {@link LongAdder}s and written back to {@code product.stock_quantity} as one
+ * net delta per product on a short interval (write-behind). Counters are loaded from the
+ * database at startup.
+ * <p>
+ * Every reservation is bound to the transaction of its order: confirmed when it commits and
+ * released when it rolls back. None outlives its request, so reservations have no expiry.
+ * <p>
+ * The counters are local to this node, so the mode is meant for a single node or for setups
+ * that route a product's checkouts to one node. Deltas not yet flushed are lost if the process
+ * dies; the window is {@code app.inventory.flush-interval-ms}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.inventory.reservations.enabled", havingValue = "true")
+public class InventoryReservationService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductCache productCache;
+
+    private final Map<Integer, AtomicInteger> available = new ConcurrentHashMap<>();
+    // reserved by orders still in flight
+    private final Map<Integer, AtomicInteger> held = new ConcurrentHashMap<>();
+    // sold by committed orders but not yet written to the product table
+    private final Map<Integer, LongAdder> unflushed = new ConcurrentHashMap<>();
+    // not yet confirmed or released; settling a reservation twice is a no-op
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+    // held while a flush is between taking the deltas and committing them, and while stock is
+    // read from the table, so a read never sees the delta in neither place
+    private final Object flushLock = new Object();
+
+    public record Reservation(String id, Map<Integer, Integer> quantities) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        synchronized (flushLock) {
+            jdbcTemplate.query("SELECT id, stock_quantity FROM product", rs -> {
+                setAvailable(rs.getInt(1), rs.getInt(2));
+            });
+        }
+        log.info("Loaded stock for {} products", available.size());
+    }
+
+    /**
+     * Takes stock for every line or for none. Lines that cannot be served are reported together,
+     * the same way the database path reports them.
+     */
+    public Reservation reserve(Map<Integer, Integer> quantities) {
+        Map<Integer, Integer> taken = new LinkedHashMap<>();
+        List<OrderLineError> errors = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            AtomicInteger counter = available.get(line.getKey());
+            if (counter == null) {
+                errors.add(new OrderLineError(line.getKey(), null, line.getValue(), 0, "PRODUCT_NOT_FOUND"));
+            } else if (tryTake(counter, line.getValue())) {
+                taken.put(line.getKey(), line.getValue());
+                held.computeIfAbsent(line.getKey(), id -> new AtomicInteger()).addAndGet(line.getValue());
+            } else {
+                errors.add(new OrderLineError(line.getKey(), null, line.getValue(), counter.get(), "INSUFFICIENT_STOCK"));
+            }
+        }
+        if (!errors.isEmpty()) {
+            giveBack(taken);
+            throw new OrderRejectedException(errors);
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID().toString(), taken);
+        reservations.put(reservation.id(), reservation);
+        return reservation;
+    }
+
+    /**
+     * Confirms the reservation when the surrounding transaction commits and returns the stock
+     * when it rolls back.
+     */
+    public void completeWithTransaction(Reservation reservation) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    confirm(reservation);
+                } else {
+                    release(reservation.id());
+                }
+            }
+        });
+    }
+
+    /** Records the reservation's stock as sold. */
+    public void confirm(Reservation reservation) {
+        if (reservations.remove(reservation.id()) == null) {
+            return;
+        }
+        reservation.quantities().forEach((productId, quantity) -> {
+            // counted as sold before it stops being held, so a concurrent refresh never misses it
+            unflushed.computeIfAbsent(productId, id -> new LongAdder()).add(quantity);
+            held.get(productId).addAndGet(-quantity);
+        });
+    }
+
+    public void release(String reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation != null) {
+            giveBack(reservation.quantities());
+        }
+    }
+
+    /**
+     * Re-reads a product's stock after an admin change, once the change has committed.
+     */
+    public void refreshAfterCommit(int productId) {
+        refreshAfterCommit(List.of(productId));
+    }
+
+    /**
+     * Re-reads the products' stock once the current transaction commits, in one query. New
+     * products start taking orders from then on.
+     */
+    public void refreshAfterCommit(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = List.copyOf(productIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                refresh(ids);
+            }
+        });
+    }
+
+    private void refresh(List<Integer> productIds) {
+        synchronized (flushLock) {
+            Set<Integer> deleted = new HashSet<>(productIds);
+            jdbcTemplate.query("SELECT id, stock_quantity FROM product WHERE id = ANY (?)",
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", productIds.toArray())),
+                    rs -> {
+                        deleted.remove(rs.getInt(1));
+                        setAvailable(rs.getInt(1), rs.getInt(2));
+                    });
+            deleted.forEach(available::remove);
+        }
+    }
+
+    private void setAvailable(int productId, int databaseStock) {
+        long pending = unflushed.containsKey(productId) ? unflushed.get(productId).sum() : 0;
+        int inFlight = held.containsKey(productId) ? held.get(productId).get() : 0;
+        int value = (int) Math.max(0, databaseStock - pending - inFlight);
+        available.computeIfAbsent(productId, id -> new AtomicInteger()).set(value);
+    }
+
+    @Scheduled(fixedDelayString = "${app.inventory.flush-interval-ms:500}")
+    public void flush() {
+        synchronized (flushLock) {
+            flushDeltas();
+        }
+    }
+
+    private void flushDeltas() {
+        Map<Integer, Long> deltas = new HashMap<>();
+        unflushed.forEach((productId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                deltas.put(productId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(
+                        "UPDATE product SET stock_quantity = stock_quantity - ?, version = version + 1, updated_at = now() WHERE id = ?",
+                        deltas.entrySet().stream()
+                                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                                .toList());
+                productCache.evictAfterCommit(deltas.keySet());
+            });
+        } catch (RuntimeException e) {
+            // keep the deltas for the next round
+            deltas.forEach((productId, delta) -> unflushed.computeIfAbsent(productId, id -> new LongAdder()).add(delta));
+            log.warn("Failed to flush stock deltas, will retry", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void giveBack(Map<Integer, Integer> quantities) {
+        quantities.forEach((productId, quantity) -> {
+            held.get(productId).addAndGet(-quantity);
+            available.computeIfAbsent(productId, id -> new AtomicInteger()).addAndGet(quantity);
+        });
+    }
+
+    private static boolean tryTake(AtomicInteger counter, int quantity) {
+        while (true) {
+            int current = counter.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+}
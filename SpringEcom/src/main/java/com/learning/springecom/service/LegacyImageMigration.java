@@ -0,0 +1,91 @@
+package com.learning.springecom.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves images left in the old {@code product.image_data} column into the image store.
+ * Runs on every startup, but does nothing once the column is empty or has been dropped.
+ */
+@Slf4j
+@Component
+public class LegacyImageMigration implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> columnType = jdbcTemplate.queryForList(
+                "SELECT data_type FROM information_schema.columns " +
+                        "WHERE table_name = 'product' AND column_name = 'image_data'",
+                String.class);
+        if (columnType.isEmpty()) {
+            return;
+        }
+        // Hibernate maps @Lob byte[] to a large object (oid) on PostgreSQL, older schemas used bytea
+        boolean largeObject = "oid".equals(columnType.get(0));
+
+        int migrated = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> migrateBatch(largeObject));
+            migrated += batch;
+        } while (batch == BATCH_SIZE);
+
+        if (migrated > 0) {
+            log.info("Migrated {} legacy product images to the image store", migrated);
+        }
+    }
+
+    private int migrateBatch(boolean largeObject) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id FROM product WHERE image_data IS NOT NULL LIMIT " + BATCH_SIZE);
+        for (Map<String, Object> row : rows) {
+            int id = ((Number) row.get("id")).intValue();
+            String hash = jdbcTemplate.query("SELECT image_data FROM product WHERE id = ?", rs -> {
+                rs.next();
+                try (InputStream in = largeObject ? blobStream(rs.getBlob(1)) : rs.getBinaryStream(1)) {
+                    return imageStorageService.store(in);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to migrate image of product " + id, e);
+                }
+            }, id);
+            jdbcTemplate.update("UPDATE product SET image_hash = ?, image_size = ? WHERE id = ?",
+                    hash, imageStorageService.sizeOf(hash), id);
+            if (largeObject) {
+                jdbcTemplate.queryForList("SELECT lo_unlink(image_data) FROM product WHERE id = ?", id);
+            }
+            jdbcTemplate.update("UPDATE product SET image_data = NULL WHERE id = ?", id);
+            productCache.evictAfterCommit(List.of(id));
+        }
+        return rows.size();
+    }
+
+    private static InputStream blobStream(Blob blob) throws SQLException {
+        return blob.getBinaryStream();
+    }
+}
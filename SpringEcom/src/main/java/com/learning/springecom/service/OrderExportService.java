@@ -0,0 +1,143 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.dto.OrderExportRow;
+import com.learning.springecom.repo.OrderRepo;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Writes the order history straight from a database cursor to the response, one order (NDJSON)
+ * or one order line (CSV) at a time, so memory use does not depend on the number of orders.
+ */
+@Service
+public class OrderExportService {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final LocalDate EARLIEST = LocalDate.of(1, 1, 1);
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+    private static final int CLEAR_EVERY_ROWS = 1000;
+
+    @Autowired
+    private OrderRepo orderRepo;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public void export(OutputStream out, Format format, LocalDate from, LocalDate to) {
+        TransactionTemplate readOnly = new TransactionTemplate(Objects.requireNonNull(transactionTemplate.getTransactionManager()));
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            try (Stream<OrderExportRow> rows = orderRepo.streamExportRows(
+                    from != null ? from : EARLIEST, to != null ? to : LATEST)) {
+                if (format == Format.CSV) {
+                    writeCsv(rows.iterator(), out);
+                } else {
+                    writeNdjson(rows.iterator(), out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // One JSON object per order and line; rows arrive ordered by order, so an order is
+    // complete as soon as the next one starts
+    void writeNdjson(Iterator<OrderExportRow> rows, OutputStream out) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setRootValueSeparator(null);
+        String currentOrder = null;
+        int count = 0;
+        while (rows.hasNext()) {
+            OrderExportRow row = rows.next();
+            if (!row.orderId().equals(currentOrder)) {
+                if (currentOrder != null) {
+                    endOrder(json);
+                }
+                currentOrder = row.orderId();
+                json.writeStartObject();
+                json.writeStringField("orderId", row.orderId());
+                json.writeStringField("customerName", row.customerName());
+                json.writeStringField("email", row.email());
+                json.writeStringField("status", row.status());
+                json.writeStringField("orderDate", row.orderDate() == null ? null : row.orderDate().toString());
+                json.writeArrayFieldStart("items");
+            }
+            if (row.quantity() != null) {
+                json.writeStartObject();
+                json.writeStringField("productName", row.productName());
+                json.writeNumberField("quantity", row.quantity());
+                json.writeNumberField("totalPrice", row.totalPrice());
+                json.writeEndObject();
+            }
+            clearPeriodically(++count);
+        }
+        if (currentOrder != null) {
+            endOrder(json);
+        }
+        json.flush();
+    }
+
+    private static void endOrder(JsonGenerator json) throws IOException {
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    void writeCsv(Iterator<OrderExportRow> rows, OutputStream out) throws IOException {
+        Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        csv.write("orderId,customerName,email,status,orderDate,productName,quantity,totalPrice\n");
+        int count = 0;
+        while (rows.hasNext()) {
+            OrderExportRow row = rows.next();
+            csv.write(String.join(",",
+                    csvField(row.orderId()),
+                    csvField(row.customerName()),
+                    csvField(row.email()),
+                    csvField(row.status()),
+                    csvField(row.orderDate()),
+                    csvField(row.productName()),
+                    csvField(row.quantity()),
+                    csvField(row.totalPrice() == null ? null : row.totalPrice().toPlainString())));
+            csv.write('\n');
+            clearPeriodically(++count);
+        }
+        csv.flush();
+    }
+
+    static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n") || text.contains("\r")) {
+            return '"' + text.replace("\"", "\"\"") + '"';
+        }
+        return text;
+    }
+
+    // DTO rows are not managed, but keep the session from accumulating anything over a long export
+    private void clearPeriodically(int count) {
+        if (count % CLEAR_EVERY_ROWS == 0) {
+            entityManager.clear();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.exception.BulkheadRejectedException;
+import com.learning.springecom.exception.OrderIntakeUnavailableException;
+import com.learning.springecom.exception.OrderRejectedException;
+import com.learning.springecom.model.dto.OrderIntakeResponse;
+import com.learning.springecom.model.dto.OrderItemRequest;
+import com.learning.springecom.model.dto.OrderLineError;
+import com.learning.springecom.model.dto.OrderRequest;
+import com.learning.springecom.model.dto.OrderResponse;
+import com.learning.springecom.repo.OrderRepo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous order intake ({@code app.order-intake.mode=async}). {@code POST /api/orders/place}
+ * checks the request, writes it to the {@link OrderJournal} and answers 202 with the order number;
+ * worker threads then place the queued orders in micro-batches of up to
+ * {@code app.order-intake.batch-size}, all in one transaction.
+ * <p>
+ * Each order in a batch runs after a JDBC savepoint, so a rejected order is rolled back on its own
+ * and the others still commit together. If the batch transaction itself fails, its orders are
+ * retried one per transaction, up to {@code app.order-intake.max-attempts} times.
+ * The outcome is journaled and kept for {@code app.order-intake.retention} for
+ * {@code GET /api/orders/intake/{orderId}}.
+ * <p>
+ * A request repeated with the same {@code Idempotency-Key} gets the first order back. After a
+ * restart the journal is replayed: orders without an outcome are queued again, and those already
+ * in the orders table are reported as placed rather than placed twice.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.order-intake.mode", havingValue = "async")
+public class OrderIntakeService {
+
+    public enum Status { ACCEPTED, PLACED, REJECTED, FAILED }
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepo orderRepo;
+
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+
+    @Autowired
+    private CatalogReadModel catalogReadModel;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.order-intake.journal-dir:./data/order-intake}")
+    private Path journalDir;
+
+    @Value("${app.order-intake.journal-max-bytes:67108864}")
+    private long journalMaxBytes;
+
+    @Value("${app.order-intake.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.order-intake.workers:1}")
+    private int workers;
+
+    @Value("${app.order-intake.max-pending:100000}")
+    private int maxPending;
+
+    @Value("${app.order-intake.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.order-intake.retry-delay:PT5S}")
+    private Duration retryDelay;
+
+    @Value("${app.order-intake.retry-after:PT5S}")
+    private Duration retryAfter;
+
+    @Value("${app.order-intake.retention:PT24H}")
+    private Duration retention;
+
+    private final Map<String, Intake> intakes = new ConcurrentHashMap<>();
+    private final Map<String, String> orderIdsByKey = new ConcurrentHashMap<>();
+    private final BlockingQueue<Intake> queue = new LinkedBlockingQueue<>();
+    // accepted and not yet completed, including orders waiting for a retry
+    private final AtomicInteger pending = new AtomicInteger();
+    private final List<Thread> threads = new ArrayList<>();
+    private OrderJournal journal;
+    private volatile boolean running = true;
+    private Counter accepted;
+    private Counter placed;
+    private Counter rejected;
+    private Counter failed;
+
+    private static final class Intake {
+        final String orderId;
+        final String idempotencyKey;
+        final OrderRequest request;
+        final Instant acceptedAt;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+        volatile Status status = Status.ACCEPTED;
+        volatile Instant completedAt;
+        volatile OrderResponse order;
+        volatile List<OrderLineError> errors;
+        volatile String error;
+        int attempts;
+
+        Intake(String orderId, String idempotencyKey, OrderRequest request, Instant acceptedAt) {
+            this.orderId = orderId;
+            this.idempotencyKey = idempotencyKey;
+            this.request = request;
+            this.acceptedAt = acceptedAt;
+        }
+    }
+
+    // The outcome of one order in a batch
+    private record Result(Status status, OrderResponse order, List<OrderLineError> errors) {
+    }
+
+    @PostConstruct
+    void init() {
+        accepted = Counter.builder("order.intake").tag("result", "accepted").register(meterRegistry);
+        placed = Counter.builder("order.intake").tag("result", "placed").register(meterRegistry);
+        rejected = Counter.builder("order.intake").tag("result", "rejected").register(meterRegistry);
+        failed = Counter.builder("order.intake").tag("result", "failed").register(meterRegistry);
+        Gauge.builder("order.intake.pending", pending, AtomicInteger::get).register(meterRegistry);
+
+        journal = new OrderJournal(journalDir, objectMapper, journalMaxBytes);
+        journal.open(replay(journal.read()));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            Thread thread = new Thread(this::work, "order-intake-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    /** Lets the batches in progress finish; queued orders stay in the journal for the next start. */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+
+    /**
+     * Journals the order and queues it, or returns the order already taken with the same
+     * idempotency key. Throws {@link OrderRejectedException} for lines that can be refused up
+     * front, {@link IllegalArgumentException} for an empty order or a key reused with a
+     * different request, and {@link BulkheadRejectedException} when the queue is full.
+     */
+    public OrderIntakeResponse submit(OrderRequest request, String idempotencyKey) {
+        validate(request);
+        String earlier = idempotencyKey == null ? null : orderIdsByKey.get(idempotencyKey);
+        if (earlier != null) {
+            return existing(earlier, request);
+        }
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new BulkheadRejectedException("order intake", BulkheadRejectedException.Reason.FULL, retryAfter);
+        }
+
+        Intake intake = new Intake(orderNumberGenerator.next(), idempotencyKey, request, Instant.now());
+        if (idempotencyKey != null) {
+            earlier = orderIdsByKey.putIfAbsent(idempotencyKey, intake.orderId);
+            if (earlier != null) {
+                pending.decrementAndGet();
+                return existing(earlier, request);
+            }
+        }
+        intakes.put(intake.orderId, intake);
+        try {
+            journal.append(new OrderJournal.Entry(OrderJournal.Type.ACCEPTED, intake.orderId, idempotencyKey,
+                    request, intake.acceptedAt, null, null, null, null)).join();
+        } catch (CompletionException e) {
+            intakes.remove(intake.orderId);
+            if (idempotencyKey != null) {
+                orderIdsByKey.remove(idempotencyKey, intake.orderId);
+            }
+            pending.decrementAndGet();
+            intake.durable.completeExceptionally(e.getCause());
+            throw new OrderIntakeUnavailableException("Could not journal order " + intake.orderId, e.getCause(), retryAfter);
+        }
+        intake.durable.complete(null);
+        queue.add(intake);
+        accepted.increment();
+        log.atInfo().addKeyValue("orderId", intake.orderId).log("Order accepted");
+        return toResponse(intake);
+    }
+
+    /** Returns the order's state, or {@code null} if it is unknown or has expired. */
+    public OrderIntakeResponse get(String orderId) {
+        Intake intake = intakes.get(orderId);
+        return intake == null || !intake.durable.isDone() ? null : toResponse(intake);
+    }
+
+    @Scheduled(fixedDelayString = "${app.order-intake.cleanup-interval-ms:60000}")
+    public void removeExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        List<String> expired = new ArrayList<>();
+        for (Intake intake : intakes.values()) {
+            if (intake.completedAt != null && intake.completedAt.isBefore(cutoff)) {
+                expired.add(intake.orderId);
+                intakes.remove(intake.orderId);
+                if (intake.idempotencyKey != null) {
+                    orderIdsByKey.remove(intake.idempotencyKey, intake.orderId);
+                }
+            }
+        }
+        journal.forget(expired);
+    }
+
+    // The checks that need no stock: quantities, and products missing from the catalog
+    private void validate(OrderRequest request) {
+        if (request.items() == null || request.items().isEmpty()) {
+            throw new IllegalArgumentException("Order has no items");
+        }
+        CatalogSnapshot catalog = catalogReadModel.current();
+        List<OrderLineError> errors = new ArrayList<>();
+        for (OrderItemRequest item : request.items()) {
+            if (item.quantity() <= 0) {
+                errors.add(new OrderLineError(item.productId(), null, item.quantity(), 0, "INVALID_QUANTITY"));
+            } else if (catalog != null && catalog.indexOf(item.productId()) < 0) {
+                errors.add(new OrderLineError(item.productId(), null, item.quantity(), 0, "PRODUCT_NOT_FOUND"));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new OrderRejectedException(errors);
+        }
+    }
+
+    private OrderIntakeResponse existing(String orderId, OrderRequest request) {
+        Intake intake = intakes.get(orderId);
+        if (intake == null) {
+            // expired between the two lookups
+            throw new IllegalArgumentException("Idempotency key has expired, use a new one");
+        }
+        if (!intake.request.equals(request)) {
+            throw new IllegalArgumentException("Idempotency key was already used for a different order");
+        }
+        try {
+            intake.durable.join();
+        } catch (CompletionException e) {
+            throw new OrderIntakeUnavailableException("Could not journal order " + orderId, e.getCause(), retryAfter);
+        }
+        return toResponse(intake);
+    }
+
+    private void work() {
+        List<Intake> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Intake first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Order intake worker failed on a batch of {}", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Intake> batch) {
+        Map<Intake, Result> results;
+        try {
+            results = stageMetrics.record("order.intake.batch",
+                    () -> transactionTemplate.execute(status -> placeAll(batch)));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                retry(batch.get(0), e);
+                return;
+            }
+            log.warn("Batch of {} orders failed, placing them one at a time", batch.size(), e);
+            for (Intake intake : batch) {
+                process(List.of(intake));
+            }
+            return;
+        }
+        results.forEach(this::complete);
+    }
+
+    // Runs in the batch transaction; each order gets a savepoint, so a rejection undoes only its own writes
+    private Map<Intake, Result> placeAll(List<Intake> batch) {
+        List<String> orderIds = batch.stream().map(intake -> intake.orderId).toList();
+        // placed before a crash that came ahead of the outcome reaching the journal
+        Set<String> existing = new HashSet<>(orderRepo.findExistingOrderIds(orderIds));
+        Map<String, OrderResponse> existingOrders = new HashMap<>();
+        if (!existing.isEmpty()) {
+            orderRepo.findByOrderIdIn(existing).forEach(order -> existingOrders.put(order.getOrderId(), OrderService.toResponse(order)));
+        }
+
+        Map<Intake, Result> results = new LinkedHashMap<>();
+        for (Intake intake : batch) {
+            if (existing.contains(intake.orderId)) {
+                results.put(intake, new Result(Status.PLACED, existingOrders.get(intake.orderId), null));
+                continue;
+            }
+            // JPA has no nested transactions with Hibernate; the savepoint is taken on the transaction's connection
+            Savepoint savepoint = jdbcTemplate.execute((ConnectionCallback<Savepoint>) Connection::setSavepoint);
+            try {
+                OrderResponse order = orderService.placeOrder(intake.request, intake.orderId);
+                // before the next savepoint, so a later order's rollback cannot take this order's inserts with it
+                orderRepo.flush();
+                results.put(intake, new Result(Status.PLACED, order, null));
+            } catch (OrderRejectedException e) {
+                // undoes the SQL only; placeOrder rejects before registering any commit callback
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    connection.rollback(savepoint);
+                    return null;
+                });
+                results.put(intake, new Result(Status.REJECTED, null, e.getErrors()));
+            }
+        }
+        return results;
+    }
+
+    private void retry(Intake intake, RuntimeException e) {
+        intake.attempts++;
+        if (intake.attempts < maxAttempts) {
+            log.warn("Order {} failed (attempt {} of {}), retrying in {}", intake.orderId, intake.attempts, maxAttempts, retryDelay, e);
+            CompletableFuture.runAsync(() -> queue.add(intake),
+                    CompletableFuture.delayedExecutor(retryDelay.toMillis(), TimeUnit.MILLISECONDS));
+            return;
+        }
+        log.error("Order {} failed after {} attempts", intake.orderId, intake.attempts, e);
+        complete(intake, new Result(Status.FAILED, null, null), e.getMessage());
+    }
+
+    private void complete(Intake intake, Result result) {
+        complete(intake, result, null);
+    }
+
+    // The outcome is shown once it is journaled, so a status read never goes back to ACCEPTED after a restart
+    private void complete(Intake intake, Result result, String error) {
+        Instant completedAt = Instant.now();
+        journal.append(new OrderJournal.Entry(OrderJournal.Type.COMPLETED, intake.orderId, intake.idempotencyKey,
+                        null, completedAt, result.status().name(), result.order(), result.errors(), error))
+                .whenComplete((ignored, journalError) -> {
+                    if (journalError != null) {
+                        log.warn("Could not journal the outcome of order {}", intake.orderId, journalError);
+                    }
+                    intake.order = result.order();
+                    intake.errors = result.errors();
+                    intake.error = error;
+                    intake.completedAt = completedAt;
+                    intake.status = result.status();
+                    pending.decrementAndGet();
+                    switch (result.status()) {
+                        case PLACED -> placed.increment();
+                        case REJECTED -> rejected.increment();
+                        default -> failed.increment();
+                    }
+                });
+    }
+
+    // Restores the orders still within retention, queues the unfinished ones, and returns their entries
+    private List<OrderJournal.Entry> replay(List<OrderJournal.Entry> entries) {
+        Map<String, OrderJournal.Entry> outcomes = new HashMap<>();
+        for (OrderJournal.Entry entry : entries) {
+            if (entry.type() == OrderJournal.Type.COMPLETED) {
+                outcomes.put(entry.orderId(), entry);
+            }
+        }
+        Instant cutoff = Instant.now().minus(retention);
+        List<OrderJournal.Entry> live = new ArrayList<>();
+        for (OrderJournal.Entry entry : entries) {
+            if (entry.type() != OrderJournal.Type.ACCEPTED || intakes.containsKey(entry.orderId())) {
+                continue;
+            }
+            OrderJournal.Entry outcome = outcomes.get(entry.orderId());
+            if (outcome != null && outcome.at().isBefore(cutoff)) {
+                continue;
+            }
+            Intake intake = new Intake(entry.orderId(), entry.idempotencyKey(), entry.request(), entry.at());
+            intake.durable.complete(null);
+            intakes.put(intake.orderId, intake);
+            if (intake.idempotencyKey != null) {
+                orderIdsByKey.put(intake.idempotencyKey, intake.orderId);
+            }
+            live.add(entry);
+            if (outcome == null) {
+                pending.incrementAndGet();
+                queue.add(intake);
+            } else {
+                intake.status = Status.valueOf(outcome.status());
+                intake.completedAt = outcome.at();
+                intake.order = outcome.order();
+                intake.errors = outcome.errors();
+                intake.error = outcome.error();
+                live.add(outcome);
+            }
+        }
+        if (!live.isEmpty()) {
+            log.info("Replayed {} orders from the order journal, {} still to place", intakes.size(), queue.size());
+        }
+        return live;
+    }
+
+    private OrderIntakeResponse toResponse(Intake intake) {
+        return new OrderIntakeResponse(intake.orderId, intake.status.name(), intake.acceptedAt, intake.completedAt,
+                intake.order, intake.errors, intake.error);
+    }
+}
@@ -0,0 +1,284 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.dto.OrderLineError;
+import com.learning.springecom.model.dto.OrderRequest;
+import com.learning.springecom.model.dto.OrderResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Append-only file of the orders taken by {@link OrderIntakeService}, one JSON entry per line:
+ * an {@code ACCEPTED} entry with the request, and a {@code COMPLETED} entry with the outcome.
+ * <p>
+ * Appends are written by one thread, which takes everything queued since its last write, writes
+ * it and forces it to disk once (group commit). Each append completes when its entry is on disk,
+ * so one fsync covers all the orders that arrived while the previous one ran.
+ * <p>
+ * The file is rewritten with only the live entries when it is opened and whenever it grows past
+ * {@code maxBytes}; entries of forgotten orders are dropped then. The new file is written, synced
+ * and renamed over the old one before appends switch to it, so a failed compaction leaves the
+ * journal as it was.
+ */
+@Slf4j
+final class OrderJournal implements AutoCloseable {
+
+    enum Type { ACCEPTED, COMPLETED }
+
+    record Entry(Type type, String orderId, String idempotencyKey, OrderRequest request, Instant at,
+                 String status, OrderResponse order, List<OrderLineError> errors, String error) {
+    }
+
+    private record Write(Entry entry, byte[] line, CompletableFuture<Void> done) {
+    }
+
+    private static final int MAX_WRITES_PER_SYNC = 1000;
+
+    private final Path file;
+    private final Path compactFile;
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final BlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    // live entries by order id, written again on compaction
+    private final Map<String, Entry> accepted = new ConcurrentHashMap<>();
+    private final Map<String, Entry> completed = new ConcurrentHashMap<>();
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean running;
+
+    OrderJournal(Path directory, ObjectMapper objectMapper, long maxBytes) {
+        this.file = directory.resolve("orders.journal");
+        this.compactFile = directory.resolve("orders.journal.tmp");
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Every entry in the file, oldest first. A last line cut short by a crash is skipped; it was
+     * never acknowledged.
+     */
+    List<Entry> read() {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    entries.add(objectMapper.readValue(line, Entry.class));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable line {} of {}", number, file, e);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+        return entries;
+    }
+
+    /** Replaces the file with the given entries and starts taking appends. */
+    void open(Collection<Entry> live) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            for (Entry entry : live) {
+                track(entry);
+            }
+            compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open " + file, e);
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "order-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Completes once the entry is on disk. */
+    CompletableFuture<Void> append(Entry entry) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (!running) {
+            done.completeExceptionally(new IllegalStateException("The order journal is closed"));
+            return done;
+        }
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(entry);
+            byte[] line = Arrays.copyOf(json, json.length + 1);
+            line[json.length] = '\n';
+            writes.add(new Write(entry, line, done));
+        } catch (IOException e) {
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    /** Drops the order's entries at the next compaction. */
+    void forget(Collection<String> orderIds) {
+        for (String orderId : orderIds) {
+            accepted.remove(orderId);
+            completed.remove(orderId);
+        }
+    }
+
+    /** Writes what is already queued, then stops. */
+    @Override
+    public void close() {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Could not close {}", file, e);
+        }
+    }
+
+    private void writeLoop() {
+        List<Write> batch = new ArrayList<>();
+        while (running || !writes.isEmpty()) {
+            try {
+                Write first = writes.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writes.drainTo(batch, MAX_WRITES_PER_SYNC - 1);
+                write(batch);
+                if (channel.size() > maxBytes) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                // the current file stays in use; compaction is tried again after the next write
+                log.error("Could not compact {}", file, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Write> batch) {
+        int size = 0;
+        for (Write write : batch) {
+            size += write.line().length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Write write : batch) {
+            buffer.put(write.line());
+        }
+        buffer.flip();
+        long start = -1;
+        try {
+            start = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            for (Write write : batch) {
+                write.done().completeExceptionally(e);
+            }
+            recover(start);
+            return;
+        }
+        for (Write write : batch) {
+            track(write.entry());
+            write.done().complete(null);
+        }
+    }
+
+    private void track(Entry entry) {
+        (entry.type() == Type.ACCEPTED ? accepted : completed).put(entry.orderId(), entry);
+    }
+
+    // Drops a partly written batch, so the next entry does not land on the end of a torn line
+    private void recover(long start) {
+        try {
+            if (start >= 0) {
+                channel.truncate(start);
+                channel.force(false);
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("Could not truncate {} after a failed write, reopening it", file, e);
+        }
+        try {
+            FileChannel reopened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            FileChannel previous = channel;
+            channel = reopened;
+            previous.close();
+        } catch (IOException e) {
+            log.error("Could not reopen {}", file, e);
+        }
+    }
+
+    // Writes the live entries to a new file and renames it over the old one, so a crash leaves
+    // one or the other. The new file's channel is opened before the rename and follows it, and
+    // only replaces the current channel once the rename has succeeded. Appends go on from where
+    // the compacted entries end, as only the writer thread moves its position.
+    private void compact() throws IOException {
+        FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            for (Map<String, Entry> entries : List.of(accepted, completed)) {
+                for (Entry entry : entries.values()) {
+                    byte[] json = objectMapper.writeValueAsBytes(entry);
+                    ByteBuffer buffer = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+            }
+            out.force(false);
+            Files.move(compactFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            Files.deleteIfExists(compactFile);
+            throw e;
+        }
+        syncDirectory();
+        FileChannel previous = channel;
+        channel = out;
+        if (previous != null) {
+            previous.close();
+        }
+        log.debug("Compacted {} to {} bytes", file, channel.size());
+    }
+
+    // Makes the rename itself durable; not every platform can open a directory, which is fine
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync the directory of {}", file, e);
+        }
+    }
+}
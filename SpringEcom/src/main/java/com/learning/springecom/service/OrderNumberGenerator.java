@@ -0,0 +1,91 @@
+package com.learning.springecom.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Order numbers built from the clock, a node id and a counter, in the Snowflake layout:
+ * 41 bits of milliseconds since 2024, 10 bits of node and 12 bits of sequence. They are unique
+ * across nodes without a database round-trip and sort by creation time. The value is rendered as
+ * {@code ORD} followed by 13 Crockford base-32 characters.
+ * <p>
+ * Numbers on a node only ever increase. When more than 4096 are taken in one millisecond, or the
+ * clock steps back, the generator carries on from its last timestamp instead of waiting. That
+ * lead over the clock is not persisted: a node restarted before its clock has caught up (after a
+ * backward clock step longer than the restart, in practice) can hand out a number again.
+ * <p>
+ * Each node needs its own {@code app.order-number.node-id} (0-1023); startup fails without one,
+ * since two nodes sharing an id can hand out the same number in the same millisecond.
+ */
+@Component
+public class OrderNumberGenerator {
+
+    // 2024-01-01T00:00:00Z; 41 bits of milliseconds from here last until 2093
+    private static final long EPOCH_MILLIS = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 13;
+
+    @Value("${app.order-number.node-id:-1}")
+    private int configuredNodeId;
+
+    private int nodeId;
+    // milliseconds << SEQUENCE_BITS | sequence of the last number handed out; incrementing it
+    // carries a full sequence over into the next millisecond
+    private final AtomicLong last = new AtomicLong();
+    private final LongSupplier clock;
+
+    public OrderNumberGenerator() {
+        this(System::currentTimeMillis);
+    }
+
+    OrderNumberGenerator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void init() {
+        if (configuredNodeId < 0) {
+            throw new IllegalStateException("app.order-number.node-id is not set; give every node its own id "
+                    + "between 0 and " + MAX_NODE_ID);
+        }
+        if (configuredNodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("app.order-number.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        nodeId = configuredNodeId;
+    }
+
+    public String next() {
+        return "ORD" + encode(nextId());
+    }
+
+    long nextId() {
+        long now = (clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = now > previous ? now : previous + 1;
+        } while (!last.compareAndSet(previous, next));
+
+        long millis = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1 << SEQUENCE_BITS) - 1);
+        return millis << (NODE_BITS + SEQUENCE_BITS) | (long) nodeId << SEQUENCE_BITS | sequence;
+    }
+
+    // Fixed width, so string order is numeric order
+    static String encode(long id) {
+        char[] chars = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            chars[i] = CROCKFORD[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+}
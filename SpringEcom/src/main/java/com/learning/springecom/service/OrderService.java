@@ -1,27 +1,35 @@
 package com.learning.springecom.service;
 
+import com.learning.springecom.exception.OrderRejectedException;
 import com.learning.springecom.model.Order;
 import com.learning.springecom.model.OrderItem;
 import com.learning.springecom.model.Product;
 import com.learning.springecom.model.dto.OrderItemRequest;
 import com.learning.springecom.model.dto.OrderItemResponse;
+import com.learning.springecom.model.dto.OrderItemRow;
+import com.learning.springecom.model.dto.OrderLineError;
+import com.learning.springecom.model.dto.OrderPage;
 import com.learning.springecom.model.dto.OrderRequest;
 import com.learning.springecom.model.dto.OrderResponse;
 import com.learning.springecom.repo.OrderRepo;
 import com.learning.springecom.repo.ProductRepo;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.VectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 
+@Slf4j
 @Service
 public class OrderService {
 
@@ -32,31 +40,145 @@ public class OrderService {
     private OrderRepo orderRepo;
 
     @Autowired
-    private VectorStore vectorStore;
+    private VectorSyncService vectorSyncService;
+
+    @Autowired
+    private ObjectProvider<InventoryReservationService> inventoryReservations;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
 
     @Transactional
     public OrderResponse placeOrder(OrderRequest request) {
+        return placeOrder(request, orderNumberGenerator.next());
+    }
+
+    /**
+     * Places the order under the given order number in the caller's transaction. The
+     * asynchronous intake uses it to commit many orders in one transaction.
+     */
+    OrderResponse placeOrder(OrderRequest request, String orderId) {
         Order order = new Order();
-        String orderId = "ORD" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         order.setOrderId(orderId);
         order.setCustomerName(request.customerName());
         order.setEmail(request.email());
         order.setStatus("PLACED");
         order.setOrderDate(LocalDate.now());
 
-        List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal totalOrderAmount = BigDecimal.ZERO;
-
+        // One row per product, in id order so concurrent multi-line orders lock rows in the same order
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        List<OrderLineError> errors = new ArrayList<>();
         for (OrderItemRequest itemReq : request.items()) {
-            Product product = productRepo.findById(itemReq.productId())
-                    .orElseThrow(() -> new RuntimeException("Product not found"));
+            if (itemReq.quantity() <= 0) {
+                errors.add(new OrderLineError(itemReq.productId(), null, itemReq.quantity(), 0, "INVALID_QUANTITY"));
+            } else {
+                quantities.merge(itemReq.productId(), itemReq.quantity(), Integer::sum);
+            }
+        }
+
+        // Names and prices may come from the cache; stock is only ever checked by the updates below
+        Map<Integer, Product> products = stageMetrics.record("order.db.load",
+                () -> productCache.getAll(quantities.keySet(), productRepo::findAllById));
+
+        for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+            if (!products.containsKey(line.getKey())) {
+                errors.add(new OrderLineError(line.getKey(), null, line.getValue(), 0, "PRODUCT_NOT_FOUND"));
+            }
+        }
+
+        InventoryReservationService inventory = inventoryReservations.getIfAvailable();
+        if (inventory != null) {
+            // Flash-sale mode: stock is taken from in-memory counters and written back later.
+            // Reserved only once nothing else can reject the order: the reservation is settled by
+            // the transaction, and the batched intake undoes a rejected order only to its savepoint
+            if (errors.isEmpty()) {
+                stageMetrics.record("order.stock.update",
+                        () -> inventory.completeWithTransaction(inventory.reserve(quantities)));
+            }
+        } else {
+            stageMetrics.record("order.stock.update", () -> {
+                for (Map.Entry<Integer, Integer> line : quantities.entrySet()) {
+                    Product product = products.get(line.getKey());
+                    if (product != null && productRepo.decrementStock(product.getId(), line.getValue(), Instant.now()) == 0) {
+                        int available = productRepo.findStockQuantity(product.getId()).orElse(0);
+                        errors.add(new OrderLineError(product.getId(), product.getName(), line.getValue(), available, "INSUFFICIENT_STOCK"));
+                    }
+                }
+            });
+        }
+        if (!errors.isEmpty()) {
+            // rolls back the stock already taken for the other lines
+            log.atInfo().addKeyValue("orderId", orderId).addKeyValue("rejectedLines", errors.size())
+                    .log("Order rejected");
+            throw new OrderRejectedException(errors);
+        }
+
+        order.setOrderItems(buildItems(order, request.items(), products));
+        Order savedOrder = stageMetrics.record("order.db.save", () -> orderRepo.save(order));
+
+        if (inventory == null) {
+            productCache.evictAfterCommit(quantities.keySet());
+        }
+
+        // Refresh the product and order documents in the vector store once this transaction commits
+        stageMetrics.record("order.outbox.enqueue", () -> {
+            vectorSyncService.enqueueProducts(quantities.keySet());
+            vectorSyncService.enqueueOrder(savedOrder.getOrderId());
+        });
+        log.atInfo().addKeyValue("orderId", savedOrder.getOrderId()).addKeyValue("lines", order.getOrderItems().size())
+                .log("Order placed");
+
+        return toResponse(savedOrder);
+    }
 
-            // Update stock
-            product.setStockQuantity(product.getStockQuantity() - itemReq.quantity());
-            productRepo.save(product);
+    @Transactional(readOnly = true)
+    public List<OrderResponse> getAllOrderResponses() {
+        List<Order> orders = orderRepo.findAll(Sort.by("id"));
+        return toResponses(orders, orderRepo.findAllItemRows());
+    }
 
-            // Update product in vector store
-            updateProductInVectorStore(product);
+    /**
+     * One page of orders, newest first, optionally filtered by status, email and an inclusive
+     * order date range. Two queries per page: the orders, then all their lines with product names.
+     */
+    @Transactional(readOnly = true)
+    public OrderPage getOrderPage(int page, int size, String status, String email, LocalDate from, LocalDate to) {
+        Specification<Order> filter = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (status != null && !status.isBlank()) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            if (email != null && !email.isBlank()) {
+                predicates.add(cb.equal(root.get("email"), email));
+            }
+            if (from != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("orderDate"), from));
+            }
+            if (to != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("orderDate"), to));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+
+        Page<Order> orders = orderRepo.findAll(filter,
+                PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "orderDate", "id")));
+        List<Long> orderKeys = orders.getContent().stream().map(Order::getId).toList();
+        List<OrderItemRow> rows = orderKeys.isEmpty() ? List.of() : orderRepo.findItemRows(orderKeys);
+
+        return new OrderPage(toResponses(orders.getContent(), rows),
+                orders.getNumber(), orders.getSize(), orders.getTotalElements(), orders.getTotalPages());
+    }
+
+    static List<OrderItem> buildItems(Order order, List<OrderItemRequest> lines, Map<Integer, Product> products) {
+        List<OrderItem> orderItems = new ArrayList<>(lines.size());
+        for (OrderItemRequest itemReq : lines) {
+            Product product = products.get(itemReq.productId());
 
             // Create order item
             OrderItem orderItem = OrderItem.builder()
@@ -67,18 +189,13 @@ public class OrderService {
                     .build();
 
             orderItems.add(orderItem);
-            totalOrderAmount = totalOrderAmount.add(orderItem.getTotalPrice());
         }
+        return orderItems;
+    }
 
-        order.setOrderItems(orderItems);
-        Order savedOrder = orderRepo.save(order);
-
-        // Save order in vector store
-        addOrderToVectorStore(savedOrder, totalOrderAmount);
-
-        // Prepare response
-        List<OrderItemResponse> itemResponses = new ArrayList<>();
-        for (OrderItem item : savedOrder.getOrderItems()) {
+    static OrderResponse toResponse(Order order) {
+        List<OrderItemResponse> itemResponses = new ArrayList<>(order.getOrderItems().size());
+        for (OrderItem item : order.getOrderItems()) {
             itemResponses.add(new OrderItemResponse(
                     item.getProduct().getName(),
                     item.getQuantity(),
@@ -87,129 +204,31 @@ public class OrderService {
         }
 
         return new OrderResponse(
-                savedOrder.getOrderId(),
-                savedOrder.getCustomerName(),
-                savedOrder.getEmail(),
-                savedOrder.getStatus(),
-                savedOrder.getOrderDate(),
+                order.getOrderId(),
+                order.getCustomerName(),
+                order.getEmail(),
+                order.getStatus(),
+                order.getOrderDate(),
                 itemResponses
         );
     }
 
-    private void updateProductInVectorStore(Product product) {
-        try {
-            // Delete old entry
-            String filter = String.format("productId == '%s'", product.getId());
-            vectorStore.delete(filter);
-
-            // Create new doc
-            String productContent = String.format("""
-                Product Information:
-                Product ID: %d
-                Name: %s
-                Description: %s
-                Brand: %s
-                Category: %s
-                Price: $%.2f
-                Release Date: %s
-                Available: %s
-                Stock Quantity: %d
-                Stock Status: %s
-                """,
-                    product.getId(),
-                    product.getName(),
-                    product.getDescription(),
-                    product.getBrand(),
-                    product.getCategory(),
-                    product.getPrice(),
-                    product.getReleaseDate(),
-                    product.isProductAvailable() ? "Yes" : "No",
-                    product.getStockQuantity(),
-                    product.getStockQuantity() > 10 ? "In Stock" :
-                            (product.getStockQuantity() > 0 ? "Low Stock" : "Out of Stock")
-            );
-
-            Document productDoc = new Document(
-                    String.valueOf(product.getId()),
-                    productContent,
-                    Map.of(
-                            "type", "product",
-                            "productId", String.valueOf(product.getId()),
-                            "productName", product.getName(),
-                            "category", product.getCategory()
-                    )
-            );
-
-            vectorStore.add(List.of(productDoc));
-            System.out.println("[ORDER SERVICE] Product updated in vector store: " + product.getName());
-
-        } catch (Exception e) {
-            System.err.println("[ORDER SERVICE] Failed to update product in vector store: " + e.getMessage());
+    private static List<OrderResponse> toResponses(List<Order> orders, List<OrderItemRow> rows) {
+        Map<Long, List<OrderItemResponse>> itemsByOrder = new HashMap<>();
+        for (OrderItemRow row : rows) {
+            itemsByOrder.computeIfAbsent(row.orderKey(), key -> new ArrayList<>())
+                    .add(new OrderItemResponse(row.productName(), row.quantity(), row.totalPrice()));
         }
-    }
-
-    private void addOrderToVectorStore(Order order, BigDecimal totalAmount) {
-        try {
-            // Delete old entry
-            String filter = String.format("orderId == '%s'", order.getOrderId());
-            vectorStore.delete(filter);
-
-            // Create new doc
-            StringBuilder content = new StringBuilder();
-            content.append("Order ID: ").append(order.getOrderId()).append("\n")
-                    .append("Customer: ").append(order.getCustomerName()).append("\n")
-                    .append("Email: ").append(order.getEmail()).append("\n")
-                    .append("Date: ").append(order.getOrderDate()).append("\n")
-                    .append("Status: ").append(order.getStatus()).append("\n")
-                    .append("Total: $").append(totalAmount).append("\n");
-
-            for (OrderItem item : order.getOrderItems()) {
-                content.append("Product: ").append(item.getProduct().getName())
-                        .append(", Qty: ").append(item.getQuantity())
-                        .append(", Total: $").append(item.getTotalPrice()).append("\n");
-            }
-
-            Document orderDoc = new Document(
-                    order.getOrderId(),
-                    content.toString(),
-                    Map.of(
-                            "type", "order",
-                            "orderId", order.getOrderId(),
-                            "customerName", order.getCustomerName(),
-                            "status", order.getStatus()
-                    )
-            );
-
-            vectorStore.add(List.of(orderDoc));
-            System.out.println("[ORDER SERVICE] Order added to vector store: " + order.getOrderId());
-
-        } catch (Exception e) {
-            System.err.println("[ORDER SERVICE] Failed to add order to vector store: " + e.getMessage());
-        }
-    }
-
-    @Transactional
-    public List<OrderResponse> getAllOrderResponses() {
-        List<Order> orders = orderRepo.findAll();
-        List<OrderResponse> responses = new ArrayList<>();
 
+        List<OrderResponse> responses = new ArrayList<>(orders.size());
         for (Order order : orders) {
-            List<OrderItemResponse> items = new ArrayList<>();
-            for (OrderItem item : order.getOrderItems()) {
-                items.add(new OrderItemResponse(
-                        item.getProduct().getName(),
-                        item.getQuantity(),
-                        item.getTotalPrice()
-                ));
-            }
-
             responses.add(new OrderResponse(
                     order.getOrderId(),
                     order.getCustomerName(),
                     order.getEmail(),
                     order.getStatus(),
                     order.getOrderDate(),
-                    items
+                    itemsByOrder.getOrDefault(order.getId(), List.of())
             ));
         }
         return responses;
@@ -0,0 +1,293 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process cache of product rows for the by-id reads (product page, checkout), so the
+ * few hundred hot products are not loaded from the primary on every request. Rows hold the image
+ * hash only; the bytes stay in the {@link ImageStorageService}. Callers always get a copy.
+ * <p>
+ * Writers call {@link #evictAfterCommit} or {@link #evictAndNotify}. This node drops the entries
+ * (and refreshes them in the {@link CatalogReadModel}) once the transaction commits, and other
+ * nodes hear about it on the {@value #CHANNEL} channel ({@link ProductCacheListener}):
+ * <ul>
+ *     <li>{@link #evictAndNotify} sends the {@code pg_notify} inside the writing transaction, so
+ *     PostgreSQL delivers it exactly when the change commits. Used for admin edits and deletes.</li>
+ *     <li>{@link #evictAfterCommit} collects the ids and sends them every
+ *     {@code app.product-cache.notify-interval-ms} in one notification. Used for stock updates:
+ *     every transaction that notifies takes a database-wide lock at commit, which checkouts
+ *     should not queue on. Stock is never decided from the cache, orders take it with an atomic
+ *     update.</li>
+ * </ul>
+ * While the listener is not connected the cache is bypassed, and entries expire after
+ * {@code app.product-cache.ttl} in any case.
+ */
+@Slf4j
+@Component
+public class ProductCache {
+
+    static final String CHANNEL = "product_cache";
+    // pg_notify payloads must stay under 8000 bytes
+    private static final int MAX_PAYLOAD = 7000;
+    private static final int STRIPES = 64;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CatalogReadModel catalogReadModel;
+
+    @Value("${app.product-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.product-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${app.product-cache.ttl:PT5M}")
+    private Duration ttl;
+
+    // identifies this node's own notifications, which the listener skips
+    private final String nodeId = UUID.randomUUID().toString();
+    // access-ordered, so the first entry is the least recently used
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // bumped per stripe of ids on every eviction, so rows loaded before it are not stored
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+    // evicted on this node but not yet announced to the others
+    private final Set<Integer> unannounced = ConcurrentHashMap.newKeySet();
+    private volatile boolean suspended;
+    private Counter hits;
+    private Counter misses;
+
+    private record Entry(Product product, Instant expiresAt) {
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        hits = Counter.builder("product.cache").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("product.cache").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("product.cache.size", this, cache -> cache.size()).register(meterRegistry);
+    }
+
+    public Optional<Product> get(int id, Function<Integer, Optional<Product>> loader) {
+        return Optional.ofNullable(getAll(List.of(id), ids -> loader.apply(id).stream().toList()).get(id));
+    }
+
+    /**
+     * Products by id, from the cache where possible and with one {@code loader} call for the
+     * rest. Ids that do not exist are missing from the result.
+     */
+    public Map<Integer, Product> getAll(Collection<Integer> ids, Function<Collection<Integer>, List<Product>> loader) {
+        if (!enabled || suspended) {
+            return copies(loader.apply(ids));
+        }
+        Map<Integer, Product> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            Instant now = Instant.now();
+            for (Integer id : ids) {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.expiresAt().isAfter(now)) {
+                    found.put(id, copy(entry.product()));
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        hits.increment(found.size());
+        if (missing.isEmpty()) {
+            return found;
+        }
+        misses.increment(missing.size());
+
+        Map<Integer, Long> startGenerations = new HashMap<>();
+        for (Integer id : missing) {
+            startGenerations.put(id, generations.get(stripe(id)));
+        }
+        List<Product> loaded = loader.apply(missing);
+        synchronized (this) {
+            Instant expiresAt = Instant.now().plus(ttl);
+            for (Product product : loaded) {
+                Long start = startGenerations.get(product.getId());
+                if (start != null && start == generations.get(stripe(product.getId())) && !suspended) {
+                    entries.put(product.getId(), new Entry(copy(product), expiresAt));
+                }
+            }
+            while (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+        found.putAll(copies(loaded));
+        return found;
+    }
+
+    /**
+     * Drops the products on this node when the current transaction commits (at once without a
+     * transaction) and announces them to the other nodes with the next batched notification.
+     */
+    public void evictAfterCommit(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Integer> copy = List.copyOf(ids);
+        afterCommit(() -> {
+            evict(copy);
+            catalogReadModel.refreshLater(copy);
+            unannounced.addAll(copy);
+        });
+    }
+
+    /**
+     * Drops the products on this node when the current transaction commits, and notifies the
+     * other nodes as part of the transaction. Must be called inside the writing transaction.
+     */
+    public void evictAndNotify(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Integer> copy = List.copyOf(ids);
+        notify(copy);
+        afterCommit(() -> {
+            evict(copy);
+            catalogReadModel.refresh(copy);
+        });
+    }
+
+    /** Sends the ids collected by {@link #evictAfterCommit}. */
+    @Scheduled(fixedDelayString = "${app.product-cache.notify-interval-ms:100}")
+    public void announceEvictions() {
+        if (unannounced.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>(unannounced);
+        unannounced.removeAll(ids);
+        try {
+            transactionTemplate.executeWithoutResult(status -> notify(ids));
+        } catch (RuntimeException e) {
+            unannounced.addAll(ids);
+            log.warn("Failed to announce {} product cache evictions, will retry", ids.size(), e);
+        }
+    }
+
+    /** Applies a notification received from the channel; this node's own ones are ignored. */
+    void onNotification(String payload) {
+        int separator = payload.indexOf(':');
+        if (separator < 0 || payload.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (String id : payload.substring(separator + 1).split(",")) {
+            try {
+                ids.add(Integer.parseInt(id));
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed product id '{}' on {}", id, CHANNEL);
+            }
+        }
+        evict(ids);
+        catalogReadModel.refreshLater(ids);
+    }
+
+    /** Bypasses the cache, for while evictions from other nodes may be missed. */
+    void suspend() {
+        suspended = true;
+        clear();
+    }
+
+    void resume() {
+        clear();
+        suspended = false;
+    }
+
+    public void evict(Collection<Integer> ids) {
+        synchronized (this) {
+            for (Integer id : ids) {
+                generations.incrementAndGet(stripe(id));
+                entries.remove(id);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void notify(List<Integer> ids) {
+        StringBuilder payload = new StringBuilder(nodeId).append(':');
+        int start = payload.length();
+        for (Integer id : ids) {
+            if (payload.length() > MAX_PAYLOAD) {
+                jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload.toString());
+                payload.setLength(start);
+            }
+            payload.append(payload.length() > start ? "," : "").append(id);
+        }
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload.toString());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static int stripe(int id) {
+        return Math.floorMod(id, STRIPES);
+    }
+
+    private static Map<Integer, Product> copies(List<Product> products) {
+        Map<Integer, Product> byId = new HashMap<>();
+        for (Product product : products) {
+            byId.put(product.getId(), copy(product));
+        }
+        return byId;
+    }
+
+    // Detached copy, so neither the persistence context nor callers share the cached instance
+    private static Product copy(Product product) {
+        return new Product(product.getId(), product.getName(), product.getDescription(), product.getBrand(),
+                product.getPrice(), product.getCategory(),
+                product.getReleaseDate() == null ? null : new Date(product.getReleaseDate().getTime()),
+                product.isProductAvailable(), product.getStockQuantity(), product.getImageName(),
+                product.getImageType(), product.getImageHash(), product.getImageSize(), product.getVersion(),
+                product.getUpdatedAt());
+    }
+}
@@ -0,0 +1,109 @@
+package com.learning.springecom.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Receives product cache evictions from the other nodes. A background thread holds its own
+ * connection (outside the pool, which it would otherwise keep one short of) with
+ * {@code LISTEN product_cache} and applies the notifications to {@link ProductCache}.
+ * <p>
+ * Evictions sent while this node is not listening are lost, so the cache is bypassed from the
+ * moment the connection fails until it is back, and emptied when listening starts again.
+ * Set {@code app.product-cache.listen=false} when the application runs as a single node.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.product-cache.listen", havingValue = "true", matchIfMissing = true)
+public class ProductCacheListener {
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private JdbcConnectionDetails connectionDetails;
+
+    @Value("${app.product-cache.listen-poll-timeout:PT1S}")
+    private Duration pollTimeout;
+
+    @Value("${app.product-cache.reconnect-delay:PT5S}")
+    private Duration reconnectDelay;
+
+    private volatile boolean running = true;
+    private Thread thread;
+
+    @PostConstruct
+    void suspendUntilListening() {
+        productCache.suspend();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        thread = new Thread(this::listen, "product-cache-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(connectionDetails.getJdbcUrl(),
+                    connectionDetails.getUsername(), connectionDetails.getPassword())) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + ProductCache.CHANNEL);
+                }
+                productCache.resume();
+                log.info("Listening for product cache evictions");
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            productCache.onNotification(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                productCache.suspend();
+                if (running) {
+                    log.warn("Product cache listener lost its connection, cache bypassed until it reconnects", e);
+                    sleep(reconnectDelay);
+                }
+            }
+        }
+    }
+
+    private void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.learning.springecom.service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Opaque keyset cursor for the catalog listing: the sort key and id of the last row
+ * returned, so the next page resumes with an index seek instead of an OFFSET scan.
+ */
+record ProductCursor(ProductSort sort, String sortValue, int id) {
+
+    enum ProductSort {
+        ID, PRICE, RELEASE_DATE;
+
+        // Accepts releaseDate, release_date, release-date and so on: case and separators are ignored
+        static ProductSort from(String value) {
+            String normalized = value == null ? "" : value.trim().replace("-", "").replace("_", "").toLowerCase(Locale.ROOT);
+            for (ProductSort sort : values()) {
+                if (sort.name().replace("_", "").toLowerCase(Locale.ROOT).equals(normalized)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sort: " + value + " (use id, price or releaseDate)");
+        }
+    }
+
+    BigDecimal price() {
+        return new BigDecimal(sortValue);
+    }
+
+    Date releaseDate() {
+        return new Date(Long.parseLong(sortValue));
+    }
+
+    String encode() {
+        String raw = sort + "|" + sortValue + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ProductCursor decode(String cursor, ProductSort expectedSort) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            ProductCursor decoded = new ProductCursor(ProductSort.valueOf(parts[0]), parts[1], Integer.parseInt(parts[2]));
+            if (decoded.sort() != expectedSort) {
+                throw new IllegalArgumentException("Cursor was issued for sort " + decoded.sort());
+            }
+            switch (decoded.sort()) {
+                case PRICE -> decoded.price();
+                case RELEASE_DATE -> decoded.releaseDate();
+                default -> { }
+            }
+            return decoded;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.dto.ProductImportResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Imports a product file at startup ({@code --app.import.file=products.csv}). Files ending in
+ * {@code .csv} are read as CSV, anything else as JSON. The import id defaults to the file's
+ * absolute path, so starting again with the same file resumes an interrupted import and does
+ * nothing once it has completed; set {@code app.import.id} to import the file again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.import.file")
+public class ProductImportRunner implements ApplicationRunner {
+
+    @Autowired
+    private ProductImportService importService;
+
+    @Value("${app.import.file}")
+    private Path file;
+
+    @Value("${app.import.id:}")
+    private String importId;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        Path source = file.toAbsolutePath().normalize();
+        ProductImportService.Format format = source.getFileName().toString().toLowerCase().endsWith(".csv")
+                ? ProductImportService.Format.CSV
+                : ProductImportService.Format.JSON;
+        ProductImportResult result;
+        try (InputStream in = Files.newInputStream(source)) {
+            result = importService.importProducts(in, format, source.toString(),
+                    importId.isBlank() ? source.toString() : importId);
+        }
+        log.atInfo()
+                .addKeyValue("importId", result.importId())
+                .addKeyValue("status", result.status())
+                .addKeyValue("rowsImported", result.rowsImported())
+                .addKeyValue("rowsFailed", result.rowsFailed())
+                .addKeyValue("rowsSkipped", result.rowsSkipped())
+                .log("Product import from {} finished", source);
+        result.errors().forEach(error -> log.warn("Row {} rejected: {}", error.row(), error.message()));
+    }
+}
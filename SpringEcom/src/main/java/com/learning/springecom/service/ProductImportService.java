@@ -0,0 +1,531 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.ProductImport;
+import com.learning.springecom.model.dto.ProductImportError;
+import com.learning.springecom.model.dto.ProductImportResult;
+import com.learning.springecom.repo.ProductImportRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk product import from CSV (with a header row) or JSON (an array of objects, or one object
+ * per line). The source is read as a stream and written in batches of
+ * {@code app.import.batch-size} rows: each batch is one JDBC batch insert plus one batch of
+ * vector-sync outbox rows, committed together with the import's checkpoint. Re-running an import
+ * with the same id skips the rows already committed.
+ * <p>
+ * Invalid rows are reported with their row number and skipped. After each batch commits, its
+ * product documents are embedded through the embedding model's batch API on a small pool, so the
+ * outbox worker later finds every vector in the embedding cache. At most
+ * {@code app.import.embedding-concurrency} batches are embedded at once and one more may wait;
+ * when embedding falls behind, reading the source pauses until it catches up.
+ * <p>
+ * Uploads go through {@link #submit}, which spools the body to a temporary file and runs the
+ * import on a background thread, one import at a time; progress is read with {@link #getImport}.
+ */
+@Slf4j
+@Service
+public class ProductImportService {
+
+    public enum Format { CSV, JSON }
+
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private static final String INSERT_PRODUCT = "INSERT INTO product " +
+            "(name, description, brand, price, category, release_date, product_available, stock_quantity, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, now())";
+
+    private static final String ADVANCE_CHECKPOINT = "UPDATE product_import SET rows_committed = ?, " +
+            "rows_imported = rows_imported + ?, rows_failed = rows_failed + ?, updated_at = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductImportRepo importRepo;
+
+    @Autowired
+    private VectorSyncService vectorSyncService;
+
+    @Autowired
+    private VectorDocumentFactory documentFactory;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private ObjectProvider<InventoryReservationService> inventoryReservations;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private WorkerPools workerPools;
+
+    @Value("${app.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.import.embedding-batch-size:500}")
+    private int embeddingBatchSize;
+
+    @Value("${app.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    // ids of the imports running or queued on this node, so a resubmitted id does not run twice
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+
+    private record Row(long number, Map<String, String> fields, String error) {
+    }
+
+    private interface RowSource {
+        /** Returns the next row, or {@code null} at the end of the source. */
+        Row next() throws IOException;
+    }
+
+    /**
+     * Imports the source under {@code importId}, or under a new id when it is {@code null}.
+     * For an existing import, rows up to its checkpoint are skipped; a completed import is not
+     * run again.
+     */
+    public ProductImportResult importProducts(InputStream in, Format format, String source, String importId) {
+        if (importId != null && !active.add(importId)) {
+            throw new IllegalStateException("Import " + importId + " is already running");
+        }
+        ProductImport productImport = start(importId, source);
+        active.add(productImport.getId());
+        try {
+            if (productImport.getStatus() == ProductImport.Status.COMPLETED) {
+                return toResult(productImport, 0, List.of());
+            }
+            return run(productImport, in, format);
+        } finally {
+            active.remove(productImport.getId());
+        }
+    }
+
+    /**
+     * Copies the upload to a temporary file and imports it in the background. Returns the
+     * import as it stands: {@code RUNNING} when it was started or is still running from an
+     * earlier submission, {@code COMPLETED} when there is nothing left to import.
+     */
+    public ProductImportResult submit(InputStream in, Format format, String source, String importId) throws IOException {
+        if (importId != null && !active.add(importId)) {
+            return getImport(importId).orElseThrow();
+        }
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("product-import-", ".upload");
+            Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+            ProductImport productImport = start(importId, source);
+            active.add(productImport.getId());
+            if (productImport.getStatus() == ProductImport.Status.COMPLETED) {
+                active.remove(productImport.getId());
+                Files.deleteIfExists(spool);
+                return toResult(productImport, 0, List.of());
+            }
+            Path file = spool;
+            workerPools.productImport().execute(() -> {
+                try (InputStream upload = Files.newInputStream(file)) {
+                    ProductImportResult result = run(productImport, upload, format);
+                    log.atInfo().addKeyValue("importId", result.importId()).addKeyValue("status", result.status())
+                            .addKeyValue("rowsImported", result.rowsImported()).log("Product import finished");
+                } catch (IOException | RuntimeException e) {
+                    log.atWarn().addKeyValue("importId", productImport.getId()).setCause(e).log("Product import failed");
+                    finish(productImport.getId(), ProductImport.Status.FAILED, e.getMessage());
+                } finally {
+                    active.remove(productImport.getId());
+                    deleteQuietly(file);
+                }
+            });
+            return toResult(productImport, 0, List.of());
+        } catch (IOException | RuntimeException e) {
+            if (importId != null) {
+                active.remove(importId);
+            }
+            if (spool != null) {
+                deleteQuietly(spool);
+            }
+            throw e;
+        }
+    }
+
+    private ProductImportResult run(ProductImport productImport, InputStream in, Format format) {
+        long checkpoint = productImport.getRowsCommitted();
+        List<ProductImportError> reported = new ArrayList<>();
+        long skipped = 0;
+        // one batch running per thread plus one waiting; beyond that the reader blocks
+        int permits = workerPools.importEmbedding().getMaxPoolSize() + 1;
+        Semaphore embeddingPermits = new Semaphore(permits);
+        try {
+            RowSource rows = format == Format.CSV ? csvRows(in) : jsonRows(in);
+            List<Product> products = new ArrayList<>(batchSize);
+            List<ProductImportError> errors = new ArrayList<>();
+            long lastRow = checkpoint;
+            Row row;
+            while ((row = rows.next()) != null) {
+                if (row.number() <= checkpoint) {
+                    skipped++;
+                    continue;
+                }
+                lastRow = row.number();
+                String error = row.error();
+                if (error == null) {
+                    try {
+                        products.add(toProduct(row.fields()));
+                    } catch (IllegalArgumentException e) {
+                        error = e.getMessage();
+                    }
+                }
+                if (error != null) {
+                    errors.add(new ProductImportError(row.number(), error));
+                }
+                if (products.size() + errors.size() >= batchSize) {
+                    commitBatch(productImport.getId(), lastRow, products, errors, embeddingPermits);
+                    report(errors, reported);
+                    products = new ArrayList<>(batchSize);
+                    errors = new ArrayList<>();
+                }
+            }
+            if (!products.isEmpty() || !errors.isEmpty()) {
+                commitBatch(productImport.getId(), lastRow, products, errors, embeddingPermits);
+                report(errors, reported);
+            }
+            finish(productImport.getId(), ProductImport.Status.COMPLETED, null);
+        } catch (IOException | RuntimeException e) {
+            // committed batches stay; running the import again resumes after the last of them
+            log.atWarn().addKeyValue("importId", productImport.getId()).setCause(e).log("Product import failed");
+            finish(productImport.getId(), ProductImport.Status.FAILED, e.getMessage());
+        } finally {
+            awaitEmbeddings(embeddingPermits, permits);
+        }
+        return toResult(importRepo.findById(productImport.getId()).orElseThrow(), skipped, reported);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}", file, e);
+        }
+    }
+
+    public Optional<ProductImportResult> getImport(String importId) {
+        return importRepo.findById(importId).map(productImport -> toResult(productImport, 0, List.of()));
+    }
+
+    private ProductImport start(String importId, String source) {
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            ProductImport productImport = importId == null ? null : importRepo.findById(importId).orElse(null);
+            if (productImport == null) {
+                productImport = ProductImport.builder()
+                        .id(importId != null ? importId : UUID.randomUUID().toString())
+                        .source(source)
+                        .startedAt(now)
+                        .build();
+            } else if (productImport.getStatus() == ProductImport.Status.COMPLETED) {
+                return productImport;
+            }
+            productImport.setStatus(ProductImport.Status.RUNNING);
+            productImport.setUpdatedAt(now);
+            productImport.setLastError(null);
+            return importRepo.save(productImport);
+        });
+    }
+
+    private void finish(String importId, ProductImport.Status status, String error) {
+        transactionTemplate.executeWithoutResult(tx -> importRepo.findById(importId).ifPresent(productImport -> {
+            productImport.setStatus(status);
+            productImport.setUpdatedAt(Instant.now());
+            productImport.setLastError(error == null || error.length() <= 1000 ? error : error.substring(0, 1000));
+            importRepo.save(productImport);
+        }));
+    }
+
+    // Products, their outbox rows and the checkpoint commit together, so a batch is either fully
+    // imported or will be read again on resume
+    private void commitBatch(String importId, long lastRow, List<Product> products, List<ProductImportError> errors,
+                             Semaphore embeddingPermits) {
+        stageMetrics.record("import.batch.insert", () -> transactionTemplate.executeWithoutResult(status -> {
+            if (!products.isEmpty()) {
+                insertProducts(products);
+                List<Integer> ids = products.stream().map(Product::getId).toList();
+                vectorSyncService.enqueueProductBatch(ids);
+                // new rows, so nothing is cached yet; this adds them to every node's catalog snapshot
+                productCache.evictAfterCommit(ids);
+                // with in-memory inventory, orders for the new products are taken once this commits
+                inventoryReservations.ifAvailable(inventory -> inventory.refreshAfterCommit(ids));
+            }
+            jdbcTemplate.update(ADVANCE_CHECKPOINT, lastRow, products.size(), errors.size(),
+                    Timestamp.from(Instant.now()), importId);
+        }));
+        meterRegistry.counter("product.import.rows", "result", "imported").increment(products.size());
+        meterRegistry.counter("product.import.rows", "result", "failed").increment(errors.size());
+
+        if (!products.isEmpty()) {
+            embeddingPermits.acquireUninterruptibly();
+            workerPools.importEmbedding().execute(() -> {
+                try {
+                    embed(products);
+                } finally {
+                    embeddingPermits.release();
+                }
+            });
+        }
+    }
+
+    private void insertProducts(List<Product> products) {
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_PRODUCT, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Product product = products.get(i);
+                        ps.setString(1, product.getName());
+                        ps.setString(2, product.getDescription());
+                        ps.setString(3, product.getBrand());
+                        ps.setBigDecimal(4, product.getPrice());
+                        ps.setString(5, product.getCategory());
+                        if (product.getReleaseDate() != null) {
+                            ps.setTimestamp(6, (Timestamp) product.getReleaseDate());
+                        } else {
+                            ps.setNull(6, Types.TIMESTAMP);
+                        }
+                        ps.setBoolean(7, product.isProductAvailable());
+                        ps.setInt(8, product.getStockQuantity());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return products.size();
+                    }
+                }, keys);
+        List<Map<String, Object>> generated = keys.getKeyList();
+        for (int i = 0; i < products.size(); i++) {
+            products.get(i).setId(((Number) generated.get(i).get("id")).intValue());
+        }
+    }
+
+    // Warms the embedding cache; a failure here only means the outbox worker embeds them itself
+    private void embed(List<Product> products) {
+        List<String> texts = products.stream()
+                .map(documentFactory::productDocument)
+                .map(Document::getText)
+                .toList();
+        try {
+            for (int from = 0; from < texts.size(); from += embeddingBatchSize) {
+                List<String> batch = texts.subList(from, Math.min(texts.size(), from + embeddingBatchSize));
+                stageMetrics.record("import.embedding", () -> embeddingModel.embed(batch));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Embedding {} imported products failed; the vector sync will retry them", products.size(), e);
+        }
+    }
+
+    // The pool is shared, so the run waits until all of its permits are back rather than for the pool
+    private static void awaitEmbeddings(Semaphore embeddingPermits, int permits) {
+        try {
+            if (!embeddingPermits.tryAcquire(permits, 30, TimeUnit.MINUTES)) {
+                log.warn("Gave up waiting for import embeddings");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(List<ProductImportError> errors, List<ProductImportError> reported) {
+        for (ProductImportError error : errors) {
+            if (reported.size() >= maxReportedErrors) {
+                return;
+            }
+            reported.add(error);
+        }
+    }
+
+    private static ProductImportResult toResult(ProductImport productImport, long skipped, List<ProductImportError> errors) {
+        return new ProductImportResult(productImport.getId(), productImport.getStatus().name(),
+                productImport.getRowsCommitted(), productImport.getRowsImported(), productImport.getRowsFailed(),
+                skipped, productImport.getLastError(), errors);
+    }
+
+    // Field names are matched ignoring case and punctuation, so release_date and releaseDate both work
+    static Product toProduct(Map<String, String> fields) {
+        Product product = new Product();
+        product.setName(text(fields, "name", true));
+        product.setDescription(text(fields, "description", false));
+        product.setBrand(text(fields, "brand", false));
+        product.setCategory(text(fields, "category", false));
+
+        String price = value(fields, "price");
+        if (price != null) {
+            try {
+                product.setPrice(new BigDecimal(price));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("price is not a number: " + price);
+            }
+            if (product.getPrice().signum() < 0) {
+                throw new IllegalArgumentException("price must not be negative");
+            }
+        }
+
+        String releaseDate = value(fields, "releasedate");
+        if (releaseDate != null) {
+            try {
+                product.setReleaseDate(Timestamp.valueOf(LocalDate.parse(releaseDate).atStartOfDay()));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("releaseDate is not an ISO date (yyyy-MM-dd): " + releaseDate);
+            }
+        }
+
+        String stock = value(fields, "stockquantity");
+        if (stock != null) {
+            try {
+                product.setStockQuantity(Integer.parseInt(stock));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("stockQuantity is not a whole number: " + stock);
+            }
+            if (product.getStockQuantity() < 0) {
+                throw new IllegalArgumentException("stockQuantity must not be negative");
+            }
+        }
+
+        String available = value(fields, "productavailable");
+        if (available == null) {
+            product.setProductAvailable(true);
+        } else if (available.equalsIgnoreCase("true") || available.equals("1") || available.equalsIgnoreCase("yes")) {
+            product.setProductAvailable(true);
+        } else if (available.equalsIgnoreCase("false") || available.equals("0") || available.equalsIgnoreCase("no")) {
+            product.setProductAvailable(false);
+        } else {
+            throw new IllegalArgumentException("productAvailable is not a boolean: " + available);
+        }
+        return product;
+    }
+
+    private static String text(Map<String, String> fields, String name, boolean required) {
+        String value = value(fields, name);
+        if (value == null && required) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        if (value != null && value.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException(name + " is longer than " + MAX_TEXT_LENGTH + " characters");
+        }
+        return value;
+    }
+
+    private static String value(Map<String, String> fields, String name) {
+        String value = fields.get(name);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static String fieldKey(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
+    }
+
+    private static RowSource csvRows(InputStream in) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024));
+        List<String> header = reader.next();
+        if (header == null) {
+            return () -> null;
+        }
+        List<String> keys = header.stream().map(ProductImportService::fieldKey).toList();
+        return new RowSource() {
+            private long number;
+
+            @Override
+            public Row next() throws IOException {
+                List<String> values = reader.next();
+                if (values == null) {
+                    return null;
+                }
+                number++;
+                if (values.size() != keys.size()) {
+                    return new Row(number, Map.of(),
+                            "expected " + keys.size() + " fields but found " + values.size());
+                }
+                Map<String, String> fields = new HashMap<>();
+                for (int i = 0; i < keys.size(); i++) {
+                    fields.put(keys.get(i), values.get(i));
+                }
+                return new Row(number, fields, null);
+            }
+        };
+    }
+
+    private RowSource jsonRows(InputStream in) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        JsonToken first = parser.nextToken();
+        // a top-level array is read element by element; otherwise the input is a sequence of objects
+        boolean array = first == JsonToken.START_ARRAY;
+        return new RowSource() {
+            private long number;
+            // outside an array the parser already stands on the first object
+            private boolean onFirst = !array && first != null;
+
+            @Override
+            public Row next() throws IOException {
+                JsonToken token = onFirst ? parser.currentToken() : parser.nextToken();
+                onFirst = false;
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                JsonNode node = parser.readValueAsTree();
+                number++;
+                if (node == null || !node.isObject()) {
+                    return new Row(number, Map.of(), "expected a JSON object");
+                }
+                Map<String, String> fields = new HashMap<>();
+                for (Map.Entry<String, JsonNode> field : node.properties()) {
+                    fields.put(fieldKey(field.getKey()), field.getValue().isNull() ? null : field.getValue().asText());
+                }
+                return new Row(number, fields, null);
+            }
+        };
+    }
+}
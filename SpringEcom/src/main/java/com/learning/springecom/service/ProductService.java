@@ -1,23 +1,40 @@
 package com.learning.springecom.service;
 
 import com.learning.springecom.model.Product;
+import com.learning.springecom.model.VectorSyncEvent.Operation;
+import com.learning.springecom.model.dto.CatalogVersion;
+import com.learning.springecom.model.dto.ProductPage;
+import com.learning.springecom.model.dto.ProductSummary;
+import com.learning.springecom.model.dto.ProductVersion;
 import com.learning.springecom.repo.ProductRepo;
+import com.learning.springecom.service.ProductCursor.ProductSort;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
 
+@Slf4j
 @Service
 public class ProductService {
 
+    // part of the description cache key; bump it when the description prompt changes
+    static final String DESCRIPTION_PROMPT_VERSION = "v1";
+
     @Autowired
     private ProductRepo productRepo;
 
@@ -28,87 +45,202 @@ public class ProductService {
     private AiImageGenService aiImageGenService;
 
     @Autowired
-    private VectorStore vectorStore;
+    private VectorSyncService vectorSyncService;
+
+    @Autowired
+    private ObjectProvider<InventoryReservationService> inventoryReservations;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private DescriptionCache descriptionCache;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private Bulkhead descriptionBulkhead;
+
+    @Autowired
+    private ProductCache productCache;
 
     public List<Product> getAllProducts() {
         return productRepo.findAll();
 
     }
 
+    /**
+     * Returns one page of the catalog as lightweight summaries, ordered by the given sort key
+     * and id. Products without a value for the sort key are left out of price/releaseDate pages.
+     */
+    public ProductPage getProductPage(String sort, String cursor, int size) {
+        ProductSort productSort = ProductSort.from(sort);
+        ProductCursor after = cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor, productSort);
+        // Fetch one extra row to know whether there is a next page
+        Limit limit = Limit.of(size + 1);
+
+        List<ProductSummary> rows = switch (productSort) {
+            case ID -> productRepo.findSummariesAfterId(after == null ? 0 : after.id(), limit);
+            case PRICE -> after == null
+                    ? productRepo.findSummariesByPrice(limit)
+                    : productRepo.findSummariesAfterPrice(after.price(), after.id(), limit);
+            case RELEASE_DATE -> after == null
+                    ? productRepo.findSummariesByReleaseDate(limit)
+                    : productRepo.findSummariesAfterReleaseDate(after.releaseDate(), after.id(), limit);
+        };
+
+        if (rows.size() <= size) {
+            return new ProductPage(rows, null);
+        }
+        List<ProductSummary> items = rows.subList(0, size);
+        ProductSummary last = items.get(size - 1);
+        String sortValue = switch (productSort) {
+            case ID -> String.valueOf(last.id());
+            case PRICE -> last.price().toPlainString();
+            case RELEASE_DATE -> String.valueOf(last.releaseDate().getTime());
+        };
+        return new ProductPage(List.copyOf(items), new ProductCursor(productSort, sortValue, last.id()).encode());
+    }
+
     public Product getProductById(int id) {
-        return productRepo.findById(id).orElse(new Product(-1));
+        return productCache.get(id, productRepo::findById).orElse(new Product(-1));
+
+    }
+
+    /**
+     * Like {@link #getProductById(int)}, but a cached row older than {@code minVersion} (an
+     * eviction from another node still on its way) is reloaded from the database.
+     */
+    public Product getProductById(int id, long minVersion) {
+        Product product = getProductById(id);
+        if (product.getId() > 0 && product.getVersion() < minVersion) {
+            productCache.evict(List.of(id));
+            product = getProductById(id);
+        }
+        return product;
+    }
+
+    public CatalogVersion getCatalogVersion() {
+        return productRepo.findCatalogVersion();
+    }
 
+    public Optional<ProductVersion> getProductVersion(int id) {
+        return productRepo.findVersionById(id);
     }
 
     @Transactional
     public Product addOrUpdateProduct(Product product, MultipartFile image) throws IOException {
-        // Your existing image handling code...
+        return addOrUpdateProduct(product, image, null);
+    }
+
+    /**
+     * With {@code expectedVersion}, the update only goes ahead if the product is still at that
+     * version, and fails with {@link OptimisticLockingFailureException} otherwise. Without it,
+     * the last write wins and the client's version field is ignored.
+     */
+    @Transactional
+    public Product addOrUpdateProduct(Product product, MultipartFile image, Long expectedVersion) throws IOException {
+        Product existingProduct = product.getId() > 0 ? productRepo.findById(product.getId()).orElse(null) : null;
+        if (existingProduct != null) {
+            if (expectedVersion != null && expectedVersion != existingProduct.getVersion()) {
+                throw new OptimisticLockingFailureException("Product " + product.getId() + " is at version "
+                        + existingProduct.getVersion() + ", not " + expectedVersion);
+            }
+            product.setVersion(existingProduct.getVersion());
+        }
+
         if (image != null && !image.isEmpty()) {
             product.setImageName(image.getOriginalFilename());
             product.setImageType(image.getContentType());
-            product.setImageData(image.getBytes());
-        } else if (product.getId() > 0) {
-            Product existingProduct = productRepo.findById(product.getId()).orElse(null);
-            if (existingProduct != null) {
-                product.setImageName(existingProduct.getImageName());
-                product.setImageType(existingProduct.getImageType());
-                product.setImageData(existingProduct.getImageData());
+            try (InputStream in = image.getInputStream()) {
+                product.setImageHash(imageStorageService.store(in));
             }
+            product.setImageSize(image.getSize());
+            // thumbnails depend only on the stored bytes, so they need not wait for the commit
+            imageVariantService.generateAsync(product.getImageHash());
+        } else if (existingProduct != null) {
+            product.setImageName(existingProduct.getImageName());
+            product.setImageType(existingProduct.getImageType());
+            product.setImageHash(existingProduct.getImageHash());
+            product.setImageSize(existingProduct.getImageSize());
         }
 
-        Product savedProduct = productRepo.save(product);
-        System.out.println("Product saved with ID: " + savedProduct.getId());
-
-        // Create embedding with detailed logging
-        try {
-            String content = String.format(
-                    """
-                    Product Name: %s
-                    Description: %s
-                    Brand: %s
-                    Price: %s
-                    Category: %s
-                    ReleaseDate: %s
-                    Available: %s
-                    Stock: %s
-                    """,
-                    savedProduct.getName(),
-                    savedProduct.getDescription(),
-                    savedProduct.getBrand(),
-                    savedProduct.getPrice(),
-                    savedProduct.getCategory(),
-                    savedProduct.getReleaseDate(),
-                    savedProduct.isProductAvailable(),
-                    savedProduct.getStockQuantity()
-            );
-
-            System.out.println("[PRODUCT SERVICE] Creating document with content: " + content);
-
-            Document document = new Document(
-                    UUID.randomUUID().toString(),
-                    content,
-                    Map.of("productId", String.valueOf(savedProduct.getId()))
-            );
-
-            System.out.println("[PRODUCT SERVICE] Adding document to vector store: " + document.getId());
-            vectorStore.add(List.of(document));
-            System.out.println("[PRODUCT SERVICE] Successfully added document to vector store");
-
-        } catch (Exception e) {
-            System.err.println("[PRODUCT SERVICE] Failed to add document to vector store: " + e.getMessage());
-            e.printStackTrace();
-            // Don't fail the entire operation for vector store issues
-        }
+        Product savedProduct = stageMetrics.record("product.db.save", () -> productRepo.save(product));
+        log.atInfo().addKeyValue("productId", savedProduct.getId()).log("Product saved");
+
+        // The embedding is written by VectorSyncService after this transaction commits
+        vectorSyncService.enqueueProduct(savedProduct.getId(), Operation.UPSERT);
+        productCache.evictAndNotify(List.of(savedProduct.getId()));
+        inventoryReservations.ifAvailable(inventory -> inventory.refreshAfterCommit(savedProduct.getId()));
 
         return savedProduct;
     }
 
+    @Transactional
     public void deleteProduct(int id) {
         productRepo.deleteById(id);
+        vectorSyncService.enqueueProduct(id, Operation.DELETE);
+        productCache.evictAndNotify(List.of(id));
+        inventoryReservations.ifAvailable(inventory -> inventory.refreshAfterCommit(id));
     }
 
-    public List<Product> searchProducts(String keyword) {
-        return productRepo.searchProducts(keyword);
+    /**
+     * Ranked, paginated product search. Every word of the keyword must match (by prefix, so
+     * results show up while the user is still typing), or the name must be close to it.
+     */
+    public List<ProductSummary> searchProducts(String keyword, int page, int size) {
+        String tsQuery = toPrefixTsQuery(keyword);
+        if (tsQuery.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> ids = stageMetrics.record("product.search",
+                () -> productRepo.searchProductIds(tsQuery, keyword.trim().toLowerCase(), size, page * size));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Integer, ProductSummary> byId = new HashMap<>();
+        for (ProductSummary summary : productRepo.findSummariesByIdIn(ids)) {
+            byId.put(summary.id(), summary);
+        }
+        List<ProductSummary> ranked = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            ProductSummary summary = byId.get(id);
+            if (summary != null) {
+                ranked.add(summary);
+            }
+        }
+        return ranked;
+    }
+
+    // "Apple ipho" -> "apple:* & ipho:*"; anything but letters and digits is dropped so user
+    // input can never inject tsquery operators
+    static String toPrefixTsQuery(String keyword) {
+        StringJoiner query = new StringJoiner(" & ");
+        for (String token : keyword.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                query.add(token + ":*");
+            }
+        }
+        return query.toString();
+    }
+
+    /**
+     * Generates a description on the description bulkhead, served from {@link DescriptionCache}
+     * unless {@code refresh} is set. The cache key includes {@link #DESCRIPTION_PROMPT_VERSION},
+     * so changing the prompt below must bump it.
+     */
+    public CompletableFuture<String> generateDescriptionAsync(String name, String category, boolean refresh) {
+        String key = DESCRIPTION_PROMPT_VERSION + '|' + normalize(name) + '|' + normalize(category);
+        return descriptionCache.get(key, refresh,
+                () -> descriptionBulkhead.submit(() -> generateDescription(name, category)));
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase().replaceAll("\\s+", " ");
     }
 
     public String generateDescription(String name, String category) {
@@ -135,7 +267,12 @@ public class ProductService {
 
 
     public byte[] generateImage(String name, String category, String description) {
-        String imagePrompt = String.format("""
+        byte[] aiImage = aiImageGenService.generateImage(imagePrompt(name, category, description));
+        return aiImage;
+    }
+
+    public String imagePrompt(String name, String category, String description) {
+        return String.format("""
                 Generate a highly realistic, professional grade, e-commerce product image.
                 
                 Product Details:
@@ -155,8 +292,5 @@ public class ProductService {
                      - Make the product appear life-like and professionally photographed in a studio setup.
                      - The final image should look immediately ready for use on an e-commerce website without further editing.
                 """, category, name, description);
-
-        byte[] aiImage = aiImageGenService.generateImage(imagePrompt);
-        return aiImage;
     }
 }
@@ -0,0 +1,61 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Times the stages of a request ({@code order.db.load}, {@code vector.add}, {@code chat.llm}, ...)
+ * in one timer, {@code ecom.stage.latency}, tagged by stage and outcome. Percentile histograms are
+ * published, so Prometheus can aggregate latency quantiles across instances.
+ */
+@Component
+public class StageMetrics {
+
+    public static final String METRIC = "ecom.stage.latency";
+
+    private final MeterRegistry meterRegistry;
+
+    public StageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T record(String stage, Supplier<T> work) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = work.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(timer(stage, outcome));
+        }
+    }
+
+    public void record(String stage, Runnable work) {
+        record(stage, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** For stages that end asynchronously, such as a streamed completion. */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stop(Timer.Sample sample, String stage, boolean success) {
+        sample.stop(timer(stage, success ? "success" : "error"));
+    }
+
+    private Timer timer(String stage, String outcome) {
+        return Timer.builder(METRIC)
+                .description("Latency of one stage of a request or background job")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,91 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.OrderItem;
+import com.learning.springecom.model.Product;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Renders products and orders into the documents kept in the vector store. Document ids are
+ * the product id and the order number, so re-adding a document replaces the previous version.
+ */
+@Component
+public class VectorDocumentFactory {
+
+    /**
+     * Only the descriptive fields go into the embedded text. Price, stock and availability
+     * change all the time, so they are kept in metadata: updating them replaces the stored
+     * metadata and keeps the vector of the unchanged text. Chat context still sees them, because formatted
+     * document content includes metadata.
+     */
+    public Document productDocument(Product product) {
+        String productContent = String.format("""
+                Product Information:
+                Product ID: %d
+                Name: %s
+                Description: %s
+                Brand: %s
+                Category: %s
+                """,
+                product.getId(),
+                product.getName(),
+                product.getDescription(),
+                product.getBrand(),
+                product.getCategory()
+        );
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("type", "product");
+        metadata.put("productId", String.valueOf(product.getId()));
+        putIfPresent(metadata, "productName", product.getName());
+        putIfPresent(metadata, "category", product.getCategory());
+        putIfPresent(metadata, "price", product.getPrice());
+        putIfPresent(metadata, "releaseDate", product.getReleaseDate() == null ? null : product.getReleaseDate().toString());
+        metadata.put("available", product.isProductAvailable() ? "Yes" : "No");
+        metadata.put("stockQuantity", product.getStockQuantity());
+        metadata.put("stockStatus", product.getStockQuantity() > 10 ? "In Stock" :
+                (product.getStockQuantity() > 0 ? "Low Stock" : "Out of Stock"));
+
+        return new Document(String.valueOf(product.getId()), productContent, metadata);
+    }
+
+    public Document orderDocument(Order order) {
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        for (OrderItem item : order.getOrderItems()) {
+            totalAmount = totalAmount.add(item.getTotalPrice());
+        }
+
+        StringBuilder content = new StringBuilder();
+        content.append("Order ID: ").append(order.getOrderId()).append("\n")
+                .append("Customer: ").append(order.getCustomerName()).append("\n")
+                .append("Email: ").append(order.getEmail()).append("\n")
+                .append("Date: ").append(order.getOrderDate()).append("\n")
+                .append("Status: ").append(order.getStatus()).append("\n")
+                .append("Total: $").append(totalAmount).append("\n");
+
+        for (OrderItem item : order.getOrderItems()) {
+            content.append("Product: ").append(item.getProduct().getName())
+                    .append(", Qty: ").append(item.getQuantity())
+                    .append(", Total: $").append(item.getTotalPrice()).append("\n");
+        }
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("type", "order");
+        metadata.put("orderId", order.getOrderId());
+        putIfPresent(metadata, "customerName", order.getCustomerName());
+        putIfPresent(metadata, "status", order.getStatus());
+
+        return new Document(order.getOrderId(), content.toString(), metadata);
+    }
+
+    private static void putIfPresent(Map<String, Object> metadata, String key, Object value) {
+        if (value != null) {
+            metadata.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.repo.OrderRepo;
+import com.learning.springecom.repo.ProductRepo;
+import com.learning.springecom.vectorstore.HnswVectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Compares recall and query latency of the in-process HNSW store and pgvector on the current
+ * catalogue and order history ({@code app.vector-store.compare=true}). Both are measured against
+ * an exact brute-force ranking over the same embeddings. The HNSW store is built fresh in memory;
+ * pgvector is queried as it is, so its recall also shows how far the sync is behind.
+ * <p>
+ * Latencies include embedding the query, which is the same call for both stores.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.vector-store.compare", havingValue = "true")
+public class VectorStoreComparison implements ApplicationRunner {
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private OrderRepo orderRepo;
+
+    @Autowired
+    private VectorDocumentFactory documentFactory;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectProvider<PgVectorStore> pgVectorStore;
+
+    @Value("${app.vector-store.compare.queries:100}")
+    private int queryCount;
+
+    @Value("${app.vector-store.compare.top-k:10}")
+    private int topK;
+
+    @Value("${app.vector-store.hnsw.m:16}")
+    private int m;
+
+    @Value("${app.vector-store.hnsw.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${app.vector-store.hnsw.ef-search:100}")
+    private int efSearch;
+
+    private record Result(double recall, double p50, double p95, double p99) {
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<Document> documents = transactionTemplate.execute(status -> loadDocuments());
+        if (documents == null || documents.isEmpty()) {
+            log.info("No products or orders to compare the vector stores on");
+            return;
+        }
+        List<String> queries = sampleQueries(documents);
+
+        List<float[]> documentVectors = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        List<Set<String>> expected = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            // one at a time, as the stores embed queries, so they stay out of the embedding cache
+            expected.add(exactTopK(embeddingModel.embed(query), documents, documentVectors));
+        }
+
+        // in memory only, so the comparison never touches a configured snapshot
+        HnswVectorStore hnsw = new HnswVectorStore(embeddingModel, objectMapper, null, m, efConstruction, efSearch, 0);
+        long buildStart = System.nanoTime();
+        hnsw.add(documents);
+        double buildMillis = (System.nanoTime() - buildStart) / 1e6;
+
+        log.info("Comparing vector stores on {} documents, {} queries, top {}", documents.size(), queries.size(), topK);
+        log.info("hnsw build: {} ms", String.format("%.1f", buildMillis));
+        report("hnsw", measure(hnsw, queries, expected));
+        PgVectorStore pgvector = pgVectorStore.getIfAvailable();
+        if (pgvector != null) {
+            report("pgvector", measure(pgvector, queries, expected));
+        }
+    }
+
+    private List<Document> loadDocuments() {
+        List<Document> documents = new ArrayList<>();
+        for (Product product : productRepo.findAll()) {
+            documents.add(documentFactory.productDocument(product));
+        }
+        List<String> orderIds = orderRepo.findAll().stream().map(Order::getOrderId).toList();
+        if (!orderIds.isEmpty()) {
+            for (Order order : orderRepo.findByOrderIdIn(orderIds)) {
+                documents.add(documentFactory.orderDocument(order));
+            }
+        }
+        return documents;
+    }
+
+    // Questions shaped like chatbot traffic, built from random documents
+    private List<String> sampleQueries(List<Document> documents) {
+        Random random = new Random(7);
+        List<String> queries = new ArrayList<>(queryCount);
+        for (int i = 0; i < queryCount; i++) {
+            Map<String, Object> metadata = documents.get(random.nextInt(documents.size())).getMetadata();
+            if (metadata.containsKey("orderId")) {
+                queries.add("What is the status of order " + metadata.get("orderId") + "?");
+            } else {
+                queries.add("Do you have " + metadata.get("productName") + " in " + metadata.get("category") + "?");
+            }
+        }
+        return queries;
+    }
+
+    private Set<String> exactTopK(float[] query, List<Document> documents, List<float[]> vectors) {
+        Integer[] order = new Integer[documents.size()];
+        double[] similarity = new double[documents.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            similarity[i] = cosine(query, vectors.get(i));
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(similarity[b], similarity[a]));
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < Math.min(topK, order.length); i++) {
+            ids.add(documents.get(order[i]).getId());
+        }
+        return ids;
+    }
+
+    private Result measure(VectorStore store, List<String> queries, List<Set<String>> expected) {
+        store.similaritySearch(SearchRequest.builder().query(queries.get(0)).topK(topK).build());
+        double[] millis = new double[queries.size()];
+        double recall = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            List<Document> found = store.similaritySearch(SearchRequest.builder()
+                    .query(queries.get(i))
+                    .topK(topK)
+                    .similarityThreshold(SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL)
+                    .build());
+            millis[i] = (System.nanoTime() - start) / 1e6;
+            Set<String> wanted = expected.get(i);
+            long hits = found.stream().filter(document -> wanted.contains(document.getId())).count();
+            recall += (double) hits / wanted.size();
+        }
+        Arrays.sort(millis);
+        return new Result(recall / queries.size(), percentile(millis, 0.50), percentile(millis, 0.95), percentile(millis, 0.99));
+    }
+
+    private static void report(String store, Result result) {
+        log.atInfo()
+                .addKeyValue("store", store)
+                .addKeyValue("recall", result.recall())
+                .addKeyValue("p50Ms", result.p50())
+                .addKeyValue("p95Ms", result.p95())
+                .addKeyValue("p99Ms", result.p99())
+                .log(String.format("%-8s recall@k %.3f  p50 %.2f ms  p95 %.2f ms  p99 %.2f ms",
+                        store, result.recall(), result.p50(), result.p95(), result.p99()));
+    }
+
+    private static double percentile(double[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+}
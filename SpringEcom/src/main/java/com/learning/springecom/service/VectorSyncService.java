@@ -0,0 +1,439 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.Order;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.VectorSyncEvent;
+import com.learning.springecom.model.VectorSyncEvent.DocumentType;
+import com.learning.springecom.model.VectorSyncEvent.Operation;
+import com.learning.springecom.repo.OrderRepo;
+import com.learning.springecom.repo.ProductRepo;
+import com.learning.springecom.repo.VectorSyncEventRepo;
+import com.learning.springecom.vectorstore.HnswVectorStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the vector store in step with products and orders through a transactional outbox.
+ * <p>
+ * Writers call {@link #enqueueProduct}/{@link #enqueueOrder} inside their own transaction, which
+ * only inserts a {@link VectorSyncEvent} row. A scheduled worker claims due events, coalesces
+ * them per document, renders the current state of each document and writes the whole batch to
+ * the vector store, off the request path. Documents whose text is unchanged (a stock or price
+ * change) only get their metadata replaced, without calling the embedding model; the rest are
+ * written with one delete and one add call. Embeddings are computed before the write
+ * transaction opens.
+ * <p>
+ * When a batch fails, its documents are written again one at a time, so one bad document does
+ * not hold back the rest. Documents that still fail are retried with exponential backoff, and
+ * after {@code app.vector-sync.max-attempts} their events are parked ({@code parked_at} set) and
+ * counted in {@code vector.sync.parked}. Clearing {@code parked_at} queues them again.
+ * <p>
+ * A persistent HNSW store only reaches the disk with its next snapshot, so its events are not
+ * deleted once written: they are marked with the store version that contains them and deleted
+ * when a snapshot of that version exists. Events still marked at startup were lost with the
+ * process and are queued again.
+ */
+@Slf4j
+@Service
+public class VectorSyncService {
+
+    @Autowired
+    private VectorSyncEventRepo eventRepo;
+
+    @Autowired
+    private ProductRepo productRepo;
+
+    @Autowired
+    private OrderRepo orderRepo;
+
+    @Autowired
+    private VectorStore vectorStore;
+
+    @Autowired
+    private VectorDocumentFactory documentFactory;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ChatResponseCache chatResponseCache;
+
+    @Autowired
+    private StageMetrics stageMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.vector-sync.batch-size:100}")
+    private int batchSize;
+
+    // how long a claimed batch is hidden from other workers before it is considered abandoned
+    @Value("${app.vector-sync.lease:PT5M}")
+    private Duration lease;
+
+    @Value("${app.vector-sync.initial-backoff:PT2S}")
+    private Duration initialBackoff;
+
+    @Value("${app.vector-sync.max-backoff:PT10M}")
+    private Duration maxBackoff;
+
+    @Value("${app.vector-sync.max-attempts:10}")
+    private int maxAttempts;
+
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final AtomicLong parkedEvents = new AtomicLong();
+    private long purgedVersion;
+    // events left over from before a restart are requeued before any is purged by version
+    private volatile boolean requeued;
+    private Counter syncedDocuments;
+    private Counter failedBatches;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("vector.sync.pending", pendingEvents, AtomicLong::get)
+                .description("Outbox events not yet written to the vector store")
+                .register(meterRegistry);
+        Gauge.builder("vector.sync.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest pending outbox event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("vector.sync.parked", parkedEvents, AtomicLong::get)
+                .description("Outbox events that failed too often and are no longer retried")
+                .register(meterRegistry);
+        syncedDocuments = Counter.builder("vector.sync.documents")
+                .description("Documents written to or removed from the vector store")
+                .register(meterRegistry);
+        failedBatches = Counter.builder("vector.sync.failures")
+                .description("Outbox batches and documents that failed to reach the vector store")
+                .register(meterRegistry);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueProduct(int productId, Operation operation) {
+        enqueue(DocumentType.PRODUCT, String.valueOf(productId), operation);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueProducts(Collection<Integer> productIds) {
+        // one batch for all lines of an order rather than an IDENTITY insert per product
+        enqueueProductBatch(List.copyOf(new LinkedHashSet<>(productIds)));
+    }
+
+    /**
+     * Queues product upserts with one JDBC batch instead of one insert per event, for writers
+     * that create many products in a transaction, such as the bulk import.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueProductBatch(List<Integer> productIds) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate("INSERT INTO vector_sync_event " +
+                        "(document_type, document_id, operation, created_at, next_attempt_at, attempts) " +
+                        "VALUES ('PRODUCT', ?, 'UPSERT', ?, ?, 0)",
+                productIds, productIds.size(), (ps, productId) -> {
+                    ps.setString(1, String.valueOf(productId));
+                    ps.setTimestamp(2, now);
+                    ps.setTimestamp(3, now);
+                });
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueOrder(String orderId) {
+        enqueue(DocumentType.ORDER, orderId, Operation.UPSERT);
+    }
+
+    /**
+     * Queues again the events a persistent HNSW store had applied but not yet snapshotted when
+     * the process stopped; the snapshot it loaded does not contain them.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void requeueUnsnapshotted() {
+        if (!(vectorStore instanceof HnswVectorStore hnsw) || !hnsw.persistent()) {
+            return;
+        }
+        int count = transactionTemplate.execute(status -> jdbcTemplate.update(
+                "UPDATE vector_sync_event SET applied_version = NULL, next_attempt_at = now() " +
+                        "WHERE applied_version IS NOT NULL"));
+        if (count > 0) {
+            log.info("Queued {} vector sync events again that the snapshot did not contain", count);
+        }
+        requeued = true;
+    }
+
+    /**
+     * Fills an HNSW store that started without a snapshot (a new deployment, or one switched from
+     * pgvector) by queueing an upsert for every product and order.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (!(vectorStore instanceof HnswVectorStore hnsw) || !hnsw.startedEmpty()) {
+            return;
+        }
+        int queued = transactionTemplate.execute(status ->
+                jdbcTemplate.update("INSERT INTO vector_sync_event " +
+                        "(document_type, document_id, operation, created_at, next_attempt_at, attempts) " +
+                        "SELECT 'PRODUCT', CAST(id AS TEXT), 'UPSERT', now(), now(), 0 FROM product")
+                        + jdbcTemplate.update("INSERT INTO vector_sync_event " +
+                        "(document_type, document_id, operation, created_at, next_attempt_at, attempts) " +
+                        "SELECT 'ORDER', order_id, 'UPSERT', now(), now(), 0 FROM orders"));
+        log.info("Vector store has no snapshot, queued {} products and orders for indexing", queued);
+    }
+
+    private void enqueue(DocumentType type, String documentId, Operation operation) {
+        Instant now = Instant.now();
+        eventRepo.save(VectorSyncEvent.builder()
+                .documentType(type)
+                .documentId(documentId)
+                .operation(operation)
+                .createdAt(now)
+                .nextAttemptAt(now)
+                .build());
+    }
+
+    @Scheduled(fixedDelayString = "${app.vector-sync.poll-interval-ms:2000}")
+    public void flush() {
+        int claimed;
+        do {
+            claimed = flushBatch();
+        } while (claimed == batchSize);
+        purgeSnapshotted();
+        refreshLag();
+    }
+
+    private int flushBatch() {
+        List<VectorSyncEvent> events = transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<VectorSyncEvent> due = eventRepo.claimDue(now, batchSize);
+            due.forEach(event -> event.setNextAttemptAt(now.plus(lease)));
+            return due;
+        });
+        if (events == null || events.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            sync(events);
+        } catch (Exception e) {
+            failedBatches.increment();
+            Map<String, List<VectorSyncEvent>> byDocument = events.stream().collect(Collectors.groupingBy(
+                    event -> event.getDocumentType() + ":" + event.getDocumentId(), LinkedHashMap::new, Collectors.toList()));
+            if (byDocument.size() == 1) {
+                log.atWarn().addKeyValue("events", events.size()).setCause(e)
+                        .log("Vector store sync failed, will retry");
+                scheduleRetry(events, e);
+            } else {
+                log.atWarn().addKeyValue("events", events.size()).addKeyValue("documents", byDocument.size()).setCause(e)
+                        .log("Vector store sync failed, writing the documents one at a time");
+                byDocument.forEach(this::syncDocument);
+            }
+        }
+        return events.size();
+    }
+
+    private void syncDocument(String document, List<VectorSyncEvent> events) {
+        try {
+            sync(events);
+        } catch (Exception e) {
+            failedBatches.increment();
+            log.atWarn().addKeyValue("document", document).setCause(e)
+                    .log("Vector store sync failed for a document, will retry");
+            scheduleRetry(events, e);
+        }
+    }
+
+    private void sync(List<VectorSyncEvent> events) {
+        writeToVectorStore(coalesce(events));
+        complete(events.stream().map(VectorSyncEvent::getId).toList());
+        syncedDocuments.increment(events.size());
+    }
+
+    private void complete(List<Long> eventIds) {
+        if (!(vectorStore instanceof HnswVectorStore hnsw) || !hnsw.persistent()) {
+            eventRepo.deleteAllByIdInBatch(eventIds);
+            return;
+        }
+        // read after the write returned, so the version covers it
+        long version = hnsw.version();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                "UPDATE vector_sync_event SET applied_version = ? WHERE id = ANY(?)",
+                ps -> {
+                    ps.setLong(1, version);
+                    ps.setArray(2, ps.getConnection().createArrayOf("bigint", eventIds.toArray()));
+                }));
+    }
+
+    private void purgeSnapshotted() {
+        if (!(vectorStore instanceof HnswVectorStore hnsw) || !requeued || hnsw.persistedVersion() <= purgedVersion) {
+            return;
+        }
+        long persisted = hnsw.persistedVersion();
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(
+                "DELETE FROM vector_sync_event WHERE applied_version <= ?", persisted));
+        purgedVersion = persisted;
+    }
+
+    // Only the latest event per document matters: documents are rendered from current state
+    private static Map<DocumentType, Map<String, Operation>> coalesce(List<VectorSyncEvent> events) {
+        Map<DocumentType, Map<String, Operation>> latest = new EnumMap<>(DocumentType.class);
+        events.stream()
+                .sorted(Comparator.comparing(VectorSyncEvent::getId))
+                .forEach(event -> latest
+                        .computeIfAbsent(event.getDocumentType(), type -> new LinkedHashMap<>())
+                        .put(event.getDocumentId(), event.getOperation()));
+        return latest;
+    }
+
+    private void writeToVectorStore(Map<DocumentType, Map<String, Operation>> changes) {
+        Map<String, Operation> productChanges = changes.getOrDefault(DocumentType.PRODUCT, Map.of());
+        Map<String, Operation> orderChanges = changes.getOrDefault(DocumentType.ORDER, Map.of());
+
+        List<Document> documents = stageMetrics.record("vector.render", () -> transactionTemplate.execute(status -> {
+            List<Document> rendered = new ArrayList<>();
+            List<Integer> productIds = productChanges.entrySet().stream()
+                    .filter(change -> change.getValue() == Operation.UPSERT)
+                    .map(change -> Integer.valueOf(change.getKey()))
+                    .toList();
+            for (Product product : productRepo.findAllById(productIds)) {
+                rendered.add(documentFactory.productDocument(product));
+            }
+            List<String> orderIds = orderChanges.entrySet().stream()
+                    .filter(change -> change.getValue() == Operation.UPSERT)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            if (!orderIds.isEmpty()) {
+                for (Order order : orderRepo.findByOrderIdIn(orderIds)) {
+                    rendered.add(documentFactory.orderDocument(order));
+                }
+            }
+            return rendered;
+        }));
+
+        Set<String> refreshed = documents.isEmpty() ? Set.of()
+                : stageMetrics.record("vector.metadata", () -> updateMetadataInPlace(documents));
+        List<Document> changed = documents.stream().filter(document -> !refreshed.contains(document.getId())).toList();
+        Set<String> replacedProducts = new LinkedHashSet<>(productChanges.keySet());
+        replacedProducts.removeAll(refreshed);
+
+        // Embed outside the transaction; the add below then finds every vector in the embedding
+        // cache and the transaction only covers the short JDBC writes.
+        if (!changed.isEmpty()) {
+            stageMetrics.record("vector.embedding", () -> embeddingModel.embed(changed.stream().map(Document::getText).toList()));
+        }
+
+        // Product documents used to be stored under random ids, so clear them by metadata
+        // before writing; this also removes documents of deleted products. The store writes
+        // through JDBC and the pool does not auto-commit, so this needs its own transaction.
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!replacedProducts.isEmpty()) {
+                stageMetrics.record("vector.delete", () -> vectorStore.delete(inFilter("productId", replacedProducts)));
+            }
+            if (!changed.isEmpty()) {
+                stageMetrics.record("vector.add", () -> vectorStore.add(changed));
+            }
+        });
+        chatResponseCache.invalidateProducts(productChanges.keySet());
+        chatResponseCache.invalidateOrders(orderChanges.keySet());
+    }
+
+    /**
+     * Replaces the metadata of stored documents whose text is unchanged and returns their ids.
+     * Their vectors stay valid, so they need neither an embedding nor a delete and add.
+     */
+    private Set<String> updateMetadataInPlace(List<Document> documents) {
+        if (vectorStore instanceof HnswVectorStore hnsw) {
+            return hnsw.updateMetadata(documents);
+        }
+        // pgvector keeps documents in vector_store, with the embedded text in content
+        List<Object[]> rows = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            try {
+                rows.add(new Object[]{objectMapper.writeValueAsString(document.getMetadata()), document.getId(), document.getText()});
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to serialize metadata of document " + document.getId(), e);
+            }
+        }
+        int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(
+                "UPDATE vector_store SET metadata = CAST(? AS jsonb) WHERE id = ? AND content = ?", rows));
+        Set<String> updated = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 1) {
+                updated.add(documents.get(i).getId());
+            }
+        }
+        return updated;
+    }
+
+    private void scheduleRetry(List<VectorSyncEvent> events, Exception error) {
+        String message = String.valueOf(error.getMessage());
+        String lastError = message.length() > 1000 ? message.substring(0, 1000) : message;
+        transactionTemplate.executeWithoutResult(status -> {
+            Instant now = Instant.now();
+            List<VectorSyncEvent> current = eventRepo.findAllById(events.stream().map(VectorSyncEvent::getId).toList());
+            for (VectorSyncEvent event : current) {
+                event.setAttempts(event.getAttempts() + 1);
+                event.setLastError(lastError);
+                if (event.getAttempts() >= maxAttempts) {
+                    event.setParkedAt(now);
+                    log.atError().addKeyValue("eventId", event.getId()).addKeyValue("documentType", event.getDocumentType())
+                            .addKeyValue("documentId", event.getDocumentId()).addKeyValue("attempts", event.getAttempts())
+                            .log("Vector sync event parked after too many failures");
+                } else {
+                    event.setNextAttemptAt(now.plus(backoff(event.getAttempts())));
+                }
+            }
+            eventRepo.saveAll(current);
+        });
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private void refreshLag() {
+        pendingEvents.set(eventRepo.countPending());
+        parkedEvents.set(eventRepo.countParked());
+        Instant oldest = eventRepo.findOldestCreatedAt();
+        lagSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, Instant.now()).getSeconds()));
+    }
+
+    private static String inFilter(String key, Collection<String> values) {
+        return values.stream()
+                .map(value -> "'" + value.replace("'", "") + "'")
+                .collect(Collectors.joining(", ", key + " in [", "]"));
+    }
+}
@@ -0,0 +1,25 @@
+package com.learning.springecom.service;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+
+/**
+ * The application's named worker pools, built by {@link com.learning.springecom.config.WorkerPoolConfig}.
+ *
+ * @param chatRetrieval   runs the keyword side of chat retrieval next to the vector search
+ * @param imageVariants   decodes and resizes uploaded images
+ * @param productImport   runs submitted product imports, one at a time
+ * @param importEmbedding warms the embedding cache for committed import batches
+ */
+public record WorkerPools(ThreadPoolTaskExecutor chatRetrieval,
+                          ThreadPoolTaskExecutor imageVariants,
+                          ThreadPoolTaskExecutor productImport,
+                          ThreadPoolTaskExecutor importEmbedding) {
+
+    public void shutdown() {
+        for (ThreadPoolTaskExecutor pool : List.of(chatRetrieval, imageVariants, productImport, importEmbedding)) {
+            pool.shutdown();
+        }
+    }
+}
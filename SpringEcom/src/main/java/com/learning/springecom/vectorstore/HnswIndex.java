@@ -0,0 +1,387 @@
+package com.learning.springecom.vectorstore;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical navigable small world graph over unit-length float vectors, scored by cosine
+ * similarity (a dot product once normalised).
+ * <p>
+ * All vectors live in one flat {@code float[]} ({@code dimensions} floats per node) and each
+ * node's links in {@code int[]} arrays whose first slot is the link count, so the index holds no
+ * per-vector objects. Removed nodes are tombstoned: they are still walked through, so the graph
+ * stays connected, but never returned. Not thread-safe; {@link HnswVectorStore} guards it.
+ */
+final class HnswIndex {
+
+    record Hit(int node, float similarity) {
+    }
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    // seeded, so the same inserts always build the same graph
+    private final Random random = new Random(42);
+
+    private float[] vectors;
+    private int[] levels;
+    private int[][][] links;
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(int dimensions, int m, int efConstruction) {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.vectors = new float[dimensions * 16];
+        this.levels = new int[16];
+        this.links = new int[16][][];
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    float[] vector(int node) {
+        return Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+    }
+
+    int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(normalize(vector), 0, vectors, node * dimensions, dimensions);
+        int level = randomLevel();
+        levels[node] = level;
+        links[node] = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            links[node][layer] = new int[maxConnections(layer) + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int nearest = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            nearest = greedyClosest(node, nearest, layer);
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Hit> candidates = searchLayer(vectors, node * dimensions, nearest, efConstruction, layer, null);
+            int[] selected = selectNeighbors(node, candidates, m);
+            for (int neighbor : selected) {
+                append(links[node][layer], neighbor);
+                connect(neighbor, node, layer);
+            }
+            nearest = candidates.get(0).node();
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    void markDeleted(int node) {
+        if (!deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    /**
+     * Approximate top-{@code k} among live nodes accepted by {@code accept} (all when null).
+     * Rejected nodes are still traversed, so a filter narrows the results, not the walk.
+     */
+    List<Hit> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || liveCount() == 0) {
+            return List.of();
+        }
+        float[] normalized = normalize(query);
+        int nearest = entryPoint;
+        for (int layer = maxLevel; layer > 0; layer--) {
+            nearest = greedyClosest(normalized, 0, nearest, layer);
+        }
+        IntPredicate live = node -> !deleted.get(node) && (accept == null || accept.test(node));
+        List<Hit> hits = searchLayer(normalized, 0, nearest, Math.max(ef, k), 0, live);
+        return hits.size() > k ? hits.subList(0, k) : hits;
+    }
+
+    /** Exact top-{@code k} by scanning every accepted live node. */
+    List<Hit> exactSearch(float[] query, int k, IntPredicate accept) {
+        float[] normalized = normalize(query);
+        PriorityQueue<Hit> best = new PriorityQueue<>(Comparator.comparingDouble(Hit::similarity));
+        for (int node = 0; node < size; node++) {
+            if (deleted.get(node) || (accept != null && !accept.test(node))) {
+                continue;
+            }
+            float similarity = dot(normalized, 0, node * dimensions);
+            if (best.size() < k) {
+                best.add(new Hit(node, similarity));
+            } else if (similarity > best.peek().similarity()) {
+                best.poll();
+                best.add(new Hit(node, similarity));
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(Comparator.comparingDouble(Hit::similarity).reversed());
+        return hits;
+    }
+
+    private int greedyClosest(int node, int start, int layer) {
+        return greedyClosest(vectors, node * dimensions, start, layer);
+    }
+
+    private int greedyClosest(float[] query, int offset, int start, int layer) {
+        int current = start;
+        float currentSimilarity = dot(query, offset, current * dimensions);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = links[current][layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float similarity = dot(query, offset, neighbors[i] * dimensions);
+                if (similarity > currentSimilarity) {
+                    current = neighbors[i];
+                    currentSimilarity = similarity;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer. Returns up to {@code ef} hits, most similar first; when
+     * {@code accept} is set only accepted nodes are collected.
+     */
+    private List<Hit> searchLayer(float[] query, int offset, int start, int ef, int layer, IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Hit> candidates = new PriorityQueue<>(Comparator.comparingDouble(Hit::similarity).reversed());
+        PriorityQueue<Hit> results = new PriorityQueue<>(Comparator.comparingDouble(Hit::similarity));
+
+        Hit first = new Hit(start, dot(query, offset, start * dimensions));
+        visited.set(start);
+        candidates.add(first);
+        if (accept == null || accept.test(start)) {
+            results.add(first);
+        }
+        while (!candidates.isEmpty()) {
+            Hit current = candidates.poll();
+            if (results.size() >= ef && current.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int[] neighbors = links[current.node()][layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = dot(query, offset, neighbor * dimensions);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Hit hit = new Hit(neighbor, similarity);
+                    candidates.add(hit);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.add(hit);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        List<Hit> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Hit::similarity).reversed());
+        return sorted;
+    }
+
+    /**
+     * Neighbour selection heuristic from the HNSW paper: a candidate is kept only if it is closer
+     * to the base node than to every neighbour already kept, which keeps links spread out. Any
+     * remaining slots are filled with the closest pruned candidates.
+     */
+    private int[] selectNeighbors(int base, List<Hit> candidates, int max) {
+        List<Integer> selected = new ArrayList<>(max);
+        List<Integer> pruned = new ArrayList<>();
+        for (Hit candidate : candidates) {
+            if (candidate.node() == base) {
+                continue;
+            }
+            if (selected.size() >= max) {
+                break;
+            }
+            boolean diverse = true;
+            for (int kept : selected) {
+                if (dot(vectors, candidate.node() * dimensions, kept * dimensions) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate.node());
+            } else {
+                pruned.add(candidate.node());
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void connect(int from, int to, int layer) {
+        int[] neighbors = links[from][layer];
+        int max = maxConnections(layer);
+        if (neighbors[0] < max) {
+            append(neighbors, to);
+            return;
+        }
+        // full: re-select among the current links plus the new one
+        List<Hit> candidates = new ArrayList<>(max + 1);
+        for (int i = 1; i <= neighbors[0]; i++) {
+            candidates.add(new Hit(neighbors[i], dot(vectors, from * dimensions, neighbors[i] * dimensions)));
+        }
+        candidates.add(new Hit(to, dot(vectors, from * dimensions, to * dimensions)));
+        candidates.sort(Comparator.comparingDouble(Hit::similarity).reversed());
+        int[] selected = selectNeighbors(from, candidates, max);
+        neighbors[0] = selected.length;
+        System.arraycopy(selected, 0, neighbors, 1, selected.length);
+    }
+
+    private static void append(int[] neighbors, int node) {
+        neighbors[++neighbors[0]] = node;
+    }
+
+    private int maxConnections(int layer) {
+        return layer == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private float dot(float[] query, int queryOffset, int nodeOffset) {
+        float sum = 0;
+        for (int i = 0; i < dimensions; i++) {
+            sum += query[queryOffset + i] * vectors[nodeOffset + i];
+        }
+        return sum;
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes <= levels.length) {
+            return;
+        }
+        int capacity = Math.max(nodes, levels.length * 2);
+        vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        levels = Arrays.copyOf(levels, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = vector.clone();
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    // Snapshot layout: header, all vectors, then per node its level, tombstone flag and links
+
+    int serializedSize() {
+        long bytes = 5 * Integer.BYTES + (long) size * dimensions * Float.BYTES;
+        for (int node = 0; node < size; node++) {
+            bytes += 2 * Integer.BYTES;
+            for (int[] layer : links[node]) {
+                bytes += (long) (layer[0] + 1) * Integer.BYTES;
+            }
+        }
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Index too large for a single snapshot buffer");
+        }
+        return (int) bytes;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.putInt(dimensions).putInt(m).putInt(size).putInt(entryPoint).putInt(maxLevel);
+        buffer.asFloatBuffer().put(vectors, 0, size * dimensions);
+        buffer.position(buffer.position() + size * dimensions * Float.BYTES);
+        for (int node = 0; node < size; node++) {
+            buffer.putInt(levels[node]).putInt(deleted.get(node) ? 1 : 0);
+            for (int[] layer : links[node]) {
+                buffer.putInt(layer[0]);
+                for (int i = 1; i <= layer[0]; i++) {
+                    buffer.putInt(layer[i]);
+                }
+            }
+        }
+    }
+
+    static HnswIndex readFrom(ByteBuffer buffer, int efConstruction) {
+        int dimensions = buffer.getInt();
+        int m = buffer.getInt();
+        HnswIndex index = new HnswIndex(dimensions, m, efConstruction);
+        int size = buffer.getInt();
+        index.ensureCapacity(size);
+        index.entryPoint = buffer.getInt();
+        index.maxLevel = buffer.getInt();
+        buffer.asFloatBuffer().get(index.vectors, 0, size * dimensions);
+        buffer.position(buffer.position() + size * dimensions * Float.BYTES);
+        for (int node = 0; node < size; node++) {
+            int level = buffer.getInt();
+            index.levels[node] = level;
+            if (buffer.getInt() == 1) {
+                index.deleted.set(node);
+                index.deletedCount++;
+            }
+            index.links[node] = new int[level + 1][];
+            for (int layer = 0; layer <= level; layer++) {
+                int[] neighbors = new int[index.maxConnections(layer) + 1];
+                neighbors[0] = buffer.getInt();
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    neighbors[i] = buffer.getInt();
+                }
+                index.links[node][layer] = neighbors;
+            }
+        }
+        index.size = size;
+        return index;
+    }
+}
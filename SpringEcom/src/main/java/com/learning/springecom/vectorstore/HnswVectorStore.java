@@ -0,0 +1,367 @@
+package com.learning.springecom.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-process {@link VectorStore} backed by an {@link HnswIndex}, for deployments that run without
+ * pgvector ({@code app.vector-store.mode=hnsw}). Documents are kept next to the graph and the whole store is written to a snapshot
+ * file through a memory-mapped buffer, then loaded back the same way at startup.
+ * <p>
+ * Updating a document tombstones its old node and inserts a new one; the graph is rebuilt from
+ * the live nodes once tombstones make up half of it. Filtered searches that match only a few
+ * documents are answered by an exact scan of those documents, which is both faster and exact.
+ * <p>
+ * Every write bumps {@link #version()}, and the snapshot records the version it contains
+ * ({@link #persistedVersion()}), so callers can tell when their writes have reached the disk.
+ */
+@Slf4j
+public class HnswVectorStore implements VectorStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x484E5357; // "HNSW"
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final Path snapshotPath;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int exactSearchThreshold;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private HnswIndex index;
+    private final List<StoredDocument> documents = new ArrayList<>();
+    private final Map<String, Integer> nodesById = new HashMap<>();
+    private volatile boolean dirty;
+    // bumped under the write lock by every add and delete
+    private volatile long version;
+    // the version contained in the snapshot on disk
+    private volatile long persistedVersion;
+    // persistent, but there was no usable snapshot to start from
+    private volatile boolean startedEmpty;
+
+    private record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+
+    /**
+     * @param snapshotPath where snapshots are written and loaded from; {@code null} keeps the
+     *                     store in memory only
+     */
+    public HnswVectorStore(EmbeddingModel embeddingModel, ObjectMapper objectMapper, Path snapshotPath,
+                           int m, int efConstruction, int efSearch, int exactSearchThreshold) {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.snapshotPath = snapshotPath;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.exactSearchThreshold = exactSearchThreshold;
+    }
+
+    @Override
+    public String getName() {
+        return "HnswVectorStore";
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index == null ? 0 : index.liveCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(List<Document> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // embed before taking the lock, searches keep running meanwhile
+        List<float[]> embeddings = embeddingModel.embed(batch.stream().map(Document::getText).toList());
+        lock.writeLock().lock();
+        try {
+            if (index == null) {
+                index = new HnswIndex(embeddings.get(0).length, m, efConstruction);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                Document document = batch.get(i);
+                removeNode(document.getId());
+                int node = index.add(embeddings.get(i));
+                documents.add(new StoredDocument(document.getId(), document.getText(),
+                        new HashMap<>(document.getMetadata())));
+                nodesById.put(document.getId(), node);
+            }
+            version++;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the metadata of the stored documents whose text is the one given, keeping their
+     * vectors, and returns their ids. Other documents are left alone and need a full {@link #add}.
+     */
+    public Set<String> updateMetadata(List<Document> batch) {
+        Set<String> updated = new HashSet<>();
+        lock.writeLock().lock();
+        try {
+            for (Document document : batch) {
+                Integer node = nodesById.get(document.getId());
+                if (node != null && documents.get(node).text().equals(document.getText())) {
+                    documents.set(node, new StoredDocument(document.getId(), document.getText(),
+                            new HashMap<>(document.getMetadata())));
+                    updated.add(document.getId());
+                }
+            }
+            if (!updated.isEmpty()) {
+                version++;
+                dirty = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return updated;
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            idList.forEach(this::removeNode);
+            compactIfNeeded();
+            version++;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            List<String> matching = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : nodesById.entrySet()) {
+                if (MetadataFilter.matches(filterExpression, documents.get(entry.getValue()).metadata())) {
+                    matching.add(entry.getKey());
+                }
+            }
+            matching.forEach(this::removeNode);
+            compactIfNeeded();
+            version++;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return List.of();
+            }
+            List<HnswIndex.Hit> hits;
+            if (request.hasFilterExpression()) {
+                Filter.Expression filter = request.getFilterExpression();
+                BitSet matching = new BitSet(index.size());
+                for (int node : nodesById.values()) {
+                    if (MetadataFilter.matches(filter, documents.get(node).metadata())) {
+                        matching.set(node);
+                    }
+                }
+                IntPredicate accept = matching::get;
+                hits = matching.cardinality() <= exactSearchThreshold
+                        ? index.exactSearch(query, request.getTopK(), accept)
+                        : index.search(query, request.getTopK(), efSearch, accept);
+            } else {
+                hits = index.search(query, request.getTopK(), efSearch, null);
+            }
+
+            List<Document> results = new ArrayList<>(hits.size());
+            for (HnswIndex.Hit hit : hits) {
+                if (hit.similarity() < request.getSimilarityThreshold()) {
+                    continue;
+                }
+                StoredDocument stored = documents.get(hit.node());
+                Map<String, Object> metadata = new HashMap<>(stored.metadata());
+                // same extra key the pgvector store adds
+                metadata.put("distance", 1 - hit.similarity());
+                results.add(Document.builder()
+                        .id(stored.id())
+                        .text(stored.text())
+                        .metadata(metadata)
+                        .score((double) hit.similarity())
+                        .build());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeNode(String id) {
+        Integer node = nodesById.remove(id);
+        if (node != null) {
+            index.markDeleted(node);
+            documents.set(node, null);
+        }
+    }
+
+    // Rebuilds the graph from live nodes, so tombstones stop costing search time and memory
+    private void compactIfNeeded() {
+        if (index == null || index.deletedCount() < Math.max(1000, index.size() / 2)) {
+            return;
+        }
+        HnswIndex rebuilt = new HnswIndex(index.dimensions(), m, efConstruction);
+        List<StoredDocument> live = new ArrayList<>(index.liveCount());
+        Map<String, Integer> liveNodes = new HashMap<>();
+        for (int node = 0; node < index.size(); node++) {
+            if (!index.isDeleted(node)) {
+                int newNode = rebuilt.add(index.vector(node));
+                live.add(documents.get(node));
+                liveNodes.put(documents.get(node).id(), newNode);
+            }
+        }
+        log.info("Compacted HNSW index from {} to {} nodes", index.size(), rebuilt.size());
+        index = rebuilt;
+        documents.clear();
+        documents.addAll(live);
+        nodesById.clear();
+        nodesById.putAll(liveNodes);
+    }
+
+    public boolean persistent() {
+        return snapshotPath != null;
+    }
+
+    /** Number of writes applied since the store was first created, including those before a restart. */
+    public long version() {
+        return version;
+    }
+
+    /** The {@link #version()} the latest snapshot contains; writes up to it survive a restart. */
+    public long persistedVersion() {
+        return persistedVersion;
+    }
+
+    /**
+     * Whether the store is persistent but found no snapshot to load at startup, so its documents
+     * have to be rebuilt from the database.
+     */
+    public boolean startedEmpty() {
+        return startedEmpty;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (snapshotPath == null) {
+            return;
+        }
+        if (!Files.exists(snapshotPath)) {
+            startedEmpty = true;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                log.warn("Ignoring vector store snapshot with unknown format: {}", snapshotPath);
+                startedEmpty = true;
+                return;
+            }
+            long loadedVersion = buffer.getLong();
+            HnswIndex loaded = HnswIndex.readFrom(buffer, efConstruction);
+            byte[] json = new byte[buffer.getInt()];
+            buffer.get(json);
+            List<StoredDocument> loadedDocuments = objectMapper.readValue(json, new TypeReference<>() {
+            });
+
+            lock.writeLock().lock();
+            try {
+                index = loaded;
+                version = loadedVersion;
+                persistedVersion = loadedVersion;
+                documents.clear();
+                documents.addAll(loadedDocuments);
+                nodesById.clear();
+                for (int node = 0; node < documents.size(); node++) {
+                    if (documents.get(node) != null) {
+                        nodesById.put(documents.get(node).id(), node);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Loaded {} documents from {}", nodesById.size(), snapshotPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load vector store snapshot " + snapshotPath, e);
+        }
+    }
+
+    /**
+     * Writes the store to a temporary file through a memory-mapped buffer and moves it over the
+     * previous snapshot, so a crash mid-write never leaves a truncated snapshot behind.
+     */
+    @Scheduled(fixedDelayString = "${app.vector-store.hnsw.snapshot-interval-ms:60000}")
+    @PreDestroy
+    public void snapshot() {
+        if (snapshotPath == null || !dirty) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return;
+            }
+            dirty = false;
+            // the read lock keeps writers out, so this is exactly the version being written
+            long snapshotVersion = version;
+            byte[] json = objectMapper.writeValueAsBytes(documents);
+            long size = 2L * Integer.BYTES + Long.BYTES + index.serializedSize() + Integer.BYTES + json.length;
+
+            Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(snapshotPath.toAbsolutePath().getParent(), "hnsw-", ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(snapshotVersion);
+                index.writeTo(buffer);
+                buffer.putInt(json.length).put(json);
+                buffer.force();
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            persistedVersion = snapshotVersion;
+        } catch (IOException e) {
+            dirty = true;
+            log.warn("Failed to write vector store snapshot", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.learning.springecom.vectorstore;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a portable filter expression ({@code productId in ['1', '2']},
+ * {@code type == 'order' && orderId == 'ORD1'}, ...) against a document's metadata.
+ * As in pgvector, a comparison on a missing key is false; numbers compare by value.
+ */
+final class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        return switch (expression.type()) {
+            case AND -> matches(operand(expression.left()), metadata) && matches(operand(expression.right()), metadata);
+            case OR -> matches(operand(expression.left()), metadata) || matches(operand(expression.right()), metadata);
+            case NOT -> !matches(operand(expression.left()), metadata);
+            case IN -> contains(expression, metadata);
+            case NIN -> !contains(expression, metadata);
+            case EQ, NE, GT, GTE, LT, LTE -> compare(expression, metadata);
+        };
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        throw new IllegalArgumentException("Expected an expression but got " + operand);
+    }
+
+    private static boolean contains(Filter.Expression expression, Map<String, Object> metadata) {
+        Object actual = metadata.get(key(expression));
+        if (actual == null) {
+            return false;
+        }
+        Object values = ((Filter.Value) expression.right()).value();
+        Collection<?> candidates = values instanceof Collection<?> collection ? collection : List.of(values);
+        for (Object candidate : candidates) {
+            Integer order = compareValues(actual, candidate);
+            if (order != null && order == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata) {
+        Object actual = metadata.get(key(expression));
+        if (actual == null) {
+            return false;
+        }
+        Integer order = compareValues(actual, ((Filter.Value) expression.right()).value());
+        if (order == null) {
+            return expression.type() == Filter.ExpressionType.NE;
+        }
+        return switch (expression.type()) {
+            case EQ -> order == 0;
+            case NE -> order != 0;
+            case GT -> order > 0;
+            case GTE -> order >= 0;
+            case LT -> order < 0;
+            case LTE -> order <= 0;
+            default -> throw new IllegalStateException("Not a comparison: " + expression.type());
+        };
+    }
+
+    private static String key(Filter.Expression expression) {
+        String key = ((Filter.Key) expression.left()).key();
+        if (key.length() > 1 && (key.startsWith("'") || key.startsWith("\"")) && key.endsWith(key.substring(0, 1))) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    // null when the two values cannot be ordered against each other
+    private static Integer compareValues(Object actual, Object expected) {
+        if (actual instanceof Number && expected instanceof Number) {
+            return new BigDecimal(actual.toString()).compareTo(new BigDecimal(expected.toString()));
+        }
+        if (actual instanceof Boolean || expected instanceof Boolean) {
+            return actual.toString().equalsIgnoreCase(expected.toString()) ? 0 : null;
+        }
+        if (actual instanceof Number || expected instanceof Number) {
+            return null;
+        }
+        return actual.toString().compareTo(expected.toString());
+    }
+}
@@ -1,12 +1,38 @@
-CREATE EXTENSION IF NOT EXISTS vector;
-CREATE EXTENSION IF NOT EXISTS hstore;
-
-CREATE TABLE IF NOT EXISTS vector_store(
-    id TEXT PRIMARY KEY, -- id should be TEXT (not UUID type)
-    content TEXT,
-    metadata JSONB,
-    embedding VECTOR(1536)
+-- Product search: a generated tsvector kept current by Postgres on every insert/update,
+-- plus a trigram index on the name for typo-tolerant matching. Runs after Hibernate has
+-- created the product table (spring.jpa.defer-datasource-initialization=true).
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE product ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('english', coalesce(name, '')), 'A') ||
+    setweight(to_tsvector('english', coalesce(brand, '')), 'A') ||
+    setweight(to_tsvector('english', coalesce(category, '')), 'B') ||
+    setweight(to_tsvector('english', coalesce(description, '')), 'C')
+) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_product_search_vector ON product USING GIN (search_vector);
+CREATE INDEX IF NOT EXISTS idx_product_name_trgm ON product USING GIN (name gin_trgm_ops);
+
+
+-- Embeddings by SHA-256 of (model, text), see CachingEmbeddingModel. Vectors are little-endian float32.
+-- Rows whose last_used_at falls behind app.embedding.cache.retention are purged.
+CREATE TABLE IF NOT EXISTS embedding_cache(
+    content_hash TEXT PRIMARY KEY,
+    embedding BYTEA NOT NULL,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+    last_used_at TIMESTAMPTZ NOT NULL DEFAULT now()
 );
+ALTER TABLE embedding_cache ADD COLUMN IF NOT EXISTS last_used_at TIMESTAMPTZ NOT NULL DEFAULT now();
+CREATE INDEX IF NOT EXISTS idx_embedding_cache_last_used_at ON embedding_cache (last_used_at);
+
+
+-- Products saved before updated_at existed get a modification time once, for Last-Modified
+UPDATE product SET updated_at = now() WHERE updated_at IS NULL;
+
 
--- Create HNSW index for fast search
-CREATE INDEX IF NOT EXISTS vector_store_embedding_idx ON vector_store USING HNSW (embedding vector_cosine_ops);
\ No newline at end of file
+-- Orders and order lines take ids from pooled sequences (blocks of 50). Where the tables already
+-- hold rows numbered by their former identity columns, move the sequences past them once.
+SELECT setval('orders_seq', (SELECT MAX(id) FROM orders) + 50)
+WHERE (SELECT MAX(id) FROM orders) + 50 > (SELECT last_value FROM orders_seq);
+SELECT setval('order_item_seq', (SELECT MAX(id) FROM order_item) + 50)
+WHERE (SELECT MAX(id) FROM order_item) + 50 > (SELECT last_value FROM order_item_seq);
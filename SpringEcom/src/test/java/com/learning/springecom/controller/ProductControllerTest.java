@@ -0,0 +1,121 @@
+package com.learning.springecom.controller;
+
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.ProductVersion;
+import com.learning.springecom.service.CatalogReadModel;
+import com.learning.springecom.service.ProductService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class ProductControllerTest {
+
+    private static final Instant UPDATED_AT = Instant.parse("2025-03-01T10:00:00Z");
+
+    private final ProductService productService = mock(ProductService.class);
+    private final ProductController controller = new ProductController();
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(controller, "productService", productService);
+        ReflectionTestUtils.setField(controller, "catalogReadModel", mock(CatalogReadModel.class));
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        when(productService.getProductVersion(1)).thenReturn(Optional.of(new ProductVersion(1, 3, UPDATED_AT, null, null)));
+        when(productService.getProductById(eq(1), anyLong())).thenReturn(product(3));
+        when(productService.addOrUpdateProduct(any(), any(), any())).thenReturn(product(4));
+    }
+
+    @Test
+    void answersAMatchingIfNoneMatchWithoutLoadingTheProduct() throws Exception {
+        mvc.perform(get("/api/product/1").header(HttpHeaders.IF_NONE_MATCH, "\"product-1-v3\""))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/product/1").header(HttpHeaders.IF_NONE_MATCH, "W/\"product-1-v3\""))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/product/1").header(HttpHeaders.IF_MODIFIED_SINCE, "Sat, 01 Mar 2025 10:00:00 GMT"))
+                .andExpect(status().isNotModified());
+
+        verify(productService, never()).getProductById(anyInt(), anyLong());
+    }
+
+    @Test
+    void servesTheProductForAStaleIfNoneMatch() throws Exception {
+        mvc.perform(get("/api/product/1").header(HttpHeaders.IF_NONE_MATCH, "\"product-1-v2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"product-1-v3\""))
+                .andExpect(jsonPath("$.name").value("Laptop"));
+    }
+
+    @Test
+    void updatesAgainstTheVersionInAStrongOrWeakIfMatch() throws Exception {
+        mvc.perform(update("\"product-1-v3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"product-1-v4\""));
+        mvc.perform(update("W/\"product-1-v3\""))
+                .andExpect(status().isOk());
+
+        verify(productService, times(2)).addOrUpdateProduct(any(), any(), eq(3L));
+    }
+
+    @Test
+    void updatesWithoutAPreconditionForNoIfMatchOrAStar() throws Exception {
+        mvc.perform(update(null)).andExpect(status().isOk());
+        mvc.perform(update("*")).andExpect(status().isOk());
+
+        verify(productService, times(2)).addOrUpdateProduct(any(), any(), isNull());
+    }
+
+    @Test
+    void rejectsAnIfMatchThatCannotMatchTheProduct() throws Exception {
+        for (String ifMatch : new String[]{"\"product-1-vX\"", "\"product-1-v\"", "\"product-2-v3\"", "\"abc\""}) {
+            mvc.perform(update(ifMatch)).andExpect(status().isPreconditionFailed());
+        }
+
+        verify(productService, never()).addOrUpdateProduct(any(), any(), any());
+    }
+
+    @Test
+    void rejectsAStaleIfMatch() throws Exception {
+        when(productService.addOrUpdateProduct(any(), any(), eq(2L)))
+                .thenThrow(new OptimisticLockingFailureException("Product 1 is at version 3, not 2"));
+
+        mvc.perform(update("\"product-1-v2\""))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(content().string("Product 1 is at version 3, not 2"));
+    }
+
+    private static MockHttpServletRequestBuilder update(String ifMatch) {
+        MockHttpServletRequestBuilder request = multipart(HttpMethod.PUT, "/api/product/1")
+                .file(new MockMultipartFile("product", "", MediaType.APPLICATION_JSON_VALUE,
+                        "{\"name\":\"Laptop\"}".getBytes(StandardCharsets.UTF_8)));
+        return ifMatch == null ? request : request.header(HttpHeaders.IF_MATCH, ifMatch);
+    }
+
+    private static Product product(long version) {
+        Product product = new Product();
+        product.setId(1);
+        product.setName("Laptop");
+        product.setVersion(version);
+        product.setUpdatedAt(UPDATED_AT);
+        return product;
+    }
+}
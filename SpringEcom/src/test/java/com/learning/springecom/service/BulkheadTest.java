@@ -0,0 +1,144 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.exception.BulkheadRejectedException;
+import com.learning.springecom.exception.BulkheadRejectedException.Reason;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Bulkhead bulkhead;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void runsCallsAndPassesTheirFailuresThrough() throws Exception {
+        bulkhead = bulkhead(2, 2, Duration.ofSeconds(5));
+
+        assertThat(bulkhead.submit(() -> "done").get(5, TimeUnit.SECONDS)).isEqualTo("done");
+        assertThatThrownBy(() -> bulkhead.submit(() -> {
+            throw new IllegalStateException("model failed");
+        }).get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(rejected("full") + rejected("timeout")).isZero();
+    }
+
+    @Test
+    void rejectsCallsOnceWorkersAndQueueAreFull() throws Exception {
+        bulkhead = bulkhead(1, 1, Duration.ofSeconds(5));
+        CompletableFuture<String> running = bulkhead.submit(this::blocked);
+        CompletableFuture<String> queued = bulkhead.submit(() -> "queued");
+
+        CompletableFuture<String> rejected = bulkhead.submit(() -> "rejected");
+
+        assertRejected(rejected, Reason.FULL);
+        assertThat(rejected("full")).isEqualTo(1);
+        assertThat(meterRegistry.get("bulkhead.queued").tag("name", "test").gauge().value()).isEqualTo(1);
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("released");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("queued");
+    }
+
+    @Test
+    void zeroQueueCapacityLetsNoCallWait() throws Exception {
+        bulkhead = bulkhead(1, 0, Duration.ofSeconds(5));
+        CompletableFuture<String> running = bulkhead.submit(this::blocked);
+
+        assertRejected(bulkhead.submit(() -> "rejected"), Reason.FULL);
+        assertThat(rejected("full")).isEqualTo(1);
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("released");
+        // the idle worker takes the next call directly
+        assertThat(bulkhead.submit(() -> "next").get(5, TimeUnit.SECONDS)).isEqualTo("next");
+    }
+
+    @Test
+    void interruptsCallsThatRunPastTheTimeout() throws Exception {
+        bulkhead = bulkhead(1, 1, Duration.ofMillis(200));
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<String> slow = bulkhead.submit(() -> {
+            try {
+                release.await();
+                return "released";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertRejected(slow, Reason.TIMEOUT);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(rejected("timeout")).isEqualTo(1);
+        assertThat(rejected("full")).isZero();
+    }
+
+    @Test
+    void timeoutCoversTimeSpentQueued() {
+        bulkhead = bulkhead(1, 1, Duration.ofMillis(200));
+        // ignores the interrupt, so the worker stays busy and the second call stays queued
+        CompletableFuture<String> running = bulkhead.submit(() -> {
+            boolean released = false;
+            while (!released) {
+                try {
+                    released = release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // keep waiting
+                }
+            }
+            return "released";
+        });
+
+        CompletableFuture<String> queued = bulkhead.submit(() -> "queued");
+
+        assertRejected(queued, Reason.TIMEOUT);
+        assertRejected(running, Reason.TIMEOUT);
+        assertThat(rejected("timeout")).isEqualTo(2);
+    }
+
+    private Bulkhead bulkhead(int maxConcurrent, int queueCapacity, Duration timeout) {
+        return new Bulkhead("test", maxConcurrent, queueCapacity, timeout, Duration.ofSeconds(3), meterRegistry);
+    }
+
+    private String blocked() {
+        try {
+            release.await();
+            return "released";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertRejected(CompletableFuture<?> future, Reason reason) {
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .cause()
+                .isInstanceOfSatisfying(BulkheadRejectedException.class, e -> {
+                    assertThat(e.getReason()).isEqualTo(reason);
+                    assertThat(e.getBulkhead()).isEqualTo("test");
+                    assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(3));
+                });
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("bulkhead.rejected").tag("name", "test").tag("reason", reason).counter().count();
+    }
+}
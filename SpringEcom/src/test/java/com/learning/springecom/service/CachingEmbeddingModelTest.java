@@ -0,0 +1,119 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class CachingEmbeddingModelTest {
+
+    private final EmbeddingModel delegate = mock(EmbeddingModel.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    // content_hash -> last_used_at; only writes made inside a transaction reach it, as with auto-commit off
+    private final Map<String, Instant> table = new HashMap<>();
+    private boolean inTransaction;
+    private int committedWrites;
+    private CachingEmbeddingModel model;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            inTransaction = true;
+            try {
+                invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            } finally {
+                inTransaction = false;
+            }
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        model = new CachingEmbeddingModel(delegate, jdbcTemplate, transactionTemplate, "test-model",
+                new SimpleMeterRegistry(), new StageMetrics(new SimpleMeterRegistry()), Duration.ofDays(30));
+    }
+
+    @Test
+    void purgeDeletesRowsUnusedForTheRetention() {
+        table.put("old", Instant.now().minus(Duration.ofDays(40)));
+        table.put("recent", Instant.now().minus(Duration.ofDays(1)));
+        when(jdbcTemplate.update(startsWith("DELETE FROM embedding_cache"), any(Object[].class))).thenAnswer(invocation -> {
+            Instant cutoff = ((Timestamp) invocation.getArgument(1)).toInstant();
+            if (!inTransaction) {
+                return 0;
+            }
+            committedWrites++;
+            table.values().removeIf(lastUsed -> lastUsed.isBefore(cutoff));
+            return 1;
+        });
+
+        model.purgeUnused();
+
+        assertThat(table).containsOnlyKeys("recent");
+        assertThat(committedWrites).isEqualTo(1);
+    }
+
+    @Test
+    void documentHitsAreServedFromTheTableAndTouchedInATransaction() {
+        doAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString(1)).thenReturn(key("a laptop"));
+            when(rs.getBytes(2)).thenReturn(bytes(new float[]{1f, 2f}));
+            invocation.<RowCallbackHandler>getArgument(1).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class))).thenAnswer(invocation -> {
+            if (inTransaction) {
+                committedWrites++;
+            }
+            return 1;
+        });
+
+        float[] vector = model.embed(new Document("a laptop"));
+
+        assertThat(vector).containsExactly(1f, 2f);
+        verifyNoInteractions(delegate);
+        assertThat(committedWrites).isEqualTo(1);
+    }
+
+    @Test
+    void queriesBypassTheTable() {
+        when(delegate.embed("where is my order")).thenReturn(new float[]{3f});
+
+        assertThat(model.embed("where is my order")).containsExactly(3f);
+
+        verifyNoInteractions(jdbcTemplate, transactionTemplate);
+    }
+
+    private static String key(String text) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(("test-model\n" + text).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] bytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+}
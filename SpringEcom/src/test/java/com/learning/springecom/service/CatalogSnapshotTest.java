@@ -0,0 +1,144 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.dto.CatalogFilter;
+import com.learning.springecom.service.CatalogSnapshot.Row;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogSnapshotTest {
+
+    private static final Pattern NEXT_CURSOR = Pattern.compile("\"nextCursor\":\"([^\"]+)\"");
+    private static final List<String> CATEGORIES = Arrays.asList("Laptop", "Phone", "Audio", null);
+
+    @Test
+    void stockChangeKeepsTheSortOrders() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(row(1, 1, "10.00", 100, "Laptop", true),
+                row(2, 1, "5.00", 200, "Phone", true), row(3, 1, "7.50", 300, "Audio", true)));
+
+        CatalogSnapshot next = snapshot.with(List.of(row(2, 2, "5.00", 200, "Phone", false)), List.of());
+
+        assertThat(next.version().versionSum()).isEqualTo(4);
+        assertThat(next.productsJson(new CatalogFilter(null, null, null, false)))
+                .asString(StandardCharsets.UTF_8).isEqualTo("[{\"id\":2,\"v\":2}]");
+        assertThat(pages(next, "price")).containsExactly("{\"id\":2,\"v\":2}", "{\"id\":3,\"v\":1}", "{\"id\":1,\"v\":1}");
+    }
+
+    @Test
+    void priceChangeMovesTheProduct() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(row(1, 1, "10.00", 100, "Laptop", true),
+                row(2, 1, "5.00", 200, "Phone", true), row(3, 1, "7.50", 300, "Audio", true)));
+
+        CatalogSnapshot next = snapshot.with(List.of(row(2, 2, "12.00", 200, "Phone", true)), List.of());
+
+        assertThat(pages(next, "price")).containsExactly("{\"id\":3,\"v\":1}", "{\"id\":1,\"v\":1}", "{\"id\":2,\"v\":2}");
+    }
+
+    @Test
+    void addsAndRemovesProducts() {
+        CatalogSnapshot snapshot = CatalogSnapshot.of(List.of(row(2, 1, "10.00", 100, "Laptop", true),
+                row(4, 1, "5.00", 200, "Phone", true)));
+
+        CatalogSnapshot next = snapshot.with(List.of(row(1, 1, "7.00", 300, "Tablet", true),
+                row(5, 1, "1.00", 50, "Tablet", true)), List.of(4));
+
+        assertThat(next.size()).isEqualTo(3);
+        assertThat(next.indexOf(4)).isNegative();
+        assertThat(pages(next, "id")).containsExactly("{\"id\":1,\"v\":1}", "{\"id\":2,\"v\":1}", "{\"id\":5,\"v\":1}");
+        assertThat(pages(next, "releaseDate")).containsExactly("{\"id\":5,\"v\":1}", "{\"id\":2,\"v\":1}", "{\"id\":1,\"v\":1}");
+        assertThat(next.productsJson(new CatalogFilter("tablet", null, null, null)))
+                .asString(StandardCharsets.UTF_8).isEqualTo("[{\"id\":1,\"v\":1},{\"id\":5,\"v\":1}]");
+    }
+
+    @Test
+    void patchedSnapshotsMatchAFreshBuild() {
+        Random random = new Random(42);
+        Map<Integer, Row> rows = new TreeMap<>();
+        for (int id = 1; id <= 200; id++) {
+            rows.put(id, randomRow(random, id, 1));
+        }
+        CatalogSnapshot snapshot = CatalogSnapshot.of(rows.values());
+
+        for (int round = 0; round < 200; round++) {
+            List<Row> changed = new ArrayList<>();
+            Set<Integer> removed = new HashSet<>();
+            int changes = 1 + random.nextInt(round % 10 == 0 ? 80 : 5);
+            for (int c = 0; c < changes; c++) {
+                int id = 1 + random.nextInt(260);
+                Row current = rows.get(id);
+                if (current != null && random.nextInt(5) == 0) {
+                    changed.removeIf(row -> row.id() == id);
+                    removed.add(id);
+                    rows.remove(id);
+                } else if (current != null && random.nextBoolean()) {
+                    // stock only: same price, date and category
+                    Row row = new Row(id, current.version() + 1, current.updatedAt().plusSeconds(1), current.price(),
+                            current.releaseDate(), current.category(), !current.available(),
+                            json(id, current.version() + 1), json(id, current.version() + 1));
+                    changed.add(row);
+                    rows.put(id, row);
+                    removed.remove(id);
+                } else {
+                    Row row = randomRow(random, id, current == null ? 1 : current.version() + 1);
+                    changed.add(row);
+                    rows.put(id, row);
+                    removed.remove(id);
+                }
+            }
+            snapshot = snapshot.with(changed, removed);
+            CatalogSnapshot fresh = CatalogSnapshot.of(rows.values());
+
+            assertThat(snapshot.version()).isEqualTo(fresh.version());
+            for (String sort : List.of("id", "price", "releaseDate")) {
+                assertThat(pages(snapshot, sort)).as("%s order in round %d", sort, round).isEqualTo(pages(fresh, sort));
+            }
+            for (CatalogFilter filter : List.of(new CatalogFilter(null, null, null, null),
+                    new CatalogFilter("phone", null, null, null), new CatalogFilter(null, null, null, true),
+                    new CatalogFilter(null, new BigDecimal("20"), new BigDecimal("60"), null))) {
+                assertThat(snapshot.productsJson(filter)).isEqualTo(fresh.productsJson(filter));
+            }
+        }
+    }
+
+    // Every summary, following the cursors page by page
+    private static List<String> pages(CatalogSnapshot snapshot, String sort) {
+        List<String> items = new ArrayList<>();
+        String cursor = null;
+        do {
+            String page = new String(snapshot.pageJson(sort, cursor, 7), StandardCharsets.UTF_8);
+            String body = page.substring("{\"items\":[".length(), page.indexOf("],\"nextCursor\":"));
+            for (String item : body.split("(?<=}),")) {
+                if (!item.isEmpty()) {
+                    items.add(item);
+                }
+            }
+            Matcher next = NEXT_CURSOR.matcher(page);
+            cursor = next.find() ? next.group(1) : null;
+        } while (cursor != null);
+        return items;
+    }
+
+    private static Row randomRow(Random random, int id, long version) {
+        String price = random.nextInt(10) == 0 ? null : (random.nextInt(100) + ".00");
+        long releaseDate = random.nextInt(10) == 0 ? -1 : random.nextInt(50) * 86_400_000L;
+        return new Row(id, version, Instant.ofEpochSecond(1_700_000_000L + random.nextInt(1000)),
+                price == null ? null : new BigDecimal(price), releaseDate < 0 ? null : new Date(releaseDate),
+                CATEGORIES.get(random.nextInt(CATEGORIES.size())), random.nextBoolean(), json(id, version), json(id, version));
+    }
+
+    private static Row row(int id, long version, String price, long releaseDate, String category, boolean available) {
+        return new Row(id, version, Instant.ofEpochSecond(1_700_000_000L + id), new BigDecimal(price),
+                new Date(releaseDate), category, available, json(id, version), json(id, version));
+    }
+
+    private static byte[] json(int id, long version) {
+        return ("{\"id\":" + id + ",\"v\":" + version + "}").getBytes(StandardCharsets.UTF_8);
+    }
+}
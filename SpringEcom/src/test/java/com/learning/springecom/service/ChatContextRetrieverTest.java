@@ -0,0 +1,33 @@
+package com.learning.springecom.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatContextRetrieverTest {
+
+    @Test
+    void ignoresOrdinaryWords() {
+        assertThat(ChatContextRetriever.orderNumbers("Where is my order? I ordered a laptop")).isEmpty();
+        assertThat(ChatContextRetriever.orderNumbers("ORDER status, ORDERED yesterday, Ordinary question")).isEmpty();
+    }
+
+    @Test
+    void findsGeneratedOrderNumbers() {
+        String number = "ORD" + OrderNumberGenerator.encode(123456789012345L);
+
+        assertThat(ChatContextRetriever.orderNumbers("What happened to " + number + "?")).containsExactly(number);
+    }
+
+    @Test
+    void findsLegacyOrderNumbers() {
+        assertThat(ChatContextRetriever.orderNumbers("Status of ORD1A2B3C4D and ORDdeadbeef please"))
+                .containsExactly("ORD1A2B3C4D", "ORDDEADBEEF");
+    }
+
+    @Test
+    void rejectsNearMisses() {
+        // too short, too long, and a character outside the Crockford alphabet (U)
+        assertThat(ChatContextRetriever.orderNumbers("ORD1234567 ORD1A2B3C4D5 ORD0123456789ABU")).isEmpty();
+    }
+}
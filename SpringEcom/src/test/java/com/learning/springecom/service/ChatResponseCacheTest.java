@@ -0,0 +1,155 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatResponseCacheTest {
+
+    private static final String ORDER_A = "ORD0000000000001";
+    private static final String ORDER_B = "ORD0000000000002";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final ChatResponseCache cache = new ChatResponseCache();
+    // question -> embedding; unknown questions get a vector of their own
+    private final Map<String, float[]> embeddings = new HashMap<>();
+    private final AtomicInteger embedded = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "embeddingModel", embeddingModel);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.95);
+        cache.registerMetrics();
+        when(embeddingModel.embed(anyString())).thenAnswer(invocation -> {
+            embedded.incrementAndGet();
+            String query = invocation.getArgument(0);
+            return embeddings.computeIfAbsent(query, q -> {
+                float[] vector = new float[64];
+                vector[embeddings.size() % 64] = 1;
+                return vector;
+            });
+        });
+    }
+
+    @Test
+    void servesTheSameQuestionWithoutEmbeddingIt() {
+        store("Where is my laptop?", "On its way", product("1"));
+
+        ChatResponseCache.Lookup lookup = cache.lookup("  where is MY   laptop? ");
+
+        assertThat(lookup.answer()).isEqualTo("On its way");
+        assertThat(embedded).hasValue(1);
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void servesSimilarQuestionsAtTheThresholdOnly() {
+        embeddings.put("Which laptops are in stock?", new float[]{1, 0});
+        // cosine 0.97 and 0.89
+        embeddings.put("What laptops do you have in stock?", new float[]{1, 0.25f});
+        embeddings.put("Which laptops are cheap?", new float[]{1, 0.5f});
+        store("Which laptops are in stock?", "The X1 and the T14", product("1"));
+
+        assertThat(cache.lookup("What laptops do you have in stock?").answer()).isEqualTo("The X1 and the T14");
+        ChatResponseCache.Lookup miss = cache.lookup("Which laptops are cheap?");
+
+        assertThat(miss.hit()).isFalse();
+        assertThat(miss.embedding()).containsExactly(1, 0.5f);
+        assertThat(count("miss")).isEqualTo(2);
+    }
+
+    @Test
+    void matchesOnlyQuestionsNamingTheSameOrders() {
+        embeddings.put("Where is " + ORDER_A + "?", new float[]{1, 0});
+        embeddings.put("Where is " + ORDER_B + "?", new float[]{1, 0});
+        embeddings.put("Has " + ORDER_A + " shipped?", new float[]{1, 0});
+        store("Where is " + ORDER_A + "?", "Shipped", order(ORDER_A));
+
+        assertThat(cache.lookup("Where is " + ORDER_B + "?").hit()).isFalse();
+        assertThat(cache.lookup("Has " + ORDER_A + " shipped?").answer()).isEqualTo("Shipped");
+    }
+
+    @Test
+    void doesNotStoreAnswersBuiltBeforeAnInvalidation() {
+        ChatResponseCache.Lookup lookup = cache.lookup("Is the laptop in stock?");
+        // the product changes while the answer is being generated
+        cache.invalidateProducts(List.of("1"));
+
+        cache.put("Is the laptop in stock?", lookup, "Yes, 5 left", List.of(product("1")));
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void dropsEntriesBuiltFromAnInvalidatedDocument() {
+        store("Is the laptop in stock?", "Yes", product("1"), product("2"));
+        store("Where is " + ORDER_A + "?", "Shipped", order(ORDER_A));
+
+        cache.invalidateProducts(List.of("3"));
+        assertThat(cache.size()).isEqualTo(2);
+
+        cache.invalidateProducts(List.of("2"));
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.lookup("Is the laptop in stock?").hit()).isFalse();
+
+        cache.invalidateOrders(List.of(ORDER_A));
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void expiredEntriesAreMissed() {
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMillis(-1));
+        store("Is the laptop in stock?", "Yes", product("1"));
+
+        assertThat(cache.lookup("Is the laptop in stock?").hit()).isFalse();
+        assertThat(cache.size()).isZero();
+        assertThat(count("hit")).isZero();
+    }
+
+    @Test
+    void evictsTheOldestEntryWhenFull() {
+        store("a", "answer a", product("1"));
+        store("b", "answer b", product("1"));
+        store("c", "answer c", product("1"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(meterRegistry.get("chat.cache.size").gauge().value()).isEqualTo(2);
+        assertThat(cache.lookup("a").hit()).isFalse();
+        assertThat(cache.lookup("b").answer()).isEqualTo("answer b");
+        assertThat(cache.lookup("c").answer()).isEqualTo("answer c");
+    }
+
+    private void store(String query, String answer, Document... sources) {
+        cache.put(query, cache.lookup(query), answer, List.of(sources));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("chat.cache").tag("result", result).counter().count();
+    }
+
+    private static Document product(String productId) {
+        return new Document("product " + productId, Map.of("productId", productId));
+    }
+
+    private static Document order(String orderId) {
+        return new Document("order " + orderId, Map.of("orderId", orderId));
+    }
+}
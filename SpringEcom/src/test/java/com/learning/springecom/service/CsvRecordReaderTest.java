@@ -0,0 +1,68 @@
+package com.learning.springecom.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CsvRecordReaderTest {
+
+    @Test
+    void readsPlainRecords() throws IOException {
+        assertThat(records("name,price\nLaptop,999\nMouse,25\n"))
+                .containsExactly(List.of("name", "price"), List.of("Laptop", "999"), List.of("Mouse", "25"));
+    }
+
+    @Test
+    void keepsCommasAndLineBreaksInsideQuotes() throws IOException {
+        assertThat(records("\"Laptop, 14 inch\",\"Fast\nand light\"\n"))
+                .containsExactly(List.of("Laptop, 14 inch", "Fast\nand light"));
+    }
+
+    @Test
+    void unescapesDoubledQuotes() throws IOException {
+        assertThat(records("\"The \"\"Pro\"\" model\",\"\"\"\"\n"))
+                .containsExactly(List.of("The \"Pro\" model", "\""));
+    }
+
+    @Test
+    void handlesCrlfAndAMissingFinalLineBreak() throws IOException {
+        assertThat(records("a,b\r\nc,d\r\ne,f"))
+                .containsExactly(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"));
+    }
+
+    @Test
+    void keepsEmptyFieldsAndSkipsBlankLines() throws IOException {
+        assertThat(records("a,,c\n\n\r\n,\n"))
+                .containsExactly(List.of("a", "", "c"), List.of("", ""));
+    }
+
+    @Test
+    void takesQuotesInsideAnUnquotedFieldLiterally() throws IOException {
+        assertThat(records("12\" screen,x\n")).containsExactly(List.of("12\" screen", "x"));
+    }
+
+    @Test
+    void rejectsAnUnterminatedQuotedField() {
+        CsvRecordReader reader = new CsvRecordReader(new StringReader("a,\"never closed\nb,c\n"));
+
+        assertThatThrownBy(reader::next)
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Unterminated");
+    }
+
+    private static List<List<String>> records(String csv) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(new StringReader(csv));
+        List<List<String>> records = new ArrayList<>();
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+}
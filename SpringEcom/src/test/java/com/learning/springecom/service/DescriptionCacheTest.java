@@ -0,0 +1,117 @@
+package com.learning.springecom.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DescriptionCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DescriptionCache cache = new DescriptionCache();
+    private final AtomicInteger generations = new AtomicInteger();
+    private CompletableFuture<String> generation = new CompletableFuture<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofHours(1));
+        cache.registerMetrics();
+    }
+
+    @Test
+    void concurrentCallersShareOneGeneration() {
+        CompletableFuture<String> first = cache.get("laptop", false, generator());
+        CompletableFuture<String> second = cache.get("laptop", false, generator());
+
+        assertThat(generations).hasValue(1);
+        assertThat(second).isSameAs(first).isNotDone();
+        generation.complete("A fast laptop");
+
+        assertThat(first).isCompletedWithValue("A fast laptop");
+        assertThat(count("miss")).isEqualTo(1);
+        assertThat(count("coalesced")).isEqualTo(1);
+    }
+
+    @Test
+    void servesCompletedGenerationsFromTheCache() {
+        generation.complete("A fast laptop");
+        cache.get("laptop", false, generator());
+
+        CompletableFuture<String> cached = cache.get("laptop", false, generator());
+
+        assertThat(cached).isCompletedWithValue("A fast laptop");
+        assertThat(generations).hasValue(1);
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void refreshBypassesAndReplacesTheCachedValue() {
+        generation.complete("Old description");
+        cache.get("laptop", false, generator());
+        generation = CompletableFuture.completedFuture("New description");
+
+        assertThat(cache.get("laptop", true, generator())).isCompletedWithValue("New description");
+        assertThat(cache.get("laptop", false, generator())).isCompletedWithValue("New description");
+        assertThat(generations).hasValue(2);
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        CompletableFuture<String> failed = cache.get("laptop", false, generator());
+        generation.completeExceptionally(new IllegalStateException("model unavailable"));
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(cache.size()).isZero();
+        generation = CompletableFuture.completedFuture("A fast laptop");
+        assertThat(cache.get("laptop", false, generator())).isCompletedWithValue("A fast laptop");
+        assertThat(generations).hasValue(2);
+    }
+
+    @Test
+    void expiredEntriesAreGeneratedAgain() {
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMillis(-1));
+        generation.complete("A fast laptop");
+        cache.get("laptop", false, generator());
+
+        cache.get("laptop", false, generator());
+
+        assertThat(generations).hasValue(2);
+        assertThat(count("hit")).isZero();
+    }
+
+    @Test
+    void evictsTheOldestEntryWhenFull() {
+        generation.complete("description");
+        cache.get("a", false, generator());
+        cache.get("b", false, generator());
+        cache.get("c", false, generator());
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(meterRegistry.get("description.cache.size").gauge().value()).isEqualTo(2);
+        cache.get("b", false, generator());
+        cache.get("c", false, generator());
+        assertThat(generations).hasValue(3);
+        cache.get("a", false, generator());
+        assertThat(generations).hasValue(4);
+    }
+
+    private Supplier<CompletableFuture<String>> generator() {
+        return () -> {
+            generations.incrementAndGet();
+            return generation;
+        };
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("description.cache").tag("result", result).counter().count();
+    }
+}
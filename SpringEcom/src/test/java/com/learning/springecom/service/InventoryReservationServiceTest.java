@@ -0,0 +1,284 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.exception.OrderRejectedException;
+import com.learning.springecom.model.dto.OrderLineError;
+import com.learning.springecom.service.InventoryReservationService.Reservation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.*;
+
+class InventoryReservationServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final InventoryReservationService service = new InventoryReservationService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(service, "productCache", mock(ProductCache.class));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void reserveTakesStockAndReleaseGivesItBack() {
+        loadStock(Map.of(1, 10));
+
+        Reservation reservation = service.reserve(Map.of(1, 4));
+        assertThat(available(1)).isEqualTo(6);
+        assertThat(held(1)).isEqualTo(4);
+
+        service.release(reservation.id());
+        service.release(reservation.id());
+
+        assertThat(available(1)).isEqualTo(10);
+        assertThat(held(1)).isZero();
+    }
+
+    @Test
+    void reserveTakesEveryLineOrNone() {
+        loadStock(Map.of(1, 10, 2, 1));
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        quantities.put(1, 5);
+        quantities.put(2, 3);
+        quantities.put(99, 1);
+
+        assertThatThrownBy(() -> service.reserve(quantities))
+                .isInstanceOfSatisfying(OrderRejectedException.class, e -> assertThat(e.getErrors())
+                        .extracting(OrderLineError::productId, OrderLineError::availableQuantity, OrderLineError::reason)
+                        .containsExactly(
+                                tuple(2, 1, "INSUFFICIENT_STOCK"),
+                                tuple(99, 0, "PRODUCT_NOT_FOUND")));
+
+        assertThat(available(1)).isEqualTo(10);
+        assertThat(available(2)).isEqualTo(1);
+        assertThat(held(1)).isZero();
+    }
+
+    @Test
+    void confirmedStockIsFlushedAsOneDelta() {
+        loadStock(Map.of(1, 10, 2, 10));
+        service.confirm(service.reserve(Map.of(1, 2)));
+        service.confirm(service.reserve(Map.of(1, 3, 2, 1)));
+        assertThat(held(1)).isZero();
+
+        service.flush();
+        service.flush();
+
+        assertThat(flushedDeltas()).containsExactlyInAnyOrder(List.of(5L, 1), List.of(1L, 2));
+        assertThat(available(1)).isEqualTo(5);
+    }
+
+    @Test
+    void settlesAReservationOnlyOnce() {
+        loadStock(Map.of(1, 10));
+        Reservation released = service.reserve(Map.of(1, 3));
+        Reservation confirmed = service.reserve(Map.of(1, 2));
+
+        service.release(released.id());
+        service.confirm(released);
+        service.confirm(confirmed);
+        service.release(confirmed.id());
+        service.confirm(confirmed);
+
+        assertThat(available(1)).isEqualTo(8);
+        assertThat(held(1)).isZero();
+        service.flush();
+        assertThat(flushedDeltas()).containsExactly(List.of(2L, 1));
+    }
+
+    @Test
+    void commitConfirmsTheBoundReservation() {
+        loadStock(Map.of(1, 10));
+        TransactionSynchronizationManager.initSynchronization();
+        service.completeWithTransaction(service.reserve(Map.of(1, 2)));
+        assertThat(held(1)).isEqualTo(2);
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(available(1)).isEqualTo(8);
+        assertThat(held(1)).isZero();
+        service.flush();
+        assertThat(flushedDeltas()).containsExactly(List.of(2L, 1));
+    }
+
+    @Test
+    void rollbackReturnsTheStock() {
+        loadStock(Map.of(1, 10));
+        TransactionSynchronizationManager.initSynchronization();
+        service.completeWithTransaction(service.reserve(Map.of(1, 4)));
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(available(1)).isEqualTo(10);
+        assertThat(held(1)).isZero();
+        service.flush();
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void failedFlushKeepsTheDeltasForTheNextRound() {
+        loadStock(Map.of(1, 10));
+        service.confirm(service.reserve(Map.of(1, 2)));
+        doThrow(new IllegalStateException("database down"))
+                .doAnswer(invocation -> {
+                    invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+                    return null;
+                })
+                .when(transactionTemplate).executeWithoutResult(any());
+
+        service.flush();
+        service.confirm(service.reserve(Map.of(1, 1)));
+        service.flush();
+
+        assertThat(flushedDeltas()).containsExactly(List.of(3L, 1));
+    }
+
+    @Test
+    void refreshCountsHeldAndUnflushedStock() {
+        loadStock(Map.of(1, 10));
+        service.reserve(Map.of(1, 2));
+        service.confirm(service.reserve(Map.of(1, 3)));
+        TransactionSynchronizationManager.initSynchronization();
+        stubRows("SELECT id, stock_quantity FROM product WHERE id = ANY (?)", Map.of(1, 20));
+
+        service.refreshAfterCommit(1);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // 20 in the table, minus 3 sold but not flushed, minus 2 still held
+        assertThat(available(1)).isEqualTo(15);
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        loadStock(Map.of(1, 1000, 2, 500));
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger sold1 = new AtomicInteger();
+        AtomicInteger sold2 = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        Map<Integer, Integer> quantities = thread % 2 == 0 ? Map.of(1, 1) : Map.of(1, 2, 2, 1);
+                        try {
+                            Reservation reservation = service.reserve(quantities);
+                            if (i % 5 == 0) {
+                                service.release(reservation.id());
+                            } else {
+                                service.confirm(reservation);
+                                sold1.addAndGet(quantities.get(1));
+                                sold2.addAndGet(quantities.getOrDefault(2, 0));
+                            }
+                        } catch (OrderRejectedException e) {
+                            // sold out
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(sold1.get()).isLessThanOrEqualTo(1000);
+        assertThat(sold2.get()).isLessThanOrEqualTo(500);
+        assertThat(available(1)).isEqualTo(1000 - sold1.get()).isGreaterThanOrEqualTo(0);
+        assertThat(available(2)).isEqualTo(500 - sold2.get()).isGreaterThanOrEqualTo(0);
+        assertThat(held(1)).isZero();
+        assertThat(held(2)).isZero();
+        service.flush();
+        assertThat(flushedDeltas()).containsExactlyInAnyOrder(List.of((long) sold1.get(), 1), List.of((long) sold2.get(), 2));
+    }
+
+    private void loadStock(Map<Integer, Integer> stock) {
+        stubRows("SELECT id, stock_quantity FROM product", stock);
+        service.reconcile();
+    }
+
+    private void stubRows(String sql, Map<Integer, Integer> stock) {
+        Answer<Void> rows = invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(invocation.getArguments().length - 1);
+            for (Map.Entry<Integer, Integer> row : stock.entrySet()) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getInt(1)).thenReturn(row.getKey());
+                when(rs.getInt(2)).thenReturn(row.getValue());
+                handler.processRow(rs);
+            }
+            return null;
+        };
+        doAnswer(rows).when(jdbcTemplate).query(eq(sql), any(RowCallbackHandler.class));
+        doAnswer(rows).when(jdbcTemplate).query(eq(sql), any(PreparedStatementSetter.class), any(RowCallbackHandler.class));
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    // every [delta, productId] row written by the flushes, in order
+    @SuppressWarnings("unchecked")
+    private List<List<Object>> flushedDeltas() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeast(0)).batchUpdate(anyString(), rows.capture());
+        return rows.getAllValues().stream().flatMap(List::stream).map(List::of).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int available(int productId) {
+        return ((Map<Integer, AtomicInteger>) ReflectionTestUtils.getField(service, "available")).get(productId).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int held(int productId) {
+        AtomicInteger held = ((Map<Integer, AtomicInteger>) ReflectionTestUtils.getField(service, "held")).get(productId);
+        return held == null ? 0 : held.get();
+    }
+}
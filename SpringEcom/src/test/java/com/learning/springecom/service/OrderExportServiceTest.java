@@ -0,0 +1,114 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.dto.OrderExportRow;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class OrderExportServiceTest {
+
+    private static final LocalDate DATE = LocalDate.of(2025, 3, 1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final OrderExportService service = new OrderExportService();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "entityManager", entityManager);
+    }
+
+    @Test
+    void quotesCsvFieldsOnlyWhenNeeded() {
+        assertThat(OrderExportService.csvField(null)).isEmpty();
+        assertThat(OrderExportService.csvField("Laptop")).isEqualTo("Laptop");
+        assertThat(OrderExportService.csvField(3)).isEqualTo("3");
+        assertThat(OrderExportService.csvField("Lovelace, Ada")).isEqualTo("\"Lovelace, Ada\"");
+        assertThat(OrderExportService.csvField("27\" monitor")).isEqualTo("\"27\"\" monitor\"");
+        assertThat(OrderExportService.csvField("line\nbreak")).isEqualTo("\"line\nbreak\"");
+        assertThat(OrderExportService.csvField("carriage\rreturn")).isEqualTo("\"carriage\rreturn\"");
+    }
+
+    @Test
+    void writesOneCsvLinePerRow() throws Exception {
+        service.writeCsv(List.of(
+                line("ORD1", "Lovelace, Ada", "27\" monitor", 1, "300.00"),
+                empty("ORD2", "Grace")).iterator(), out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                orderId,customerName,email,status,orderDate,productName,quantity,totalPrice
+                ORD1,"Lovelace, Ada",ada@example.com,PLACED,2025-03-01,"27"" monitor",1,300.00
+                ORD2,Grace,ada@example.com,PLACED,2025-03-01,,,
+                """);
+    }
+
+    @Test
+    void groupsRowsIntoOneJsonObjectPerOrder() throws Exception {
+        service.writeNdjson(List.of(
+                line("ORD1", "Ada", "Laptop", 1, "999.00"),
+                line("ORD1", "Ada", "Mouse", 2, "50.00"),
+                empty("ORD2", "Grace"),
+                line("ORD3", "Alan", "Keyboard", 1, "40.00")).iterator(), out);
+
+        List<JsonNode> orders = ndjson();
+        assertThat(orders).extracting(order -> order.get("orderId").asText()).containsExactly("ORD1", "ORD2", "ORD3");
+        assertThat(orders.get(0).get("items")).hasSize(2);
+        assertThat(orders.get(0).get("items").get(1).get("productName").asText()).isEqualTo("Mouse");
+        assertThat(orders.get(0).get("items").get(1).get("totalPrice").decimalValue()).isEqualByComparingTo("50.00");
+        // the LEFT JOIN gives an order without lines a single row of nulls
+        assertThat(orders.get(1).get("items")).isEmpty();
+        assertThat(orders.get(1).get("orderDate").asText()).isEqualTo("2025-03-01");
+        assertThat(orders.get(2).get("items")).hasSize(1);
+    }
+
+    @Test
+    void writesNothingForNoRows() throws Exception {
+        service.writeNdjson(List.<OrderExportRow>of().iterator(), out);
+
+        assertThat(out.size()).isZero();
+    }
+
+    @Test
+    void clearsThePersistenceContextWhileStreaming() throws Exception {
+        List<OrderExportRow> rows = IntStream.range(0, 2500)
+                .mapToObj(i -> line("ORD" + i, "Ada", "Laptop", 1, "999.00")).toList();
+
+        service.writeNdjson(rows.iterator(), out);
+
+        assertThat(ndjson()).hasSize(2500);
+        verify(entityManager, times(2)).clear();
+    }
+
+    private List<JsonNode> ndjson() throws Exception {
+        List<JsonNode> orders = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            orders.add(objectMapper.readTree(line));
+        }
+        return orders;
+    }
+
+    private static OrderExportRow line(String orderId, String customer, String product, int quantity, String totalPrice) {
+        return new OrderExportRow(orderId, customer, "ada@example.com", "PLACED", DATE, product, quantity,
+                new BigDecimal(totalPrice));
+    }
+
+    private static OrderExportRow empty(String orderId, String customer) {
+        return new OrderExportRow(orderId, customer, "ada@example.com", "PLACED", DATE, null, null, null);
+    }
+}
@@ -0,0 +1,113 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.dto.OrderItemRequest;
+import com.learning.springecom.model.dto.OrderRequest;
+import com.learning.springecom.service.OrderJournal.Entry;
+import com.learning.springecom.service.OrderJournal.Type;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class OrderJournalTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysAppendedEntries() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, objectMapper, 1 << 20)) {
+            journal.open(List.of());
+            journal.append(accepted("ORD-1", "key-1")).get(5, TimeUnit.SECONDS);
+            journal.append(completed("ORD-1")).get(5, TimeUnit.SECONDS);
+            journal.append(accepted("ORD-2", null)).get(5, TimeUnit.SECONDS);
+        }
+
+        List<Entry> entries = new OrderJournal(directory, objectMapper, 1 << 20).read();
+
+        assertThat(entries).extracting(Entry::type, Entry::orderId)
+                .containsExactly(
+                        tuple(Type.ACCEPTED, "ORD-1"),
+                        tuple(Type.COMPLETED, "ORD-1"),
+                        tuple(Type.ACCEPTED, "ORD-2"));
+        assertThat(entries.get(0).idempotencyKey()).isEqualTo("key-1");
+        assertThat(entries.get(0).request()).isEqualTo(request());
+        assertThat(entries.get(1).status()).isEqualTo("PLACED");
+    }
+
+    @Test
+    void skipsTornLastLine() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, objectMapper, 1 << 20)) {
+            journal.open(List.of());
+            journal.append(accepted("ORD-1", null)).get(5, TimeUnit.SECONDS);
+        }
+        Files.writeString(directory.resolve("orders.journal"), "{\"type\":\"ACCEPTED\",\"orderId\":\"ORD-2\",\"req",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        List<Entry> entries = new OrderJournal(directory, objectMapper, 1 << 20).read();
+
+        assertThat(entries).extracting(Entry::orderId).containsExactly("ORD-1");
+    }
+
+    @Test
+    void openRewritesTheFileWithTheLiveEntries() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, objectMapper, 1 << 20)) {
+            journal.open(List.of());
+            journal.append(accepted("ORD-1", null)).get(5, TimeUnit.SECONDS);
+        }
+        Files.writeString(directory.resolve("orders.journal"), "torn", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (OrderJournal journal = new OrderJournal(directory, objectMapper, 1 << 20)) {
+            journal.open(List.of(accepted("ORD-2", null)));
+            journal.append(accepted("ORD-3", null)).get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(new OrderJournal(directory, objectMapper, 1 << 20).read())
+                .extracting(Entry::orderId).containsExactly("ORD-2", "ORD-3");
+        assertThat(directory.resolve("orders.journal.tmp")).doesNotExist();
+    }
+
+    @Test
+    void keepsAppendingAfterCompaction() throws Exception {
+        try (OrderJournal journal = new OrderJournal(directory, objectMapper, 512)) {
+            journal.open(List.of());
+            for (int i = 0; i < 20; i++) {
+                journal.append(accepted("ORD-" + i, null)).get(5, TimeUnit.SECONDS);
+                journal.append(completed("ORD-" + i)).get(5, TimeUnit.SECONDS);
+                journal.forget(List.of("ORD-" + i));
+            }
+            journal.append(accepted("ORD-last", null)).get(5, TimeUnit.SECONDS);
+        }
+
+        List<Entry> entries = new OrderJournal(directory, objectMapper, 512).read();
+
+        assertThat(entries).extracting(Entry::orderId).contains("ORD-last").doesNotContain("ORD-0");
+        assertThat(Files.size(directory.resolve("orders.journal"))).isLessThan(2048);
+    }
+
+    private static OrderRequest request() {
+        return new OrderRequest("Ada", "ada@example.com", List.of(new OrderItemRequest(1, 2)));
+    }
+
+    private static Entry accepted(String orderId, String idempotencyKey) {
+        return new Entry(Type.ACCEPTED, orderId, idempotencyKey, request(), Instant.parse("2026-01-01T00:00:00Z"),
+                null, null, null, null);
+    }
+
+    private static Entry completed(String orderId) {
+        return new Entry(Type.COMPLETED, orderId, null, null, Instant.parse("2026-01-01T00:00:01Z"),
+                "PLACED", null, null, null);
+    }
+}
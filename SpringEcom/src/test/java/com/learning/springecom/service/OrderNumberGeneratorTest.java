@@ -0,0 +1,146 @@
+package com.learning.springecom.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderNumberGeneratorTest {
+
+    private static final long EPOCH_MILLIS = 1704067200000L;
+
+    private final AtomicLong time = new AtomicLong(EPOCH_MILLIS + 10_000);
+
+    @Test
+    void packsMillisNodeAndSequence() {
+        OrderNumberGenerator generator = generator(5);
+        time.set(EPOCH_MILLIS + 20_000);
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+
+        assertThat(first >>> 22).isEqualTo(20_000);
+        assertThat((first >>> 12) & 1023).isEqualTo(5);
+        assertThat(first & 4095).isZero();
+        assertThat(second).isEqualTo(first + 1);
+    }
+
+    @Test
+    void encodesFixedWidthCrockford() {
+        assertThat(OrderNumberGenerator.encode(0)).isEqualTo("0000000000000");
+        assertThat(OrderNumberGenerator.encode(31)).isEqualTo("000000000000Z");
+        assertThat(OrderNumberGenerator.encode(32)).isEqualTo("0000000000010");
+        assertThat(OrderNumberGenerator.encode(Long.MAX_VALUE)).isEqualTo("7ZZZZZZZZZZZZ");
+        assertThat(generator(1).next()).matches("ORD[0-9A-HJKMNP-TV-Z]{13}");
+    }
+
+    @Test
+    void encodingSortsLikeTheNumbers() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long a = random.nextLong() >>> 1;
+            long b = random.nextLong() >>> 1;
+            assertThat(Integer.signum(OrderNumberGenerator.encode(a).compareTo(OrderNumberGenerator.encode(b))))
+                    .isEqualTo(Long.signum(Long.compare(a, b)));
+        }
+    }
+
+    @Test
+    void carriesAFullSequenceIntoTheNextMillisecond() {
+        OrderNumberGenerator generator = generator(0);
+        time.set(EPOCH_MILLIS + 20_000);
+
+        long previous = generator.nextId();
+        for (int i = 1; i < 4096; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+        long carried = generator.nextId();
+
+        assertThat(previous >>> 22).isEqualTo(20_000);
+        assertThat(previous & 4095).isEqualTo(4095);
+        assertThat(carried >>> 22).isEqualTo(20_001);
+        assertThat(carried & 4095).isZero();
+    }
+
+    @Test
+    void keepsIncreasingWhenTheClockStepsBack() {
+        OrderNumberGenerator generator = generator(0);
+        time.set(EPOCH_MILLIS + 20_000);
+        long before = generator.nextId();
+
+        time.set(EPOCH_MILLIS + 15_000);
+
+        assertThat(generator.nextId()).isGreaterThan(before);
+    }
+
+    @Test
+    void staysUniqueAndIncreasingUnderContention() throws Exception {
+        OrderNumberGenerator generator = generator(3);
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    long[] ids = new long[perThread];
+                    for (int i = 0; i < perThread; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+
+            Set<Long> all = new HashSet<>();
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get();
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0) {
+                        assertThat(ids[i]).isGreaterThan(ids[i - 1]);
+                    }
+                    all.add(ids[i]);
+                }
+            }
+            assertThat(all).hasSize(threads * perThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsNodeIdsOutOfRange() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(time::get);
+        ReflectionTestUtils.setField(generator, "configuredNodeId", 1024);
+
+        assertThatThrownBy(generator::init).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void refusesToStartWithoutANodeId() {
+        OrderNumberGenerator generator = new OrderNumberGenerator(time::get);
+        ReflectionTestUtils.setField(generator, "configuredNodeId", -1);
+
+        assertThatThrownBy(generator::init).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.order-number.node-id is not set");
+    }
+
+    private OrderNumberGenerator generator(int nodeId) {
+        OrderNumberGenerator generator = new OrderNumberGenerator(time::get);
+        ReflectionTestUtils.setField(generator, "configuredNodeId", nodeId);
+        generator.init();
+        return generator;
+    }
+}
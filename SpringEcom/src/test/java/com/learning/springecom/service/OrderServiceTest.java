@@ -0,0 +1,157 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.exception.OrderRejectedException;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.dto.OrderItemRequest;
+import com.learning.springecom.model.dto.OrderItemResponse;
+import com.learning.springecom.model.dto.OrderLineError;
+import com.learning.springecom.model.dto.OrderRequest;
+import com.learning.springecom.model.dto.OrderResponse;
+import com.learning.springecom.repo.OrderRepo;
+import com.learning.springecom.repo.ProductRepo;
+import com.learning.springecom.service.InventoryReservationService.Reservation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.*;
+
+class OrderServiceTest {
+
+    private final ProductRepo productRepo = mock(ProductRepo.class);
+    private final OrderRepo orderRepo = mock(OrderRepo.class);
+    private final ProductCache productCache = mock(ProductCache.class);
+    private final InventoryReservationService inventory = mock(InventoryReservationService.class);
+    private final OrderService service = new OrderService();
+    private final Map<Integer, Product> catalog = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "productRepo", productRepo);
+        ReflectionTestUtils.setField(service, "orderRepo", orderRepo);
+        ReflectionTestUtils.setField(service, "vectorSyncService", mock(VectorSyncService.class));
+        ReflectionTestUtils.setField(service, "inventoryReservations", inventoryProvider(null));
+        ReflectionTestUtils.setField(service, "stageMetrics", new StageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "productCache", productCache);
+        when(productCache.getAll(any(), any())).thenAnswer(invocation -> {
+            Map<Integer, Product> found = new HashMap<>();
+            for (Integer id : invocation.<Collection<Integer>>getArgument(0)) {
+                if (catalog.containsKey(id)) {
+                    found.put(id, catalog.get(id));
+                }
+            }
+            return found;
+        });
+        when(orderRepo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        catalog.put(1, product(1, "Laptop", "999.00"));
+        catalog.put(2, product(2, "Mouse", "25.00"));
+    }
+
+    @Test
+    void reservesNothingForAnOrderNamingAMissingProduct() {
+        ReflectionTestUtils.setField(service, "inventoryReservations", inventoryProvider(inventory));
+
+        assertThatThrownBy(() -> service.placeOrder(request(line(1, 1), line(99, 1)), "ORD1"))
+                .isInstanceOfSatisfying(OrderRejectedException.class, e -> assertThat(e.getErrors())
+                        .extracting(OrderLineError::productId, OrderLineError::reason)
+                        .containsExactly(tuple(99, "PRODUCT_NOT_FOUND")));
+
+        verifyNoInteractions(inventory);
+    }
+
+    @Test
+    void bindsTheReservationToTheTransactionInInventoryMode() {
+        ReflectionTestUtils.setField(service, "inventoryReservations", inventoryProvider(inventory));
+        Reservation reservation = new Reservation("r1", Map.of(1, 2));
+        when(inventory.reserve(Map.of(1, 2))).thenReturn(reservation);
+
+        service.placeOrder(request(line(1, 2)), "ORD1");
+
+        verify(inventory).completeWithTransaction(reservation);
+        verify(productRepo, never()).decrementStock(anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void reportsEveryRejectedLineAtOnce() {
+        when(productRepo.decrementStock(eq(2), eq(5), any())).thenReturn(0);
+        when(productRepo.findStockQuantity(2)).thenReturn(Optional.of(3));
+
+        assertThatThrownBy(() -> service.placeOrder(request(line(1, 0), line(99, 2), line(2, 5)), "ORD1"))
+                .isInstanceOfSatisfying(OrderRejectedException.class, e -> assertThat(e.getErrors())
+                        .extracting(OrderLineError::productId, OrderLineError::productName,
+                                OrderLineError::requestedQuantity, OrderLineError::availableQuantity, OrderLineError::reason)
+                        .containsExactly(
+                                tuple(1, null, 0, 0, "INVALID_QUANTITY"),
+                                tuple(99, null, 2, 0, "PRODUCT_NOT_FOUND"),
+                                tuple(2, "Mouse", 5, 3, "INSUFFICIENT_STOCK")));
+
+        // the missing product is never updated; the transaction rolls back the lines that were taken
+        verify(productRepo, never()).decrementStock(eq(99), anyInt(), any());
+        verify(orderRepo, never()).save(any());
+        verify(productCache, never()).evictAfterCommit(any());
+    }
+
+    @Test
+    void takesStockOncePerProductInIdOrder() {
+        when(productRepo.decrementStock(anyInt(), anyInt(), any())).thenReturn(1);
+
+        OrderResponse response = service.placeOrder(request(line(2, 1), line(1, 2), line(2, 3)), "ORD1");
+
+        InOrder inOrder = inOrder(productRepo);
+        inOrder.verify(productRepo).decrementStock(eq(1), eq(2), any());
+        inOrder.verify(productRepo).decrementStock(eq(2), eq(4), any());
+        verify(productRepo, times(2)).decrementStock(anyInt(), anyInt(), any());
+        // the order keeps the lines as requested
+        assertThat(response.items()).extracting(OrderItemResponse::productName, OrderItemResponse::quantity)
+                .containsExactly(tuple("Mouse", 1), tuple("Laptop", 2), tuple("Mouse", 3));
+        verify(productCache).evictAfterCommit(Set.of(1, 2));
+    }
+
+    @Test
+    void checksStockAgainstTheMergedQuantity() {
+        when(productRepo.decrementStock(eq(2), eq(4), any())).thenReturn(0);
+        when(productRepo.findStockQuantity(2)).thenReturn(Optional.of(3));
+
+        assertThatThrownBy(() -> service.placeOrder(request(line(2, 2), line(2, 2)), "ORD1"))
+                .isInstanceOfSatisfying(OrderRejectedException.class, e -> assertThat(e.getErrors())
+                        .extracting(OrderLineError::requestedQuantity, OrderLineError::availableQuantity, OrderLineError::reason)
+                        .containsExactly(tuple(4, 3, "INSUFFICIENT_STOCK")));
+    }
+
+    private ObjectProvider<InventoryReservationService> inventoryProvider(InventoryReservationService service) {
+        @SuppressWarnings("unchecked")
+        ObjectProvider<InventoryReservationService> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(service);
+        return provider;
+    }
+
+    private static OrderRequest request(OrderItemRequest... lines) {
+        return new OrderRequest("Ada", "ada@example.com", List.of(lines));
+    }
+
+    private static OrderItemRequest line(int productId, int quantity) {
+        return new OrderItemRequest(productId, quantity);
+    }
+
+    private static Product product(int id, String name, String price) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+}
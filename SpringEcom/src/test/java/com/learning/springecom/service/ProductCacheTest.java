@@ -0,0 +1,203 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class ProductCacheTest {
+
+    private static final String NOTIFY = "SELECT pg_notify(?, ?)";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final CatalogReadModel catalogReadModel = mock(CatalogReadModel.class);
+    private final ProductCache cache = new ProductCache();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(cache, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "catalogReadModel", catalogReadModel);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 1000);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(5));
+        cache.registerMetrics();
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void servesLoadedProductsFromTheCacheAsCopies() {
+        Map<Integer, Product> first = cache.getAll(List.of(1, 2, 3), this::load);
+        first.get(1).setName("changed by caller");
+
+        Map<Integer, Product> second = cache.getAll(List.of(1, 2), this::load);
+
+        assertThat(loads).hasValue(1);
+        assertThat(second.get(1).getName()).isEqualTo("product 1");
+        assertThat(second.get(1)).isNotSameAs(cache.getAll(List.of(1), this::load).get(1));
+    }
+
+    @Test
+    void doesNotStoreRowsLoadedBeforeAnEviction() {
+        // an eviction of 1 lands while the (stale) rows are being read
+        Map<Integer, Product> loaded = cache.getAll(List.of(1, 2), ids -> {
+            cache.evict(List.of(1));
+            return load(ids);
+        });
+
+        assertThat(loaded).containsOnlyKeys(1, 2);
+        assertThat(cache.size()).isEqualTo(1);
+        cache.getAll(List.of(2), this::load);
+        assertThat(loads).hasValue(1);
+        cache.getAll(List.of(1), this::load);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void anEvictionGuardsItsWholeStripe() {
+        // 65 shares a generation stripe with 1, so evicting it also keeps 1 from being stored
+        cache.getAll(List.of(1), ids -> {
+            cache.evict(List.of(65));
+            return load(ids);
+        });
+
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void doesNotStoreRowsLoadedWhileSuspended() {
+        cache.getAll(List.of(1), ids -> {
+            cache.suspend();
+            return load(ids);
+        });
+        assertThat(cache.size()).isZero();
+
+        cache.getAll(List.of(1), this::load);
+        assertThat(loads).hasValue(2);
+        assertThat(cache.size()).isZero();
+
+        cache.resume();
+        cache.getAll(List.of(1), this::load);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsedBeyondMaxEntries() {
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        cache.getAll(List.of(1, 2), this::load);
+        cache.getAll(List.of(1), this::load);
+
+        cache.getAll(List.of(3), this::load);
+
+        assertThat(cache.size()).isEqualTo(2);
+        cache.getAll(List.of(1, 3), this::load);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void splitsLargeNotificationsUnderThePayloadLimit() {
+        List<Integer> ids = IntStream.range(1_000_000, 1_003_000).boxed().toList();
+
+        cache.evictAndNotify(ids);
+
+        List<String> payloads = payloads();
+        assertThat(payloads).hasSizeGreaterThan(1);
+        String prefix = payloads.get(0).substring(0, payloads.get(0).indexOf(':') + 1);
+        List<Integer> announced = new ArrayList<>();
+        for (String payload : payloads) {
+            assertThat(payload.getBytes(StandardCharsets.UTF_8).length).isLessThan(8000);
+            assertThat(payload).startsWith(prefix).doesNotContain(",,").doesNotEndWith(",");
+            for (String id : payload.substring(prefix.length()).split(",")) {
+                announced.add(Integer.parseInt(id));
+            }
+        }
+        assertThat(announced).containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    void batchesAfterCommitEvictionsIntoOneNotification() {
+        cache.getAll(List.of(1, 2, 3), this::load);
+
+        cache.evictAfterCommit(List.of(1));
+        cache.evictAfterCommit(List.of(2));
+        assertThat(cache.size()).isEqualTo(1);
+        verifyNoInteractions(jdbcTemplate);
+
+        cache.announceEvictions();
+        cache.announceEvictions();
+
+        assertThat(payloads()).singleElement().asString().matches("[^:]+:(1,2|2,1)");
+    }
+
+    @Test
+    void failedAnnouncementIsRetried() {
+        cache.evictAfterCommit(List.of(7));
+        doThrow(new IllegalStateException("database down"))
+                .doAnswer(invocation -> {
+                    invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+                    return null;
+                })
+                .when(transactionTemplate).executeWithoutResult(any());
+
+        cache.announceEvictions();
+        cache.announceEvictions();
+
+        assertThat(payloads()).singleElement().asString().endsWith(":7");
+    }
+
+    @Test
+    void appliesNotificationsFromOtherNodesOnly() {
+        cache.getAll(List.of(1, 2, 3), this::load);
+        cache.evictAndNotify(List.of(9));
+        String own = payloads().get(0);
+
+        cache.onNotification(own.substring(0, own.indexOf(':') + 1) + "1,2");
+        assertThat(cache.size()).isEqualTo(3);
+
+        cache.onNotification("other-node:1,x,2");
+        assertThat(cache.size()).isEqualTo(1);
+        verify(catalogReadModel).refreshLater(List.of(1, 2));
+    }
+
+    private List<Product> load(Collection<Integer> ids) {
+        loads.incrementAndGet();
+        return ids.stream().map(ProductCacheTest::product).toList();
+    }
+
+    private List<String> payloads() {
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(jdbcTemplate, atLeast(0)).queryForList(eq(NOTIFY), eq(ProductCache.CHANNEL), payload.capture());
+        return payload.getAllValues().stream().map(String.class::cast).toList();
+    }
+
+    private static Product product(int id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName("product " + id);
+        return product;
+    }
+}
@@ -0,0 +1,78 @@
+package com.learning.springecom.service;
+
+import com.learning.springecom.service.ProductCursor.ProductSort;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductCursorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"releaseDate", "release_date", "release-date", "RELEASE_DATE", " releasedate "})
+    void parsesReleaseDateSpellings(String value) {
+        assertThat(ProductSort.from(value)).isEqualTo(ProductSort.RELEASE_DATE);
+    }
+
+    @Test
+    void parsesIdAndPrice() {
+        assertThat(ProductSort.from("id")).isEqualTo(ProductSort.ID);
+        assertThat(ProductSort.from("Price")).isEqualTo(ProductSort.PRICE);
+    }
+
+    @Test
+    void rejectsUnknownSort() {
+        assertThatThrownBy(() -> ProductSort.from("name"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("releaseDate");
+    }
+
+    @Test
+    void roundTripsPriceCursor() {
+        ProductCursor cursor = new ProductCursor(ProductSort.PRICE, "19.99", 42);
+
+        ProductCursor decoded = ProductCursor.decode(cursor.encode(), ProductSort.PRICE);
+
+        assertThat(decoded).isEqualTo(cursor);
+        assertThat(decoded.price()).isEqualByComparingTo(new BigDecimal("19.99"));
+    }
+
+    @Test
+    void roundTripsReleaseDateCursor() {
+        Date releaseDate = new Date(1717200000000L);
+        ProductCursor cursor = new ProductCursor(ProductSort.RELEASE_DATE, String.valueOf(releaseDate.getTime()), 7);
+
+        ProductCursor decoded = ProductCursor.decode(cursor.encode(), ProductSort.RELEASE_DATE);
+
+        assertThat(decoded).isEqualTo(cursor);
+        assertThat(decoded.releaseDate()).isEqualTo(releaseDate);
+    }
+
+    @Test
+    void roundTripsIdCursor() {
+        ProductCursor cursor = new ProductCursor(ProductSort.ID, "3", 3);
+
+        assertThat(ProductCursor.decode(cursor.encode(), ProductSort.ID)).isEqualTo(cursor);
+    }
+
+    @Test
+    void rejectsCursorForAnotherSort() {
+        String cursor = new ProductCursor(ProductSort.PRICE, "1.00", 1).encode();
+
+        assertThatThrownBy(() -> ProductCursor.decode(cursor, ProductSort.ID))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        assertThatThrownBy(() -> ProductCursor.decode("not a cursor", ProductSort.ID))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ProductCursor.decode(new ProductCursor(ProductSort.PRICE, "abc", 1).encode(), ProductSort.PRICE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
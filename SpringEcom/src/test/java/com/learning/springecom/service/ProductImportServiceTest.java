@@ -0,0 +1,203 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.config.WorkerPoolConfig;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.ProductImport;
+import com.learning.springecom.model.dto.ProductImportError;
+import com.learning.springecom.model.dto.ProductImportResult;
+import com.learning.springecom.repo.ProductImportRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.*;
+
+class ProductImportServiceTest {
+
+    private static final String CSV = """
+            name,price,release_date,stockQuantity,productAvailable
+            Laptop,999.00,2024-05-01,5,yes
+            Mouse,25,,10,
+            Keyboard,cheap,,1,true
+            "Monitor, 27""\",300,2024-06-01,2,0
+            Webcam,40,,3,1
+            """;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final ProductImportRepo importRepo = mock(ProductImportRepo.class);
+    private final ProductImportService service = new ProductImportService();
+    private final WorkerPools workerPools = new WorkerPoolConfig().workerPools(new MockEnvironment()
+            .withProperty("app.import.embedding-concurrency", "1"));
+    private final ProductImport productImport = ProductImport.builder()
+            .id("import-1").status(ProductImport.Status.FAILED).rowsCommitted(2).rowsImported(2).build();
+    private final List<String> inserted = new ArrayList<>();
+    private final List<Object> checkpoints = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        VectorDocumentFactory documentFactory = mock(VectorDocumentFactory.class);
+        when(documentFactory.productDocument(any())).thenReturn(new Document("product"));
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(service, "importRepo", importRepo);
+        ReflectionTestUtils.setField(service, "vectorSyncService", mock(VectorSyncService.class));
+        ReflectionTestUtils.setField(service, "documentFactory", documentFactory);
+        ReflectionTestUtils.setField(service, "embeddingModel", mock(EmbeddingModel.class));
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "stageMetrics", new StageMetrics(meterRegistry));
+        ReflectionTestUtils.setField(service, "productCache", mock(ProductCache.class));
+        ReflectionTestUtils.setField(service, "inventoryReservations", mock(ObjectProvider.class));
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        ReflectionTestUtils.setField(service, "embeddingBatchSize", 500);
+        ReflectionTestUtils.setField(service, "workerPools", workerPools);
+        ReflectionTestUtils.setField(service, "maxReportedErrors", 1000);
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(mock(TransactionStatus.class)));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(importRepo.findById("import-1")).thenReturn(Optional.of(productImport));
+        when(importRepo.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // the insert hands out ids and records the names it was given
+        when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class),
+                any(KeyHolder.class))).thenAnswer(invocation -> {
+            BatchPreparedStatementSetter setter = invocation.getArgument(1);
+            KeyHolder keys = invocation.getArgument(2);
+            for (int i = 0; i < setter.getBatchSize(); i++) {
+                PreparedStatement ps = mock(PreparedStatement.class);
+                setter.setValues(ps, i);
+                ArgumentCaptor<String> name = ArgumentCaptor.forClass(String.class);
+                verify(ps).setString(eq(1), name.capture());
+                inserted.add(name.getValue());
+                keys.getKeyList().add(Map.of("id", inserted.size()));
+            }
+            return new int[0];
+        });
+        // the checkpoint update moves the import on, as the database would
+        when(jdbcTemplate.update(startsWith("UPDATE product_import"), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            checkpoints.add(args[1]);
+            productImport.setRowsCommitted((Long) args[1]);
+            productImport.setRowsImported(productImport.getRowsImported() + (Integer) args[2]);
+            productImport.setRowsFailed(productImport.getRowsFailed() + (Integer) args[3]);
+            return 1;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        workerPools.shutdown();
+    }
+
+    @Test
+    void resumesAfterTheCheckpointAndReportsInvalidRows() {
+        ProductImportResult result = service.importProducts(csv(), ProductImportService.Format.CSV, "products.csv", "import-1");
+
+        assertThat(inserted).containsExactly("Monitor, 27\"", "Webcam");
+        assertThat(checkpoints).containsExactly(4L, 5L);
+        assertThat(result.status()).isEqualTo("COMPLETED");
+        assertThat(result.rowsSkipped()).isEqualTo(2);
+        assertThat(result.rowsCommitted()).isEqualTo(5);
+        assertThat(result.rowsImported()).isEqualTo(4);
+        assertThat(result.rowsFailed()).isEqualTo(1);
+        assertThat(result.errors()).extracting(ProductImportError::row, ProductImportError::message)
+                .containsExactly(tuple(3L, "price is not a number: cheap"));
+    }
+
+    @Test
+    void doesNotRunACompletedImportAgain() {
+        productImport.setStatus(ProductImport.Status.COMPLETED);
+
+        ProductImportResult result = service.importProducts(csv(), ProductImportService.Format.CSV, "products.csv", "import-1");
+
+        assertThat(result.status()).isEqualTo("COMPLETED");
+        assertThat(inserted).isEmpty();
+        assertThat(checkpoints).isEmpty();
+    }
+
+    @Test
+    void reportsRowsWithTheWrongNumberOfFields() {
+        productImport.setRowsCommitted(0);
+        String csv = "name,price\nLaptop,999\nMouse\nKeyboard,30,extra\n";
+
+        ProductImportResult result = service.importProducts(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ProductImportService.Format.CSV, "x.csv", "import-1");
+
+        assertThat(inserted).containsExactly("Laptop");
+        assertThat(result.errors()).extracting(ProductImportError::row, ProductImportError::message).containsExactly(
+                tuple(2L, "expected 2 fields but found 1"),
+                tuple(3L, "expected 2 fields but found 3"));
+    }
+
+    @Test
+    void convertsFieldsToAProduct() {
+        Product product = ProductImportService.toProduct(Map.of(
+                "name", " Laptop ", "price", "999.50", "releasedate", "2024-05-01",
+                "stockquantity", "5", "productavailable", "No", "brand", " "));
+
+        assertThat(product.getName()).isEqualTo("Laptop");
+        assertThat(product.getPrice()).isEqualByComparingTo(new BigDecimal("999.50"));
+        assertThat(product.getReleaseDate()).hasToString("2024-05-01 00:00:00.0");
+        assertThat(product.getStockQuantity()).isEqualTo(5);
+        assertThat(product.isProductAvailable()).isFalse();
+        assertThat(product.getBrand()).isNull();
+        assertThat(ProductImportService.toProduct(Map.of("name", "Mouse")).isProductAvailable()).isTrue();
+    }
+
+    @Test
+    void rejectsInvalidFields() {
+        assertInvalid(Map.of("price", "1"), "name is required");
+        assertInvalid(Map.of("name", "x".repeat(256)), "name is longer than 255 characters");
+        assertInvalid(Map.of("name", "Laptop", "price", "-1"), "price must not be negative");
+        assertInvalid(Map.of("name", "Laptop", "releasedate", "01/05/2024"), "releaseDate is not an ISO date (yyyy-MM-dd): 01/05/2024");
+        assertInvalid(Map.of("name", "Laptop", "stockquantity", "2.5"), "stockQuantity is not a whole number: 2.5");
+        assertInvalid(Map.of("name", "Laptop", "stockquantity", "-3"), "stockQuantity must not be negative");
+        assertInvalid(Map.of("name", "Laptop", "productavailable", "maybe"), "productAvailable is not a boolean: maybe");
+    }
+
+    private static void assertInvalid(Map<String, String> fields, String message) {
+        assertThatThrownBy(() -> ProductImportService.toProduct(new HashMap<>(fields)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage(message);
+    }
+
+    private static ByteArrayInputStream csv() {
+        return new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8));
+    }
+}
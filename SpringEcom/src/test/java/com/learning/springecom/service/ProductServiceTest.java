@@ -0,0 +1,39 @@
+package com.learning.springecom.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductServiceTest {
+
+    @Test
+    void matchesEveryWordByPrefix() {
+        assertThat(ProductService.toPrefixTsQuery("Apple ipho")).isEqualTo("apple:* & ipho:*");
+        assertThat(ProductService.toPrefixTsQuery("  iPhone   15 ")).isEqualTo("iphone:* & 15:*");
+    }
+
+    @Test
+    void splitsOnPunctuation() {
+        assertThat(ProductService.toPrefixTsQuery("USB-C, 65W!")).isEqualTo("usb:* & c:* & 65w:*");
+        assertThat(ProductService.toPrefixTsQuery("O'Brien's snake_case.txt")).isEqualTo("o:* & brien:* & s:* & snake:* & case:* & txt:*");
+    }
+
+    @Test
+    void dropsTsQueryOperators() {
+        assertThat(ProductService.toPrefixTsQuery("a&b|c!d:*(e)")).isEqualTo("a:* & b:* & c:* & d:* & e:*");
+        assertThat(ProductService.toPrefixTsQuery("laptop <-> !!mouse:A")).isEqualTo("laptop:* & mouse:* & a:*");
+    }
+
+    @Test
+    void keepsLettersAndDigitsOfAnyScript() {
+        assertThat(ProductService.toPrefixTsQuery("Größe Café")).isEqualTo("größe:* & café:*");
+        assertThat(ProductService.toPrefixTsQuery("笔记本 ноутбук ١٢٣")).isEqualTo("笔记本:* & ноутбук:* & ١٢٣:*");
+    }
+
+    @Test
+    void isEmptyWithoutAnyWord() {
+        assertThat(ProductService.toPrefixTsQuery("")).isEmpty();
+        assertThat(ProductService.toPrefixTsQuery("   ")).isEmpty();
+        assertThat(ProductService.toPrefixTsQuery("&|!:*()")).isEmpty();
+    }
+}
@@ -0,0 +1,283 @@
+package com.learning.springecom.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.model.Product;
+import com.learning.springecom.model.VectorSyncEvent;
+import com.learning.springecom.model.VectorSyncEvent.DocumentType;
+import com.learning.springecom.model.VectorSyncEvent.Operation;
+import com.learning.springecom.repo.OrderRepo;
+import com.learning.springecom.repo.ProductRepo;
+import com.learning.springecom.repo.VectorSyncEventRepo;
+import com.learning.springecom.vectorstore.HnswVectorStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class VectorSyncServiceTest {
+
+    private final VectorSyncEventRepo eventRepo = mock(VectorSyncEventRepo.class);
+    private final ProductRepo productRepo = mock(ProductRepo.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final HashingEmbeddingModel embeddingModel = new HashingEmbeddingModel(64);
+    private final VectorSyncService service = new VectorSyncService();
+    private final List<VectorSyncEvent> due = new ArrayList<>();
+    private final Map<Long, VectorSyncEvent> events = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+    private int stock = 5;
+    private HnswVectorStore store;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setUp() {
+        store = new HnswVectorStore(embeddingModel, new ObjectMapper(), directory.resolve("vectors.hnsw"), 8, 64, 64, 0);
+        store.load();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(service, "eventRepo", eventRepo);
+        ReflectionTestUtils.setField(service, "productRepo", productRepo);
+        ReflectionTestUtils.setField(service, "orderRepo", mock(OrderRepo.class));
+        ReflectionTestUtils.setField(service, "vectorStore", store);
+        ReflectionTestUtils.setField(service, "documentFactory", new VectorDocumentFactory());
+        ReflectionTestUtils.setField(service, "embeddingModel", embeddingModel);
+        ReflectionTestUtils.setField(service, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(service, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(service, "chatResponseCache", mock(ChatResponseCache.class));
+        ReflectionTestUtils.setField(service, "stageMetrics", new StageMetrics(meterRegistry));
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "batchSize", 100);
+        ReflectionTestUtils.setField(service, "lease", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(service, "initialBackoff", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(service, "maxBackoff", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(service, "maxAttempts", 3);
+        service.registerMetrics();
+
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(eventRepo.claimDue(any(), anyInt())).thenAnswer(invocation -> {
+            List<VectorSyncEvent> claimed = List.copyOf(due);
+            due.clear();
+            return claimed;
+        });
+        when(eventRepo.findAllById(any())).thenAnswer(invocation -> {
+            List<VectorSyncEvent> found = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                found.add(events.get(id));
+            }
+            return found;
+        });
+        when(productRepo.findAllById(any())).thenAnswer(invocation -> {
+            List<Product> products = new ArrayList<>();
+            for (Integer id : invocation.<Collection<Integer>>getArgument(0)) {
+                products.add(product(id));
+            }
+            return products;
+        });
+    }
+
+    @Test
+    void keepsHnswEventsUntilASnapshotContainsThem() {
+        service.requeueUnsnapshotted();
+        due.add(event(10, "1"));
+
+        service.flush();
+
+        assertThat(store.size()).isEqualTo(1);
+        verify(eventRepo, never()).deleteAllByIdInBatch(any());
+        verify(jdbcTemplate).update(startsWith("UPDATE vector_sync_event SET applied_version = ?"),
+                any(PreparedStatementSetter.class));
+        verify(jdbcTemplate, never()).update(startsWith("DELETE FROM vector_sync_event"), any(Object[].class));
+
+        store.snapshot();
+        service.flush();
+        service.flush();
+
+        verify(jdbcTemplate, times(1)).update("DELETE FROM vector_sync_event WHERE applied_version <= ?", store.version());
+    }
+
+    @Test
+    void requeuesEventsTheSnapshotDidNotContain() {
+        when(jdbcTemplate.update(startsWith("UPDATE vector_sync_event SET applied_version = NULL"))).thenReturn(3);
+
+        service.requeueUnsnapshotted();
+
+        verify(jdbcTemplate).update("UPDATE vector_sync_event SET applied_version = NULL, next_attempt_at = now() " +
+                "WHERE applied_version IS NOT NULL");
+    }
+
+    @Test
+    void deletesEventsAtOnceForAnInMemoryStore() {
+        useInMemoryStore();
+        due.add(event(10, "1"));
+
+        service.flush();
+
+        verify(eventRepo).deleteAllByIdInBatch(List.of(10L));
+    }
+
+    @Test
+    void writesAFailedBatchOneDocumentAtATime() {
+        useInMemoryStore();
+        ReflectionTestUtils.setField(service, "embeddingModel", failingFor("Product 2"));
+        due.addAll(List.of(event(10, "1"), event(11, "2"), event(12, "3")));
+
+        service.flush();
+
+        verify(eventRepo).deleteAllByIdInBatch(List.of(10L));
+        verify(eventRepo).deleteAllByIdInBatch(List.of(12L));
+        verify(eventRepo, never()).deleteAllByIdInBatch(List.of(11L));
+        assertThat(events.get(11L).getAttempts()).isEqualTo(1);
+        assertThat(events.get(11L).getNextAttemptAt()).isAfter(Instant.now());
+        assertThat(events.get(11L).getLastError()).contains("input too long");
+        assertThat(events.get(11L).getParkedAt()).isNull();
+    }
+
+    @Test
+    void parksEventsAfterMaxAttempts() {
+        useInMemoryStore();
+        ReflectionTestUtils.setField(service, "embeddingModel", failingFor("Product 2"));
+        VectorSyncEvent event = event(11, "2");
+        event.setAttempts(2);
+        due.add(event);
+
+        service.flush();
+
+        assertThat(event.getAttempts()).isEqualTo(3);
+        assertThat(event.getParkedAt()).isNotNull();
+        verify(eventRepo, never()).deleteAllByIdInBatch(any());
+    }
+
+    @Test
+    void updatesOnlyMetadataWhenTheTextIsUnchanged() {
+        useInMemoryStore();
+        HnswVectorStore memory = (HnswVectorStore) ReflectionTestUtils.getField(service, "vectorStore");
+        due.addAll(List.of(event(10, "1"), event(11, "2")));
+        service.flush();
+        long version = memory.version();
+
+        AtomicInteger embedded = new AtomicInteger();
+        ReflectionTestUtils.setField(service, "embeddingModel", counting(embedded));
+        stock = 0;
+        names.put(2, "Renamed product");
+        due.addAll(List.of(event(12, "1"), event(13, "2")));
+        service.flush();
+
+        // product 1 kept its text: metadata replaced in place; product 2 was embedded again
+        assertThat(embedded).hasValue(1);
+        assertThat(memory.size()).isEqualTo(2);
+        assertThat(memory.similaritySearch(SearchRequest.builder().query("Product 1").topK(1)
+                .filterExpression("productId in ['1']").build()))
+                .singleElement().satisfies(document ->
+                        assertThat(document.getMetadata()).containsEntry("stockStatus", "Out of Stock"));
+        // one metadata update, then the delete and add of product 2
+        assertThat(memory.version()).isEqualTo(version + 3);
+    }
+
+    @Test
+    void updatesPgvectorMetadataWhereTheContentMatches() {
+        ReflectionTestUtils.setField(service, "vectorStore", mock(VectorStore.class));
+        ReflectionTestUtils.setField(service, "embeddingModel", counting(new AtomicInteger()));
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE vector_store SET metadata"), anyList()))
+                .thenReturn(new int[]{1, 0});
+        due.addAll(List.of(event(10, "1"), event(11, "2")));
+
+        service.flush();
+
+        VectorStore vectorStore = (VectorStore) ReflectionTestUtils.getField(service, "vectorStore");
+        verify(vectorStore).delete("productId in ['2']");
+        verify(vectorStore).add(argThat(documents -> documents.size() == 1 && documents.get(0).getId().equals("2")));
+    }
+
+    private EmbeddingModel counting(AtomicInteger embedded) {
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                embedded.addAndGet(request.getInstructions().size());
+                return embeddingModel.call(request);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embeddingModel.embed(document);
+            }
+        };
+    }
+
+    private void useInMemoryStore() {
+        ReflectionTestUtils.setField(service, "vectorStore",
+                new HnswVectorStore(embeddingModel, new ObjectMapper(), null, 8, 64, 64, 0));
+    }
+
+    // rejects any request containing the given text, like an input over the model's limit
+    private EmbeddingModel failingFor(String text) {
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                if (request.getInstructions().stream().anyMatch(instruction -> instruction.contains(text))) {
+                    throw new IllegalArgumentException("input too long");
+                }
+                return embeddingModel.call(request);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embeddingModel.embed(document);
+            }
+        };
+    }
+
+    private VectorSyncEvent event(long id, String productId) {
+        VectorSyncEvent event = VectorSyncEvent.builder()
+                .id(id)
+                .documentType(DocumentType.PRODUCT)
+                .documentId(productId)
+                .operation(Operation.UPSERT)
+                .createdAt(Instant.now())
+                .nextAttemptAt(Instant.now())
+                .build();
+        events.put(id, event);
+        return event;
+    }
+
+    private Product product(int id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(names.getOrDefault(id, "Product " + id));
+        product.setStockQuantity(stock);
+        product.setCategory("Misc");
+        return product;
+    }
+}
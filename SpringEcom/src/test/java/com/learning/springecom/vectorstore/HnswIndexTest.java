@@ -0,0 +1,130 @@
+package com.learning.springecom.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void recallMatchesBruteForce() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 200);
+        for (int i = 0; i < 2000; i++) {
+            index.add(randomVector());
+        }
+
+        int k = 10;
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector();
+            Set<Integer> expected = nodes(index.exactSearch(query, k, null));
+            found += (int) index.search(query, k, 100, null).stream().filter(hit -> expected.contains(hit.node())).count();
+        }
+
+        assertThat(found / (double) (queries * k)).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void returnsHitsMostSimilarFirst() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        for (int i = 0; i < 200; i++) {
+            index.add(randomVector());
+        }
+        float[] query = index.vector(17);
+
+        List<HnswIndex.Hit> hits = index.search(query, 5, 50, null);
+
+        assertThat(hits.get(0).node()).isEqualTo(17);
+        assertThat(hits.get(0).similarity()).isCloseTo(1f, offset(1e-5f));
+        assertThat(hits).isSortedAccordingTo((a, b) -> Float.compare(b.similarity(), a.similarity()));
+    }
+
+    @Test
+    void neverReturnsTombstonedNodes() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        for (int i = 0; i < 300; i++) {
+            index.add(randomVector());
+        }
+        for (int node = 0; node < 300; node += 2) {
+            index.markDeleted(node);
+        }
+        index.markDeleted(0);
+
+        assertThat(index.deletedCount()).isEqualTo(150);
+        assertThat(index.liveCount()).isEqualTo(150);
+        for (int q = 0; q < 20; q++) {
+            float[] query = randomVector();
+            assertThat(index.search(query, 10, 50, null)).hasSize(10).allMatch(hit -> hit.node() % 2 == 1);
+            assertThat(index.exactSearch(query, 10, null)).hasSize(10).allMatch(hit -> hit.node() % 2 == 1);
+        }
+        // a deleted node's own vector still finds its live neighbours
+        assertThat(index.search(index.vector(4), 1, 50, null).get(0).node()).isNotEqualTo(4);
+    }
+
+    @Test
+    void appliesTheFilterToResults() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        for (int i = 0; i < 300; i++) {
+            index.add(randomVector());
+        }
+
+        List<HnswIndex.Hit> hits = index.search(randomVector(), 10, 100, node -> node % 3 == 0);
+
+        assertThat(hits).hasSize(10).allMatch(hit -> hit.node() % 3 == 0);
+    }
+
+    @Test
+    void snapshotRoundTripKeepsGraphAndTombstones() {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 8, 50);
+        for (int i = 0; i < 500; i++) {
+            index.add(randomVector());
+        }
+        index.markDeleted(3);
+        index.markDeleted(99);
+
+        ByteBuffer buffer = ByteBuffer.allocate(index.serializedSize());
+        index.writeTo(buffer);
+        assertThat(buffer.remaining()).isZero();
+        buffer.flip();
+        HnswIndex loaded = HnswIndex.readFrom(buffer, 50);
+
+        assertThat(loaded.dimensions()).isEqualTo(DIMENSIONS);
+        assertThat(loaded.size()).isEqualTo(500);
+        assertThat(loaded.deletedCount()).isEqualTo(2);
+        assertThat(loaded.isDeleted(99)).isTrue();
+        assertThat(loaded.vector(42)).containsExactly(index.vector(42));
+        for (int q = 0; q < 20; q++) {
+            float[] query = randomVector();
+            assertThat(nodes(loaded.search(query, 10, 50, null))).isEqualTo(nodes(index.search(query, 10, 50, null)));
+        }
+        // the loaded graph keeps growing like the original
+        int node = loaded.add(randomVector());
+        assertThat(node).isEqualTo(500);
+        assertThat(loaded.search(loaded.vector(node), 1, 50, null).get(0).node()).isEqualTo(node);
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static Set<Integer> nodes(List<HnswIndex.Hit> hits) {
+        return hits.stream().map(HnswIndex.Hit::node).collect(Collectors.toCollection(HashSet::new));
+    }
+}
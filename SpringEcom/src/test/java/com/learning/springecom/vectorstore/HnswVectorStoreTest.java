@@ -0,0 +1,151 @@
+package com.learning.springecom.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.learning.springecom.service.HashingEmbeddingModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HnswVectorStoreTest {
+
+    private final HashingEmbeddingModel embeddingModel = new HashingEmbeddingModel(64);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void updatingADocumentReplacesIt() {
+        HnswVectorStore store = store(null);
+        store.add(List.of(product(1, "Red running shoes", "Shoes")));
+        store.add(List.of(product(1, "Blue leather boots", "Shoes")));
+
+        List<Document> hits = store.similaritySearch(search("leather boots"));
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(hits).extracting(Document::getText).containsExactly("Blue leather boots");
+    }
+
+    @Test
+    void filtersByProductIdAndDeletesByFilter() {
+        HnswVectorStore store = store(null);
+        store.add(List.of(product(1, "Gaming laptop", "Laptop"), product(2, "Office laptop", "Laptop"),
+                product(3, "Laptop sleeve", "Accessories"), order("ORD1A2B3C4D", "Order for a laptop")));
+
+        assertThat(store.similaritySearch(SearchRequest.from(search("laptop")).filterExpression("productId in ['2', '3']").build()))
+                .extracting(Document::getId).containsExactlyInAnyOrder("2", "3");
+        assertThat(store.similaritySearch(SearchRequest.from(search("laptop"))
+                .filterExpression("type == 'order' && orderId in ['ORD1A2B3C4D']").build()))
+                .extracting(Document::getId).containsExactly("ORD1A2B3C4D");
+
+        store.delete("productId in ['1', '2']");
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.similaritySearch(search("laptop"))).extracting(Document::getId)
+                .containsExactlyInAnyOrder("3", "ORD1A2B3C4D");
+    }
+
+    @Test
+    void compactsOnceTombstonesMakeUpHalfTheGraph() {
+        HnswVectorStore store = store(null);
+        List<Document> products = new ArrayList<>();
+        for (int id = 0; id < 2000; id++) {
+            products.add(product(id, "Product number " + id + " in catalog", "Misc"));
+        }
+        store.add(products);
+
+        List<String> ids = new ArrayList<>();
+        for (int id = 0; id < 999; id++) {
+            ids.add(String.valueOf(id));
+        }
+        store.delete(ids);
+        assertThat(index(store).size()).isEqualTo(2000);
+
+        store.delete(List.of("999"));
+
+        assertThat(index(store).size()).isEqualTo(1000);
+        assertThat(index(store).deletedCount()).isZero();
+        assertThat(store.size()).isEqualTo(1000);
+        assertThat(store.similaritySearch(SearchRequest.builder().query("Product number 1500 in catalog").topK(1).build()))
+                .extracting(Document::getId).containsExactly("1500");
+    }
+
+    @Test
+    void snapshotRoundTrip() {
+        Path snapshot = directory.resolve("vectors.hnsw");
+        HnswVectorStore store = store(snapshot);
+        store.load();
+        assertThat(store.startedEmpty()).isTrue();
+        store.add(List.of(product(1, "Gaming laptop", "Laptop"), product(2, "Wireless mouse", "Accessories"),
+                order("ORD1A2B3C4D", "Order for a gaming laptop")));
+        store.delete(List.of("2"));
+        store.snapshot();
+
+        HnswVectorStore loaded = store(snapshot);
+        loaded.load();
+
+        assertThat(loaded.startedEmpty()).isFalse();
+        assertThat(loaded.size()).isEqualTo(2);
+        List<Document> hits = loaded.similaritySearch(search("gaming laptop"));
+        assertThat(hits).extracting(Document::getId).containsExactlyElementsOf(
+                store.similaritySearch(search("gaming laptop")).stream().map(Document::getId).toList());
+        assertThat(hits).extracting(Document::getId).doesNotContain("2");
+        assertThat(loaded.similaritySearch(SearchRequest.from(search("laptop")).filterExpression("productId in ['1']").build()))
+                .singleElement().satisfies(document -> {
+                    assertThat(document.getText()).isEqualTo("Gaming laptop");
+                    assertThat(document.getMetadata()).containsEntry("category", "Laptop");
+                });
+    }
+
+    @Test
+    void snapshotRecordsTheVersionItContains() {
+        Path snapshot = directory.resolve("vectors.hnsw");
+        HnswVectorStore store = store(snapshot);
+        store.load();
+        store.add(List.of(product(1, "Gaming laptop", "Laptop")));
+        store.delete(List.of("1"));
+        assertThat(store.version()).isEqualTo(2);
+        assertThat(store.persistedVersion()).isZero();
+
+        store.snapshot();
+        store.add(List.of(product(2, "Wireless mouse", "Accessories")));
+
+        assertThat(store.persistedVersion()).isEqualTo(2);
+        HnswVectorStore restarted = store(snapshot);
+        restarted.load();
+        // the write after the snapshot is lost, and the versions say so
+        assertThat(restarted.version()).isEqualTo(2).isLessThan(store.version());
+        assertThat(restarted.persistedVersion()).isEqualTo(2);
+        assertThat(restarted.size()).isZero();
+    }
+
+    private HnswVectorStore store(Path snapshot) {
+        return new HnswVectorStore(embeddingModel, objectMapper, snapshot, 8, 64, 64, 0);
+    }
+
+    private static SearchRequest search(String query) {
+        return SearchRequest.builder().query(query).topK(10).build();
+    }
+
+    private static HnswIndex index(HnswVectorStore store) {
+        return (HnswIndex) ReflectionTestUtils.getField(store, "index");
+    }
+
+    private static Document product(int id, String text, String category) {
+        return new Document(String.valueOf(id), text,
+                Map.of("type", "product", "productId", String.valueOf(id), "category", category));
+    }
+
+    private static Document order(String orderId, String text) {
+        return new Document(orderId, text, Map.of("type", "order", "orderId", orderId));
+    }
+}
@@ -0,0 +1,64 @@
+package com.learning.springecom.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.FilterExpressionTextParser;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataFilterTest {
+
+    private static final Map<String, Object> PRODUCT = Map.of(
+            "type", "product", "productId", "12", "category", "Laptop",
+            "price", new BigDecimal("999.50"), "stockQuantity", 4);
+    private static final Map<String, Object> ORDER = Map.of(
+            "type", "order", "orderId", "ORD0ABCDEFGHJKMN", "status", "PLACED");
+
+    @Test
+    void matchesProductIdsAsVectorSyncDeletesThem() {
+        assertThat(matches("productId in ['3', '12']", PRODUCT)).isTrue();
+        assertThat(matches("productId in ['3', '120']", PRODUCT)).isFalse();
+        assertThat(matches("productId in ['12']", ORDER)).isFalse();
+    }
+
+    @Test
+    void matchesOrderNumbersAsTheChatRetrieverFiltersThem() {
+        assertThat(matches("type == 'order' && orderId in ['ORD0ABCDEFGHJKMN', 'ORD1A2B3C4D']", ORDER)).isTrue();
+        assertThat(matches("type == 'order' && orderId in ['ORD1A2B3C4D']", ORDER)).isFalse();
+        assertThat(matches("type == 'order' && orderId in ['ORD0ABCDEFGHJKMN']", PRODUCT)).isFalse();
+    }
+
+    @Test
+    void matchesCategories() {
+        assertThat(matches("type == 'product' && category == 'Laptop'", PRODUCT)).isTrue();
+        assertThat(matches("type == 'product' && category == 'Phone'", PRODUCT)).isFalse();
+    }
+
+    @Test
+    void comparesNumbersByValue() {
+        assertThat(matches("price > 999", PRODUCT)).isTrue();
+        assertThat(matches("price == 999.5", PRODUCT)).isTrue();
+        assertThat(matches("stockQuantity <= 4", PRODUCT)).isTrue();
+        assertThat(matches("stockQuantity < 4", PRODUCT)).isFalse();
+    }
+
+    @Test
+    void treatsMissingKeysAsNoMatch() {
+        assertThat(matches("category == 'Laptop'", ORDER)).isFalse();
+        assertThat(matches("category != 'Laptop'", ORDER)).isFalse();
+        assertThat(matches("category in ['Laptop']", ORDER)).isFalse();
+    }
+
+    @Test
+    void combinesWithOrNotAndNin() {
+        assertThat(matches("type == 'order' || category == 'Laptop'", PRODUCT)).isTrue();
+        assertThat(matches("NOT (type == 'order')", PRODUCT)).isTrue();
+        assertThat(matches("status nin ['CANCELLED']", ORDER)).isTrue();
+    }
+
+    private static boolean matches(String filter, Map<String, Object> metadata) {
+        return MetadataFilter.matches(new FilterExpressionTextParser().parse(filter), metadata);
+    }
+}